@@ -0,0 +1,67 @@
+package in.eko.exprutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks compiling and evaluating expressions, by nesting depth and operator.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExpressionParserBenchmark {
+
+    @Param({"1", "4", "16"})
+    int depth;
+
+    @Param({"+", "CONCAT", "IF"})
+    String operator;
+
+    String expr;
+    CompiledExpression compiled;
+    Map<String, Object> context = Collections.singletonMap("x", 5);
+
+    @Setup
+    public void setup() {
+        // Nest the operator around a variable, so the expression cannot be folded into a constant
+        String node = "'${x}'";
+        for (int i = 0; i < depth; i++) {
+            if (operator.equals("IF")) {
+                node = "['IF', ['>', '${x}', " + i + "], " + node + ", 0]";
+            } else {
+                node = "['" + operator + "', " + node + ", 1]";
+            }
+        }
+        expr = node;
+        compiled = ExpressionParser.compile(expr);
+    }
+
+    /**
+     * Parse and evaluate, with the expression cache of the parser
+     */
+    @Benchmark
+    public Object parseExpression() {
+        return ExpressionParser.parseExpression(expr, context);
+    }
+
+    @Benchmark
+    public CompiledExpression compile() {
+        return ExpressionParser.compile(expr);
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return compiled.evaluate(context).getResult();
+    }
+}
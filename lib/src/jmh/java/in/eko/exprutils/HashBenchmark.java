@@ -0,0 +1,63 @@
+package in.eko.exprutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks hashing and HMAC, by input size.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HashBenchmark {
+
+    @Param({"64", "4096"})
+    int size;
+
+    String input;
+    byte[] bytes;
+
+    @Setup
+    public void setup() {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'a');
+        input = new String(chars);
+        bytes = input.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String sha256() {
+        return Hash.sha256(input);
+    }
+
+    @Benchmark
+    public String sha256Bytes() {
+        return Hash.sha256(bytes);
+    }
+
+    @Benchmark
+    public String sha512() {
+        return Hash.sha512(input);
+    }
+
+    @Benchmark
+    public String md5() {
+        return Hash.md5(input);
+    }
+
+    @Benchmark
+    public String hmacSha256() {
+        return Hash.hmacSha256(input, "secret");
+    }
+}
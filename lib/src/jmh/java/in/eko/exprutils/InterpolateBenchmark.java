@@ -0,0 +1,52 @@
+package in.eko.exprutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks interpolating `${var}` templates, by number of placeholders.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterpolateBenchmark {
+
+    @Param({"1", "10", "100"})
+    int placeholders;
+
+    String template;
+    InterpolationTemplate compiled;
+    Map<String, String> data = new HashMap<>();
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < placeholders; i++) {
+            sb.append("Dear customer, field ").append(i).append(" is ${var").append(i).append("}. ");
+            data.put("var" + i, "value-" + i);
+        }
+        template = sb.toString();
+        compiled = InterpolationTemplate.compile(template);
+    }
+
+    @Benchmark
+    public String interpolate() {
+        return ExpressionParser.interpolate(template, data);
+    }
+
+    @Benchmark
+    public String render() {
+        return compiled.render(data);
+    }
+}
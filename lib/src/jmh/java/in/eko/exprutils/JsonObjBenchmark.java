@@ -0,0 +1,86 @@
+package in.eko.exprutils;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading and writing nested values, on small and large documents, through shallow and deep paths.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonObjBenchmark {
+
+    // The number of sibling keys at each level of the document
+    @Param({"4", "256"})
+    int width;
+
+    // The number of levels of the path
+    @Param({"1", "8"})
+    int depth;
+
+    String document;
+    JSONObject parsed;
+    String path;
+    JsonPath compiledPath;
+
+    @Setup
+    public void setup() {
+        JSONObject root = new JSONObject();
+        JSONObject level = root;
+        StringBuilder sb = new StringBuilder();
+        for (int d = 0; d < depth; d++) {
+            for (int i = 0; i < width; i++) {
+                level.put("key" + i, "value-" + i);
+            }
+            if (d < depth - 1) {
+                JSONObject child = new JSONObject();
+                level.put("child", child);
+                level = child;
+                sb.append("child.");
+            }
+        }
+        sb.append("key").append(width - 1);
+
+        document = root.toString();
+        parsed = new JSONObject(document);
+        path = sb.toString();
+        compiledPath = JsonPath.compile(path);
+    }
+
+    /**
+     * Get from a serialized document (scanned, without parsing it)
+     */
+    @Benchmark
+    public Object getString() {
+        return JsonObj.get(document, path, "");
+    }
+
+    @Benchmark
+    public Object getParsed() {
+        return JsonObj.get(parsed, compiledPath, "");
+    }
+
+    /**
+     * Set in a serialized document (parsed and serialized again)
+     */
+    @Benchmark
+    public String setString() {
+        return JsonObj.set(document, path, "updated");
+    }
+
+    @Benchmark
+    public JSONObject setParsed() {
+        return JsonObj.set(parsed, compiledPath, "updated");
+    }
+}
@@ -0,0 +1,73 @@
+package in.eko.exprutils;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks generating and parsing JWTs.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JwtBenchmark {
+
+    static final String SECRET = "benchmark-secret";
+
+    JSONObject claims = new JSONObject("{'product': 'dmt', 'limit': 25000, 'txn_id': 'TX123'}");
+    JwtTemplate template;
+    String token;
+    TokenCache cache;
+    CompiledExpression expression;
+    Map<String, Object> context = Collections.singletonMap("txn_id", "TX123");
+
+    @Setup
+    public void setup() {
+        template = JwtTemplate.builder()
+                .algorithm("HS256").secretKey(SECRET)
+                .issuer("eko").audience("partner")
+                .claims(new JSONObject("{'product': 'dmt', 'limit': 25000}"))
+                .variableClaims("txn_id")
+                .expiresInSeconds(3600)
+                .build();
+        token = JWT.generate(SECRET, "HS256", claims, "eko", "partner", null, null, 3600);
+        cache = TokenCache.builder().build();
+        expression = ExpressionParser.compile("['JWT', '" + SECRET + "', 'HS256', "
+                + "{'claim': {'product': 'dmt', 'txn_id': '${txn_id}'}, 'issuer': 'eko', 'expiresInSeconds': 3600}]");
+    }
+
+    @Benchmark
+    public String generate() {
+        return JWT.generate(SECRET, "HS256", claims, "eko", "partner", null, null, 3600);
+    }
+
+    @Benchmark
+    public String generateTemplate() {
+        return template.generate(null, "TX123");
+    }
+
+    @Benchmark
+    public Object generateOperator() {
+        return expression.evaluate(context).getResult();
+    }
+
+    @Benchmark
+    public Object parse() {
+        return JWT.parse(token, SECRET, "HS256");
+    }
+
+    @Benchmark
+    public Object parseCached() {
+        return cache.verify(JwtVerifier.of("HS256", SECRET), token);
+    }
+}
@@ -0,0 +1,500 @@
+package in.eko.exprutils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one compiled expression over many records, eg: a settlement job over millions of transactions.
+ * The records are given either as a list (or array) of contexts, or as {@link Columns} of variable values.
+ * Large batches are split into chunks that are evaluated in parallel, on a {@link ForkJoinPool}
+ * (the common pool by default) or on a caller-supplied executor. Each chunk reuses a single array of
+ * variable slots, and every result is written at the index of its record, so the order of the results
+ * is deterministic.
+ * Instances are thread-safe.
+ * <pre>
+ * BatchEvaluator batch = BatchEvaluator.builder(ExpressionParser.compile("['*', '${amount}', '${rate}']")).build();
+ * double[] fees = batch.evaluateDouble(BatchEvaluator.Columns.of(n).put("amount", amounts).put("rate", rates));
+ * </pre>
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class BatchEvaluator {
+    private final CompiledExpression expression;
+    private final ForkJoinPool pool;
+    private final Executor executor;
+    private final int chunkSize;
+
+    private BatchEvaluator(Builder builder) {
+        this.expression = builder.expression;
+        this.pool = builder.pool;
+        this.executor = builder.executor;
+        this.chunkSize = builder.chunkSize;
+    }
+
+    /**
+     * Create a new builder to configure a batch evaluator.
+     * @param expression The expression to evaluate for every record
+     * @return The builder
+     */
+    public static Builder builder(CompiledExpression expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Invalid expression: null");
+        }
+        return new Builder(expression);
+    }
+
+    /**
+     * @return The expression evaluated for every record
+     */
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluate the expression for every context.
+     * @param contexts The maps of variable-value pairs, one per record
+     * @return The calculated values, in the order of the contexts
+     */
+    public Object[] evaluate(List<? extends Map<String, ?>> contexts) {
+        List<? extends Map<String, ?>> records = randomAccess(contexts);
+        Object[] results = new Object[records.size()];
+        forEachChunk(results.length, (from, to) -> {
+            Object[] slots = newSlots();
+            for (int i = from; i < to; i++) {
+                expression.bind(records.get(i), slots);
+                results[i] = expression.run(slots);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Evaluate the expression for every context.
+     * @param contexts The maps of variable-value pairs, one per record
+     * @return The calculated values, in the order of the contexts
+     */
+    public Object[] evaluate(Map<String, ?>[] contexts) {
+        return evaluate(Arrays.asList(contexts));
+    }
+
+    /**
+     * Evaluate the expression for every row of the columns.
+     * @param columns The values of the variables
+     * @return The calculated values, in the order of the rows
+     */
+    public Object[] evaluate(Columns columns) {
+        ColumnBinding binding = columns.bind(expression.variableNames());
+        Object[] results = new Object[columns.size];
+        forEachChunk(results.length, (from, to) -> {
+            ColumnBinding.Rows rows = binding.rows();
+            Object[] slots = rows.slots();
+            for (int i = from; i < to; i++) {
+                rows.load(i);
+                results[i] = expression.run(slots);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Evaluate the expression as a number for every context (see {@link CompiledExpression#evaluateDouble(Map)}).
+     * @param contexts The maps of variable-value pairs, one per record
+     * @return The calculated values, in the order of the contexts
+     */
+    public double[] evaluateDouble(List<? extends Map<String, ?>> contexts) {
+        List<? extends Map<String, ?>> records = randomAccess(contexts);
+        double[] results = new double[records.size()];
+        forEachChunk(results.length, (from, to) -> {
+            Object[] slots = newSlots();
+            for (int i = from; i < to; i++) {
+                expression.bind(records.get(i), slots);
+                results[i] = expression.runDouble(slots);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Evaluate the expression as a number for every context.
+     * @param contexts The maps of variable-value pairs, one per record
+     * @return The calculated values, in the order of the contexts
+     */
+    public double[] evaluateDouble(Map<String, ?>[] contexts) {
+        return evaluateDouble(Arrays.asList(contexts));
+    }
+
+    /**
+     * Evaluate the expression as a number for every row of the columns.
+     * @param columns The values of the variables
+     * @return The calculated values, in the order of the rows
+     */
+    public double[] evaluateDouble(Columns columns) {
+        ColumnBinding binding = columns.bind(expression.variableNames());
+        double[] results = new double[columns.size];
+        forEachChunk(results.length, (from, to) -> {
+            ColumnBinding.Rows rows = binding.rows();
+            Object[] slots = rows.slots();
+            for (int i = from; i < to; i++) {
+                rows.load(i);
+                results[i] = expression.runDouble(slots);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Evaluate the expression as an integer for every context (see {@link CompiledExpression#evaluateLong(Map)}).
+     * @param contexts The maps of variable-value pairs, one per record
+     * @return The calculated values, in the order of the contexts
+     */
+    public long[] evaluateLong(List<? extends Map<String, ?>> contexts) {
+        List<? extends Map<String, ?>> records = randomAccess(contexts);
+        long[] results = new long[records.size()];
+        forEachChunk(results.length, (from, to) -> {
+            Object[] slots = newSlots();
+            for (int i = from; i < to; i++) {
+                expression.bind(records.get(i), slots);
+                results[i] = expression.runLong(slots);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Evaluate the expression as an integer for every context.
+     * @param contexts The maps of variable-value pairs, one per record
+     * @return The calculated values, in the order of the contexts
+     */
+    public long[] evaluateLong(Map<String, ?>[] contexts) {
+        return evaluateLong(Arrays.asList(contexts));
+    }
+
+    /**
+     * Evaluate the expression as an integer for every row of the columns.
+     * @param columns The values of the variables
+     * @return The calculated values, in the order of the rows
+     */
+    public long[] evaluateLong(Columns columns) {
+        ColumnBinding binding = columns.bind(expression.variableNames());
+        long[] results = new long[columns.size];
+        forEachChunk(results.length, (from, to) -> {
+            ColumnBinding.Rows rows = binding.rows();
+            Object[] slots = rows.slots();
+            for (int i = from; i < to; i++) {
+                rows.load(i);
+                results[i] = expression.runLong(slots);
+            }
+        });
+        return results;
+    }
+
+    private Object[] newSlots() {
+        int count = expression.variableNames().length;
+        return count == 0 ? ConstantFolder.NO_SLOTS : new Object[count];
+    }
+
+    /**
+     * @return The list itself if it has fast indexed access (eg: ArrayList), else a copy that does
+     */
+    private static <T> List<T> randomAccess(List<T> list) {
+        return list instanceof RandomAccess ? list : new ArrayList<>(list);
+    }
+
+    /**
+     * Run a chunk of work for every range of records: in the calling thread for small batches,
+     * else in parallel. Returns once all the chunks are done.
+     * @param size The number of records
+     * @param chunk The work to do on a range of records
+     */
+    private void forEachChunk(int size, Chunk chunk) {
+        if (size <= chunkSize) {
+            chunk.run(0, size);
+        } else if (executor == null) {
+            pool.invoke(new ChunkTask(chunk, 0, size, chunkSize));
+        } else {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int from = 0; from < size; from += chunkSize) {
+                int start = from;
+                int end = Math.min(from + chunkSize, size);
+                futures.add(CompletableFuture.runAsync(() -> chunk.run(start, end), executor));
+            }
+
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                // Rethrow the exception of the expression as it is
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Work to do on a range of records.
+     */
+    private interface Chunk {
+        /**
+         * @param from The index of the first record (inclusive)
+         * @param to The index of the last record (exclusive)
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits a range of records in halves until the chunks are small enough.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private final Chunk chunk;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        ChunkTask(Chunk chunk, int from, int to, int chunkSize) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                chunk.run(from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(chunk, from, middle, chunkSize), new ChunkTask(chunk, middle, to, chunkSize));
+        }
+    }
+
+
+    /**
+     * The values of the variables for a batch of records, as one array (column) per variable.
+     * Numeric columns are primitive arrays (double[], long[] or int[]), which numeric evaluation reads without
+     * boxing their values; any other column is an Object[].
+     * All the columns have the same number of rows. Variables without a column evaluate to their default value.
+     */
+    public static final class Columns {
+        private final int size;
+        private final Map<String, Object> columns = new HashMap<>();
+
+        private Columns(int size) {
+            this.size = size;
+        }
+
+        /**
+         * Create an empty set of columns.
+         * @param size The number of rows
+         * @return The columns
+         */
+        public static Columns of(int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("Invalid size: " + size);
+            }
+            return new Columns(size);
+        }
+
+        /**
+         * @return The number of rows
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Set the values of a numeric variable.
+         * @param variable The variable name
+         * @param values The value of the variable for every row
+         * @return These columns
+         */
+        public Columns put(String variable, double[] values) {
+            return putColumn(variable, values, values.length);
+        }
+
+        /**
+         * Set the values of an integer variable.
+         * @param variable The variable name
+         * @param values The value of the variable for every row
+         * @return These columns
+         */
+        public Columns put(String variable, long[] values) {
+            return putColumn(variable, values, values.length);
+        }
+
+        /**
+         * Set the values of an integer variable.
+         * @param variable The variable name
+         * @param values The value of the variable for every row
+         * @return These columns
+         */
+        public Columns put(String variable, int[] values) {
+            return putColumn(variable, values, values.length);
+        }
+
+        /**
+         * Set the values of a variable.
+         * @param variable The variable name
+         * @param values The value of the variable for every row
+         * @return These columns
+         */
+        public Columns put(String variable, Object[] values) {
+            return putColumn(variable, values, values.length);
+        }
+
+        private Columns putColumn(String variable, Object values, int length) {
+            if (length != size) {
+                throw new IllegalArgumentException("Invalid column " + variable + ": expected " + size + " rows but got " + length);
+            }
+            columns.put(variable, values);
+            return this;
+        }
+
+        /**
+         * Resolve the columns of the variables of an expression.
+         * @param variables The variable names, indexed by their slot
+         * @return The binding of the columns to the slots
+         */
+        ColumnBinding bind(String[] variables) {
+            Object[] slotColumns = new Object[variables.length];
+            for (int i = 0; i < variables.length; i++) {
+                slotColumns[i] = columns.get(variables[i]);
+            }
+            return new ColumnBinding(slotColumns);
+        }
+    }
+
+    /**
+     * The columns of the variables of an expression, indexed by slot.
+     */
+    private static final class ColumnBinding {
+        private final Object[] columns;
+
+        ColumnBinding(Object[] columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * @return The slots of a new range of rows, for a single thread
+         */
+        Rows rows() {
+            return new Rows(columns);
+        }
+
+        /**
+         * The slots of a range of rows. A primitive column is bound once to its slot, as a {@link PrimitiveSlot}
+         * that is moved from row to row, so that numeric evaluation never boxes its values.
+         */
+        static final class Rows {
+            private final Object[] columns;
+            private final Object[] slots;
+            private final PrimitiveSlot[] primitives;
+
+            Rows(Object[] columns) {
+                this.columns = columns;
+                this.slots = columns.length == 0 ? ConstantFolder.NO_SLOTS : new Object[columns.length];
+                this.primitives = new PrimitiveSlot[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    primitives[i] = PrimitiveSlot.of(columns[i]);
+                    slots[i] = primitives[i];
+                }
+            }
+
+            /**
+             * @return The values of the variables, indexed by their slot
+             */
+            Object[] slots() {
+                return slots;
+            }
+
+            /**
+             * Load the values of a row into the slots.
+             * @param row The index of the row
+             */
+            void load(int row) {
+                for (int i = 0; i < columns.length; i++) {
+                    if (primitives[i] != null) {
+                        primitives[i].moveTo(row);
+                    } else if (columns[i] != null) {
+                        slots[i] = ((Object[]) columns[i])[row];
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Builder for {@link BatchEvaluator}.
+     */
+    public static final class Builder {
+        private final CompiledExpression expression;
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+        private Executor executor;
+        private int chunkSize = 1024;
+
+        private Builder(CompiledExpression expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * Evaluate large batches on the given fork/join pool (the common pool by default).
+         * @param pool The pool
+         * @return This builder
+         */
+        public Builder pool(ForkJoinPool pool) {
+            if (pool == null) {
+                throw new IllegalArgumentException("Invalid pool: null");
+            }
+            this.pool = pool;
+            this.executor = null;
+            return this;
+        }
+
+        /**
+         * Evaluate large batches on the given executor instead of a fork/join pool, one task per chunk.
+         * @param executor The executor
+         * @return This builder
+         */
+        public Builder executor(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("Invalid executor: null");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Set the number of records evaluated by a single task (1024 by default).
+         * Batches up to this size are evaluated in the calling thread.
+         * @param chunkSize The number of records per task
+         * @return This builder
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @return The new batch evaluator
+         */
+        public BatchEvaluator build() {
+            return new BatchEvaluator(this);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.result.ExpressionResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression that has been compiled once into an immutable tree, ready to be evaluated many times.
+ * Operators are resolved at compile time, so evaluation does not parse JSON or look up operators again.
+ * Variables (`${name}` placeholders and the `VAR` operator) are resolved to slots at compile time, and
+ * bound to their values at evaluation time.
+ * JSON documents flow between operators as JSONObject/JSONArray values: a serialized document is parsed once,
+ * and a document is serialized only when its string form is needed (eg: {@link Object#toString()} on the result).
+ * A document result never shares objects or arrays with the expression (eg: an object literal, or a document
+ * computed at compile time), so changing it does not change what later evaluations return; it may share them with
+ * the values in the context.
+ * Instances are thread-safe and can be cached and shared freely.
+ * @see ExpressionParser#compile(String)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class CompiledExpression {
+    private final ExpressionNode root;
+    private final String[] variables;
+    private final DecimalMode decimalMode;
+    private final ExpressionBackend backend;
+    // True if the expression is a `SET` or `SET_MANY` call, whose document 1.x returned serialized
+    private final boolean serializedResult;
+    // The method handle chains of the expression, for the METHOD_HANDLE backend
+    private final MethodHandle handle;
+    private final MethodHandle doubleHandle;
+
+    CompiledExpression(ExpressionNode root, String[] variables, DecimalMode decimalMode, boolean serializedResult) {
+        this(root, variables, decimalMode, ExpressionBackend.INTERPRETER, serializedResult);
+    }
+
+    private CompiledExpression(ExpressionNode root, String[] variables, DecimalMode decimalMode, ExpressionBackend backend,
+                               boolean serializedResult) {
+        this.root = root;
+        this.variables = variables;
+        this.decimalMode = decimalMode;
+        this.backend = backend;
+        this.serializedResult = serializedResult;
+        this.handle = backend == ExpressionBackend.METHOD_HANDLE ? root.toHandle() : null;
+        this.doubleHandle = backend == ExpressionBackend.METHOD_HANDLE ? root.toDoubleHandle() : null;
+    }
+
+    /**
+     * Get a copy of this expression that is evaluated with the given backend.
+     * The backend can be chosen per expression, eg: method handles only for the hottest expressions.
+     * @param backend The evaluation backend
+     * @return The expression evaluated with the given backend
+     */
+    public CompiledExpression withBackend(ExpressionBackend backend) {
+        return backend == this.backend ? this : new CompiledExpression(root, variables, decimalMode, backend, serializedResult);
+    }
+
+    /**
+     * @return The backend used to evaluate this expression
+     */
+    public ExpressionBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * @return The decimal mode of the arithmetic operators, or null if they compute on doubles
+     * @see ExpressionParser#compile(String, DecimalMode)
+     */
+    public DecimalMode getDecimalMode() {
+        return decimalMode;
+    }
+
+    /**
+     * Get the names of the variables used in the expression.
+     * @return The variable names, in the order of their slots
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * Check if the expression was folded into a constant at compile time.
+     * Pure operators with constant operands are evaluated ahead of time; impure operators (like JWT) never are.
+     * @return True if the expression always evaluates to the same value
+     */
+    public boolean isConstant() {
+        return root.isConstant();
+    }
+
+    /**
+     * Partially evaluate the expression with a known subset of its variables (eg: tenant configuration).
+     * The known variables are replaced by their values and the resulting constant subtrees are folded,
+     * producing a smaller residual expression that only depends on the remaining variables.
+     * @param known The map of variable-value pairs that are already known
+     * @return The residual expression
+     */
+    public CompiledExpression partiallyEvaluate(Map<String, ?> known) {
+        ConstantFolder folder = new ConstantFolder(variables, bind(known));
+        return new CompiledExpression(root.fold(folder), folder.residualVariables(), decimalMode, backend,
+                serializedResult);
+    }
+
+    /**
+     * Evaluate the compiled expression, without binding any variables.
+     * @return The calculated value of the expression
+     */
+    public Object evaluate() {
+        return run(variables.length == 0 ? ConstantFolder.NO_SLOTS : new Object[variables.length]);
+    }
+
+    /**
+     * Evaluate the compiled expression, binding its variables to the values in the given context.
+     * Each variable is looked up only once per evaluation.
+     * Variables missing from the context evaluate to their default value.
+     * @param context The map of variable-value pairs
+     * @return The result holding the calculated value of the expression along with the context
+     */
+    public ExpressionResult evaluate(Map<String, ?> context) {
+        ExpressionResult result = new ExpressionResult();
+        result.setResult(run(bind(context)));
+        result.setData(context);
+        return result;
+    }
+
+    /**
+     * Evaluate the compiled expression as a number, without binding any variables.
+     * @return The calculated value of the expression, converted to a double
+     * @see #evaluateDouble(Map)
+     */
+    public double evaluateDouble() {
+        return runDouble(variables.length == 0 ? ConstantFolder.NO_SLOTS : new Object[variables.length]);
+    }
+
+    /**
+     * Evaluate the compiled expression as a number, binding its variables to the values in the given context.
+     * Nested arithmetic is computed on primitive doubles: intermediate results are never boxed, and
+     * numeric literals are converted once, at compile time.
+     * @param context The map of variable-value pairs
+     * @return The calculated value of the expression, converted to a double
+     */
+    public double evaluateDouble(Map<String, ?> context) {
+        return runDouble(bind(context));
+    }
+
+    /**
+     * Evaluate the compiled expression as an integer, without binding any variables.
+     * @return The calculated value of the expression, converted to a long
+     * @see #evaluateLong(Map)
+     */
+    public long evaluateLong() {
+        return runLong(variables.length == 0 ? ConstantFolder.NO_SLOTS : new Object[variables.length]);
+    }
+
+    /**
+     * Evaluate the compiled expression as an integer, binding its variables to the values in the given context.
+     * Additions, subtractions and multiplications of integers (literals, and variables bound to integers) are
+     * computed exactly on primitive longs (falling back to doubles on overflow); any other result is computed on
+     * doubles and truncated.
+     * @param context The map of variable-value pairs
+     * @return The calculated value of the expression, converted to a long
+     */
+    public long evaluateLong(Map<String, ?> context) {
+        return runLong(bind(context));
+    }
+
+    /**
+     * Evaluate the compiled expression as an exact decimal, without binding any variables.
+     * @return The calculated value of the expression, converted to a BigDecimal
+     * @see #evaluateDecimal(Map)
+     */
+    public BigDecimal evaluateDecimal() {
+        return root.evalDecimal(variables.length == 0 ? ConstantFolder.NO_SLOTS : new Object[variables.length]);
+    }
+
+    /**
+     * Evaluate the compiled expression as an exact decimal, binding its variables to the values in the given context.
+     * If the expression was compiled with a {@link DecimalMode}, arithmetic is computed exactly on scaled longs
+     * and a BigDecimal is allocated only for the result (or when a value does not fit in a long).
+     * Otherwise, the result of the double arithmetic is converted to a BigDecimal.
+     * @param context The map of variable-value pairs
+     * @return The calculated value of the expression, converted to a BigDecimal
+     * @throws ArithmeticException on division by zero in decimal mode
+     */
+    public BigDecimal evaluateDecimal(Map<String, ?> context) {
+        return root.evalDecimal(bind(context));
+    }
+
+    /**
+     * Get the expression as a string encoded JSON Array, with constant subtrees folded.
+     * An expression folded into a constant is returned as its JSON value.
+     * @return The string representation of the (residual) expression
+     */
+    @Override
+    public String toString() {
+        return JSONObject.valueToString(root.toJson(variables));
+    }
+
+    /**
+     * Evaluate the expression with the selected backend.
+     * @param slots The values of the variables, indexed by their slot
+     * @return The calculated value of the expression
+     */
+    Object run(Object[] slots) {
+        if (handle == null) {
+            return root.eval(slots);
+        }
+
+        try {
+            return (Object) handle.invokeExact(slots);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // Operators do not throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Convert a result to what the `parseExpression()` methods return: like 1.x, they return the document of
+     * a `SET` or `SET_MANY` expression serialized, as a String.
+     * @param value The result of the expression
+     * @return The result of `parseExpression()`
+     */
+    Object toParseResult(Object value) {
+        return serializedResult && (value instanceof JSONObject || value instanceof JSONArray) ? value.toString() : value;
+    }
+
+    /**
+     * Evaluate the expression as a number with the selected backend.
+     * @param slots The values of the variables, indexed by their slot
+     * @return The calculated value of the expression
+     */
+    double runDouble(Object[] slots) {
+        if (doubleHandle == null) {
+            return root.evalDouble(slots);
+        }
+
+        try {
+            return (double) doubleHandle.invokeExact(slots);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // Operators do not throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Evaluate the expression as an integer.
+     * @param slots The values of the variables, indexed by their slot
+     * @return The calculated value of the expression
+     */
+    long runLong(Object[] slots) {
+        return root.evalLong(slots);
+    }
+
+    /**
+     * @return The variable names, indexed by their slot
+     */
+    String[] variableNames() {
+        return variables;
+    }
+
+    /**
+     * Resolve the values of the variables into existing slots, eg: to reuse the slots for many contexts.
+     * @param context The map of variable-value pairs
+     * @param slots The values of the variables, indexed by their slot
+     */
+    void bind(Map<String, ?> context, Object[] slots) {
+        for (int i = 0; i < variables.length; i++) {
+            slots[i] = context != null ? context.get(variables[i]) : null;
+        }
+    }
+
+    /**
+     * Resolve the values of the variables into slots.
+     * @param context The map of variable-value pairs
+     * @return The values of the variables, indexed by their slot
+     */
+    private Object[] bind(Map<String, ?> context) {
+        if (variables.length == 0) {
+            return ConstantFolder.NO_SLOTS;
+        }
+
+        Object[] slots = new Object[variables.length];
+        if (context != null) {
+            for (int i = 0; i < variables.length; i++) {
+                slots[i] = context.get(variables[i]);
+            }
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,97 @@
+package in.eko.exprutils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * State of an optimization pass over a compiled expression tree (see {@link ExpressionNode#fold(ConstantFolder)}).
+ * Pure operator calls with constant operands are evaluated ahead of time, and variables with known values
+ * are replaced by constants. The remaining (residual) variables are renumbered into new slots.
+ * A folder instance is used for a single pass over a single expression.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class ConstantFolder {
+    static final Object[] NO_SLOTS = new Object[0];
+
+    private final Object[] known;
+    private final int[] residualSlots;
+    private final String[] variables;
+    private final List<String> residualVariables = new ArrayList<>();
+    private final boolean[] documents;
+
+    /**
+     * @param variables The variable names of the expression, indexed by their slot
+     * @param known The known values of the variables, indexed by their slot (null when unknown)
+     */
+    ConstantFolder(String[] variables, Object[] known) {
+        this(variables, known, null);
+    }
+
+    /**
+     * @param variables The variable names of the expression, indexed by their slot
+     * @param known The known values of the variables, indexed by their slot (null when unknown)
+     * @param documents True for the variables that are used only as JSON documents, indexed by their slot
+     *                  (null to keep the decisions of a previous pass)
+     */
+    ConstantFolder(String[] variables, Object[] known, boolean[] documents) {
+        this.variables = variables;
+        this.known = known;
+        this.documents = documents;
+        this.residualSlots = new int[variables.length];
+        Arrays.fill(residualSlots, -1);
+    }
+
+    /**
+     * Get the known value of a variable.
+     * @param slot The slot of the variable
+     * @return The known value, or null if the value is not known
+     */
+    Object known(int slot) {
+        return known[slot];
+    }
+
+    /**
+     * Check if a variable is used only as a JSON document, so that its parsed value can replace its
+     * serialized value (see {@link ExpressionNode.Document}).
+     * @param slot The slot of the variable
+     * @return True if the variable is used only as a document
+     */
+    boolean isDocument(int slot) {
+        return documents == null || documents[slot];
+    }
+
+    /**
+     * Get the new slot of a variable that remains in the residual expression.
+     * @param slot The original slot of the variable
+     * @return The slot of the variable in the residual expression
+     */
+    int residualSlot(int slot) {
+        if (residualSlots[slot] < 0) {
+            residualSlots[slot] = residualVariables.size();
+            residualVariables.add(variables[slot]);
+        }
+        return residualSlots[slot];
+    }
+
+    /**
+     * @return The variable names of the residual expression, indexed by their new slot
+     */
+    String[] residualVariables() {
+        return residualVariables.toArray(new String[0]);
+    }
+
+    /**
+     * Evaluate a node whose operands are all constants.
+     * @param node The node to evaluate
+     * @return The constant node with the computed value, or the node itself if it fails to evaluate
+     *          (so that the failure is reported at evaluation time, as without folding)
+     */
+    static ExpressionNode evaluate(ExpressionNode node) {
+        try {
+            return new ExpressionNode.Constant(node.eval(NO_SLOTS));
+        } catch (RuntimeException e) {
+            return node;
+        }
+    }
+}
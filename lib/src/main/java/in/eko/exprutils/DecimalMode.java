@@ -0,0 +1,83 @@
+package in.eko.exprutils;
+
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * The scale and rounding of exact decimal arithmetic, for computing money with expressions.
+ * In decimal mode, the result of every arithmetic operator (`+`, `-`, `*`, `/`) is a BigDecimal rounded
+ * to the given number of decimal places; the operands themselves are used exactly.
+ * Instances are immutable.
+ * @see ExpressionParser#compile(String, DecimalMode)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class DecimalMode {
+    /**
+     * Two decimal places with banker's rounding, for currency.
+     */
+    public static final DecimalMode CURRENCY = new DecimalMode(2, RoundingMode.HALF_EVEN);
+
+    // Largest scale for which 10^scale fits in a long
+    private static final int MAX_SCALE = 18;
+
+    private final int scale;
+    private final RoundingMode rounding;
+
+    private DecimalMode(int scale, RoundingMode rounding) {
+        this.scale = scale;
+        this.rounding = rounding;
+    }
+
+    /**
+     * Get a decimal mode.
+     * @param scale The number of decimal places of the results, from 0 to 18
+     * @param rounding How to round results that have more decimal places
+     * @return The decimal mode
+     * @throws IllegalArgumentException if the scale is out of range or the rounding mode is null
+     */
+    public static DecimalMode of(int scale, RoundingMode rounding) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Invalid scale: " + scale);
+        }
+        if (rounding == null) {
+            throw new IllegalArgumentException("Invalid rounding: null");
+        }
+        return new DecimalMode(scale, rounding);
+    }
+
+    /**
+     * @return The number of decimal places of the results
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return How results with more decimal places are rounded
+     */
+    public RoundingMode getRounding() {
+        return rounding;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DecimalMode)) {
+            return false;
+        }
+        DecimalMode other = (DecimalMode) o;
+        return scale == other.scale && rounding == other.rounding;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(scale, rounding);
+    }
+
+    @Override
+    public String toString() {
+        return "DecimalMode{scale=" + scale + ", rounding=" + rounding + "}";
+    }
+}
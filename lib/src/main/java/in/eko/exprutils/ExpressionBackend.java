@@ -0,0 +1,23 @@
+package in.eko.exprutils;
+
+/**
+ * The strategy used to evaluate a {@link CompiledExpression}.
+ * @see CompiledExpression#withBackend(ExpressionBackend)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public enum ExpressionBackend {
+    /**
+     * Walk the compiled node tree on every evaluation (default).
+     */
+    INTERPRETER,
+
+    /**
+     * Translate the compiled tree into a single chain of method handles, which calls the operators directly.
+     * Arithmetic is chained on primitive doubles, and is boxed only when the result leaves the chain.
+     * Once an expression is evaluated often enough, the JVM specializes the chain for that expression so
+     * that the JIT can inline it as a whole. Nodes without a method handle translation are evaluated
+     * by the interpreter within the chain.
+     * No class is generated per expression, so a large expression catalog does not grow the metaspace.
+     */
+    METHOD_HANDLE
+}
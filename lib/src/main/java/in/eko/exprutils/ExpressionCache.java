@@ -0,0 +1,251 @@
+package in.eko.exprutils;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * A bounded, concurrent cache of compiled expressions, keyed by the expression text.
+ * Reads are served from a segmented (striped) hash table without global locking. Once the configured
+ * size or weight limit is reached, the least recently used expressions are evicted.
+ * @see ExpressionParser#setCache(ExpressionCache)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class ExpressionCache {
+    /**
+     * The default limit of the total length (in characters) of the cached expression texts
+     */
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 1_000_000;
+
+    private final LoadingCache<String, CompiledExpression> cache;
+
+    private ExpressionCache(Builder builder, Function<String, CompiledExpression> compiler) {
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats();
+
+        if (builder.maximumWeight >= 0) {
+            // Weigh expressions by the length of their text
+            cacheBuilder.maximumWeight(builder.maximumWeight)
+                    .weigher((String key, CompiledExpression value) -> key.length());
+        } else {
+            cacheBuilder.maximumSize(builder.maximumSize);
+        }
+
+        if (builder.expireAfterAccess != null) {
+            cacheBuilder.expireAfterAccess(builder.expireAfterAccess);
+        }
+
+        if (builder.concurrencyLevel > 0) {
+            cacheBuilder.concurrencyLevel(builder.concurrencyLevel);
+        }
+
+        this.cache = cacheBuilder.build(CacheLoader.from(compiler::apply));
+    }
+
+    /**
+     * Create a new builder to configure an expression cache.
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the compiled form of an expression, compiling and caching it if it is not cached yet.
+     * @param expr The expression as a string encoded JSON Array
+     * @return The compiled expression
+     * @throws IllegalArgumentException If `expr` is not a valid expression. Invalid expressions are not cached.
+     */
+    public CompiledExpression get(String expr) {
+        try {
+            return cache.getUnchecked(expr);
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the compiled form of an expression only if it is already cached.
+     * @param expr The expression as a string encoded JSON Array
+     * @return The compiled expression, or null if it is not cached
+     */
+    public CompiledExpression getIfPresent(String expr) {
+        return cache.getIfPresent(expr);
+    }
+
+    /**
+     * Remove all expressions from the cache. The statistics are not reset.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get the approximate number of expressions in the cache.
+     * @return The number of cached expressions
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Get a snapshot of the cache statistics, to help sizing the cache in production.
+     * @return The cache statistics
+     */
+    public Stats stats() {
+        return new Stats(cache.stats());
+    }
+
+
+    /**
+     * Builder for {@link ExpressionCache}.
+     * By default, the cache holds expressions of up to {@link #DEFAULT_MAXIMUM_WEIGHT} characters in total, so
+     * that large expressions (eg: with documents inlined as literals) cannot hold an unbounded amount of memory;
+     * entries never expire.
+     */
+    public static final class Builder {
+        private long maximumSize = -1;
+        private long maximumWeight = DEFAULT_MAXIMUM_WEIGHT;
+        private Duration expireAfterAccess;
+        private int concurrencyLevel;
+
+        private Builder() {
+        }
+
+        /**
+         * Limit the number of cached expressions, instead of their total length.
+         * @param maximumSize The maximum number of expressions to keep
+         * @return This builder
+         */
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("maximumSize must not be negative");
+            }
+            this.maximumSize = maximumSize;
+            this.maximumWeight = -1;
+            return this;
+        }
+
+        /**
+         * Limit the total length (in characters) of the cached expression texts, instead of their number.
+         * @param maximumWeight The maximum total length of the cached expressions
+         * @return This builder
+         */
+        public Builder maximumWeight(long maximumWeight) {
+            if (maximumWeight < 0) {
+                throw new IllegalArgumentException("maximumWeight must not be negative");
+            }
+            this.maximumWeight = maximumWeight;
+            this.maximumSize = -1;
+            return this;
+        }
+
+        /**
+         * Expire expressions that have not been used for the given duration.
+         * @param duration The time after the last access when an expression expires
+         * @return This builder
+         */
+        public Builder expireAfterAccess(Duration duration) {
+            this.expireAfterAccess = duration;
+            return this;
+        }
+
+        /**
+         * Set the number of segments the cache is split into, to tune for the expected number of concurrent writers.
+         * @param concurrencyLevel The estimated number of threads that update the cache concurrently
+         * @return This builder
+         */
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        /**
+         * Build the expression cache.
+         * @return The new, empty cache
+         */
+        public ExpressionCache build() {
+            return new ExpressionCache(this, ExpressionParser::compile);
+        }
+
+        /**
+         * @param compiler The function that compiles the expressions missing from the cache
+         * @return The new cache, eg: of an {@link ExpressionEngine}
+         */
+        ExpressionCache build(Function<String, CompiledExpression> compiler) {
+            return new ExpressionCache(this, compiler);
+        }
+    }
+
+
+    /**
+     * An immutable snapshot of the statistics of an {@link ExpressionCache}.
+     */
+    public static final class Stats {
+        private final com.google.common.cache.CacheStats stats;
+
+        private Stats(com.google.common.cache.CacheStats stats) {
+            this.stats = stats;
+        }
+
+        /**
+         * @return The number of lookups that found a cached expression
+         */
+        public long hitCount() {
+            return stats.hitCount();
+        }
+
+        /**
+         * @return The number of lookups that had to compile the expression
+         */
+        public long missCount() {
+            return stats.missCount();
+        }
+
+        /**
+         * @return The ratio of lookups that found a cached expression, or 1.0 if there were no lookups
+         */
+        public double hitRate() {
+            return stats.hitRate();
+        }
+
+        /**
+         * @return The number of expressions that failed to compile
+         */
+        public long loadExceptionCount() {
+            return stats.loadExceptionCount();
+        }
+
+        /**
+         * @return The total time spent compiling expressions, in nanoseconds
+         */
+        public long totalLoadTime() {
+            return stats.totalLoadTime();
+        }
+
+        /**
+         * @return The average time spent compiling an expression, in nanoseconds
+         */
+        public double averageLoadPenalty() {
+            return stats.averageLoadPenalty();
+        }
+
+        /**
+         * @return The number of expressions evicted due to the size limit or expiry
+         */
+        public long evictionCount() {
+            return stats.evictionCount();
+        }
+
+        @Override
+        public String toString() {
+            return stats.toString();
+        }
+    }
+}
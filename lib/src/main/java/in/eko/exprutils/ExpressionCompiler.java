@@ -0,0 +1,383 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.JsonBackend;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles an expression represented as nested JSON Arrays into a tree of {@link ExpressionNode}s.
+ * A compiler instance collects the variables of a single expression, and must not be reused.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class ExpressionCompiler {
+    /**
+     * The operator to reference a variable: ['VAR', 'name'] or ['VAR', 'name', default-value]
+     */
+    static final String VAR = "VAR";
+
+    static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{(\\w+)\\}");
+
+    private final Map<String, Operator> operators;
+    private final DecimalMode decimalMode;
+    private final JsonBackend jsonBackend;
+    private final List<String> variables = new ArrayList<>();
+    // The number of references to each variable, and how many of them are JSON document operands
+    private final List<Integer> uses = new ArrayList<>();
+    private final List<Integer> documentUses = new ArrayList<>();
+
+    /**
+     * @param operators The registered operators, by name
+     * @param decimalMode The decimal mode of the arithmetic operators, or null for arithmetic on doubles
+     * @param jsonBackend The JSON backend to parse documents with
+     */
+    ExpressionCompiler(Map<String, Operator> operators, DecimalMode decimalMode, JsonBackend jsonBackend) {
+        this.operators = operators;
+        this.decimalMode = decimalMode;
+        this.jsonBackend = jsonBackend;
+    }
+
+    /**
+     * Compile the expression, folding constant subtrees into literals.
+     * @param expr The expression to compile as JSONArray
+     * @return The compiled expression
+     * @throws IllegalArgumentException if the operator is not valid
+     */
+    CompiledExpression compile(JSONArray expr) throws JSONException {
+        ExpressionNode root = compileNode(expr);
+        String[] names = variables.toArray(new String[0]);
+
+        boolean[] documents = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            documents[i] = documentUses.get(i).equals(uses.get(i));
+        }
+
+        // 1.x returned the document of SET serialized, from parseExpression()
+        String operator = expr.getString(0);
+        boolean serializedResult = "SET".equals(operator) || "SET_MANY".equals(operator);
+
+        ConstantFolder folder = new ConstantFolder(names, new Object[names.length], documents);
+        return new CompiledExpression(root.fold(folder), folder.residualVariables(), decimalMode, serializedResult);
+    }
+
+    /**
+     * Private recursive function to compile the expression represented as nested JSON Arrays
+     * @param expr The expression to compile as JSONArray
+     * @return The root node of the compiled expression
+     * @throws IllegalArgumentException if the operator is not valid
+     */
+    private ExpressionNode compileNode(JSONArray expr) throws JSONException {
+        // Get the operator
+        String operator = expr.getString(0);
+
+        if (VAR.equals(operator)) {
+            return compileVariable(expr);
+        }
+
+        // Get the operator definition from the registry
+        Operator op = operators.get(operator);
+        if (op == null) {
+            throw new IllegalArgumentException("Invalid operator: " + operator);
+        }
+
+        int operandCount = expr.length() - 1;
+        if (operandCount > op.getMaxArity() && op.isLenient()) {
+            // Extra operands are ignored, without being compiled
+            expr = truncate(expr, op.getMaxArity());
+        } else if (operandCount < op.getMinArity() || operandCount > op.getMaxArity()) {
+            throw new IllegalArgumentException("Invalid " + operator + ": expected " + arity(op) + " but got " + operandCount);
+        }
+
+        if (op.isLazy()) {
+            return new ExpressionNode.LazyCall(operator, op.getLazyFunction(), op.isPure(), compileOperands(expr));
+        } else if (op.isVariadic()) {
+            return new ExpressionNode.VariadicCall(operator, op.getVariadicFunction(), op.isPure(), compileOperands(expr));
+        } else if (op.isArithmetic() && decimalMode != null) {
+            return new ExpressionNode.DecimalArithmetic(operator, decimalMode,
+                    compileOperand(expr, 1),
+                    compileOperand(expr, 2));
+        } else if (op.isArithmetic()) {
+            return new ExpressionNode.Arithmetic(operator,
+                    compileOperand(expr, 1),
+                    compileOperand(expr, 2));
+        }
+        // Missing optional operands are null
+        return new ExpressionNode.Call(operator, op.getFunction(), op.isPure(),
+                compileCallOperand(op, expr, 1),
+                compileCallOperand(op, expr, 2),
+                compileCallOperand(op, expr, 3));
+    }
+
+    /**
+     * Compile an operand of an operator call. A literal JSON path operand is compiled into a {@link JsonPath},
+     * so that it is not parsed again on every evaluation, and a JSON document operand is parsed at most once.
+     * The keys of a literal object of values by path (eg: of `SET_MANY`) are compiled the same way.
+     * Literal options (eg: of `JWT`) are compiled by the operator once.
+     * @param op The operator
+     * @param expr The expression
+     * @param index The position of the operand in the expression
+     * @return The compiled operand
+     */
+    private ExpressionNode compileCallOperand(Operator op, JSONArray expr, int index) throws JSONException {
+        if (index == op.getPathOperand() && op.isPathKeys() && expr.opt(index) instanceof JSONObject) {
+            // Values by path, eg: of SET_MANY
+            ExpressionNode values = compilePathValues((JSONObject) expr.get(index));
+            if (values != null) {
+                return values;
+            }
+        }
+
+        ExpressionNode operand = compileOperand(expr, index);
+        if (index == 1 && (op.getPathOperand() > 0 || op.isParseDocument())) {
+            // The document of a JSON path
+            int slot = -1;
+            if (operand instanceof ExpressionNode.Variable) {
+                slot = ((ExpressionNode.Variable) operand).getSlot();
+                documentUses.set(slot, documentUses.get(slot) + 1);
+            }
+            return new ExpressionNode.Document(operand, slot, op.isParseDocument(), jsonBackend);
+        } else if (index == op.getPathOperand() && operand.isConstant()) {
+            Object path = operand.eval(null);
+            try {
+                if (path instanceof String) {
+                    return new ExpressionNode.Constant(JsonPath.compile((String) path));
+                } else if (path instanceof JSONObject) {
+                    // Named paths, eg: of GET_MANY
+                    return new ExpressionNode.Constant(JsonPaths.compile((JSONObject) path));
+                }
+            } catch (IllegalArgumentException e) {
+                // Not a valid path: leave it to the operator
+            }
+        } else if (index == op.getOptionsOperand() && operand.isConstant()) {
+            try {
+                return new ExpressionNode.Constant(op.getOptionsCompiler().apply(operand.eval(null)));
+            } catch (IllegalArgumentException e) {
+                // Not valid options: leave it to the operator
+            }
+        }
+        return operand;
+    }
+
+    /**
+     * Compile a JSON Object literal of values by path: its keys are compiled into {@link JsonPaths}, and its values
+     * may have placeholders.
+     * @param obj The object literal
+     * @return The compiled object literal, or null if a key is not a valid path (left to the operator)
+     */
+    private ExpressionNode compilePathValues(JSONObject obj) {
+        String[] keys = obj.keySet().toArray(new String[0]);
+        List<JsonPath> paths = new ArrayList<>(keys.length);
+        try {
+            for (String key : keys) {
+                paths.add(JsonPath.compile(key));
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        ExpressionNode[] values = new ExpressionNode[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = compileLiteral(obj.get(keys[i]));
+        }
+        return new ExpressionNode.PathValuesLiteral(JsonPaths.of(paths), values);
+    }
+
+    /**
+     * Compile all the operands of an expression.
+     * @param expr The expression
+     * @return The compiled operands
+     */
+    private ExpressionNode[] compileOperands(JSONArray expr) throws JSONException {
+        ExpressionNode[] operands = new ExpressionNode[expr.length() - 1];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = compileOperand(expr, i + 1);
+        }
+        return operands;
+    }
+
+    /**
+     * @return The expression with only its first operands
+     */
+    private static JSONArray truncate(JSONArray expr, int operandCount) throws JSONException {
+        JSONArray truncated = new JSONArray();
+        for (int i = 0; i <= operandCount; i++) {
+            truncated.put(expr.get(i));
+        }
+        return truncated;
+    }
+
+    /**
+     * @return The number of operands taken by the operator, for error messages
+     */
+    private static String arity(Operator op) {
+        if (op.getMaxArity() == Operator.VARIADIC) {
+            return "at least " + op.getMinArity() + " operands";
+        } else if (op.getMinArity() == op.getMaxArity()) {
+            return op.getMinArity() + (op.getMinArity() == 1 ? " operand" : " operands");
+        }
+        return op.getMinArity() + " to " + op.getMaxArity() + " operands";
+    }
+
+    /**
+     * Compile the `VAR` operator into a reference to the variable's slot.
+     * @param expr The VAR expression
+     * @return The variable node
+     */
+    private ExpressionNode compileVariable(JSONArray expr) throws JSONException {
+        Object name = expr.opt(1);
+        if (expr.length() > 3) {
+            throw new IllegalArgumentException("Invalid VAR: expected 1 to 2 operands but got " + (expr.length() - 1));
+        }
+        if (!(name instanceof String)) {
+            throw new IllegalArgumentException("Invalid VAR: the variable name must be a string");
+        }
+
+        return new ExpressionNode.Variable(slotOf((String) name), compileOperand(expr, 2), false);
+    }
+
+    /**
+     * Recursively compile the operand at the given position.
+     * If the operand is another nested expression, it is compiled as well.
+     * @param expr The expression containing the operand
+     * @param index The position of the operand in the expression
+     * @return The compiled operand
+     * @throws JSONException
+     */
+    private ExpressionNode compileOperand(JSONArray expr, int index) throws JSONException {
+        if (index >= expr.length()) {
+            return ExpressionNode.Constant.NULL;
+        }
+
+        Object operand = expr.get(index);
+        if (operand instanceof JSONArray) {
+            // If the operand is a nested expression, compile it recursively
+            return compileNode((JSONArray) operand);
+        } else if (operand instanceof JSONObject) {
+            if (hasPlaceholder(operand)) {
+                return compileObject((JSONObject) operand);
+            }
+            // The object flows to the operator as it is, and is serialized only if the operator needs a string
+            return new ExpressionNode.Constant(operand);
+        } else {
+            return compileValue(operand);
+        }
+    }
+
+    /**
+     * Compile a literal value, which may be a string with `${name}` placeholders.
+     * @param value The literal value
+     * @return The compiled value
+     */
+    private ExpressionNode compileValue(Object value) {
+        if (!(value instanceof String)) {
+            return new ExpressionNode.Constant(value);
+        }
+
+        String str = (String) value;
+        Matcher matcher = PLACEHOLDER.matcher(str);
+        if (!matcher.find()) {
+            return new ExpressionNode.Constant(str);
+        }
+
+        if (matcher.start() == 0 && matcher.end() == str.length()) {
+            // The whole string is a placeholder: bind the variable's value as-is
+            return new ExpressionNode.Variable(slotOf(matcher.group(1)), new ExpressionNode.Constant(str), true);
+        }
+
+        // Placeholders embedded within a string
+        InterpolationTemplate template = InterpolationTemplate.compile(str);
+        String[] names = template.names();
+        int[] slots = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            slots[i] = slotOf(names[i]);
+        }
+
+        return new ExpressionNode.Template(template, slots);
+    }
+
+    /**
+     * Compile a JSON Object literal that has placeholders in its values.
+     * @param obj The object literal
+     * @return The compiled object literal
+     */
+    private ExpressionNode compileObject(JSONObject obj) {
+        String[] keys = obj.keySet().toArray(new String[0]);
+        ExpressionNode[] values = new ExpressionNode[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = compileLiteral(obj.get(keys[i]));
+        }
+        return new ExpressionNode.ObjectLiteral(keys, values);
+    }
+
+    /**
+     * Compile a value nested within a JSON Object literal.
+     * @param value The nested value
+     * @return The compiled value
+     */
+    private ExpressionNode compileLiteral(Object value) {
+        if (!hasPlaceholder(value)) {
+            return new ExpressionNode.Constant(value);
+        }
+
+        if (value instanceof JSONObject) {
+            return compileObject((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            JSONArray arr = (JSONArray) value;
+            ExpressionNode[] items = new ExpressionNode[arr.length()];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = compileLiteral(arr.get(i));
+            }
+            return new ExpressionNode.ArrayLiteral(items);
+        } else {
+            return compileValue(value);
+        }
+    }
+
+    /**
+     * Check if a literal value has any `${name}` placeholders within it.
+     * @param value The literal value
+     * @return True if there are placeholders within the value
+     */
+    private static boolean hasPlaceholder(Object value) {
+        if (value instanceof String) {
+            return PLACEHOLDER.matcher((String) value).find();
+        } else if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            for (String key : obj.keySet()) {
+                if (hasPlaceholder(obj.get(key))) {
+                    return true;
+                }
+            }
+        } else if (value instanceof JSONArray) {
+            for (Object item : (JSONArray) value) {
+                if (hasPlaceholder(item)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the slot of a variable, allocating a new slot the first time the variable is seen.
+     * @param name The variable name
+     * @return The slot of the variable
+     */
+    private int slotOf(String name) {
+        int slot = variables.indexOf(name);
+        if (slot < 0) {
+            slot = variables.size();
+            variables.add(name);
+            uses.add(0);
+            documentUses.add(0);
+        }
+        uses.set(slot, uses.get(slot) + 1);
+        return slot;
+    }
+}
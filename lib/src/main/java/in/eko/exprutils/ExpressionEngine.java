@@ -0,0 +1,235 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.JsonBackend;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An expression engine with its own set of operators, eg: the built-in operators plus a tenant's custom operators.
+ * The operator registry of an engine is immutable, so engines are thread-safe and independent of each other;
+ * {@link ExpressionParser} is backed by an engine with only the built-in operators.
+ * <pre>
+ * ExpressionEngine engine = ExpressionEngine.builder()
+ *         .register(Operator.of("UPPER", 1, (operand1, operand2, operand3) -&gt; operand1.toString().toUpperCase()))
+ *         .build();
+ * engine.parseExpression("['UPPER', 'hello']");   // HELLO
+ * </pre>
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class ExpressionEngine {
+    private final Map<String, Operator> operators;
+    private final DecimalMode decimalMode;
+    private final JsonBackend jsonBackend;
+    private final ExpressionCache cache;
+
+    private ExpressionEngine(Builder builder) {
+        this.operators = Collections.unmodifiableMap(new LinkedHashMap<>(builder.operators));
+        this.decimalMode = builder.decimalMode;
+        this.jsonBackend = builder.jsonBackend;
+        this.cache = builder.cacheBuilder != null ? builder.cacheBuilder.build(this::compile) : null;
+    }
+
+    /**
+     * Create a new builder to configure an engine, with the built-in operators already registered.
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check if an operator is supported by this engine.
+     * @param operator The operator
+     * @return True if the operator is supported
+     */
+    public boolean isValidOperator(String operator) {
+        return operators.containsKey(operator) || ExpressionCompiler.VAR.equals(operator);
+    }
+
+    /**
+     * Get the definition of a registered operator.
+     * @param operator The operator name
+     * @return The operator, or null if it is not registered
+     */
+    public Operator getOperator(String operator) {
+        return operators.get(operator);
+    }
+
+    /**
+     * @return The decimal mode of the arithmetic operators, or null if they compute on doubles
+     */
+    public DecimalMode getDecimalMode() {
+        return decimalMode;
+    }
+
+    /**
+     * @return The JSON backend that parses expressions and documents
+     */
+    public JsonBackend getJsonBackend() {
+        return jsonBackend;
+    }
+
+    /**
+     * @return The cache of compiled expressions used by {@link #parseExpression(String)}, or null if it is disabled
+     */
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Execute an expression provided as a JSON array.
+     * @param expr The expression to execute.
+     * @return The calculated value of the expression
+     * @throws IllegalArgumentException If `expr` is not a valid expression
+     * @see ExpressionParser#parseExpression(String)
+     */
+    public Object parseExpression(String expr) {
+        CompiledExpression compiled = compileCached(expr);
+        return compiled.toParseResult(compiled.evaluate());
+    }
+
+    /**
+     * Execute an expression provided as a JSON array, binding its variables to the given data.
+     * @param expr The expression to execute.
+     * @param data The map of variable-value pairs
+     * @return The calculated value of the expression
+     * @throws IllegalArgumentException If `expr` is not a valid expression
+     * @see ExpressionParser#parseExpression(String, Map)
+     */
+    public Object parseExpression(String expr, Map<String, ?> data) {
+        CompiledExpression compiled = compileCached(expr);
+        return compiled.toParseResult(compiled.evaluate(data).getResult());
+    }
+
+    /**
+     * Compile an expression provided as a JSON array with the operators of this engine.
+     * @param expr The expression to compile.
+     * @return The compiled expression
+     * @throws IllegalArgumentException If `expr` is not a valid JSON Array, uses an invalid operator,
+     *         or passes an operator the wrong number of operands
+     */
+    public CompiledExpression compile(String expr) {
+        return compile(expr, decimalMode);
+    }
+
+    /**
+     * Compile an expression represented as nested JSON Arrays with the operators of this engine.
+     * @param expr The expression to compile.
+     * @return The compiled expression
+     * @throws IllegalArgumentException If `expr` is not a valid expression, uses an invalid operator,
+     *         or passes an operator the wrong number of operands
+     */
+    public CompiledExpression compile(JSONArray expr) {
+        return compile(expr, decimalMode);
+    }
+
+    CompiledExpression compile(String expr, DecimalMode decimalMode) {
+        Object parsed;
+        try {
+            parsed = jsonBackend.parse(expr);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid expr: not a valid JSON");
+        }
+        if (!(parsed instanceof JSONArray)) {
+            throw new IllegalArgumentException("Invalid expr: not a valid JSON");
+        }
+        return compile((JSONArray) parsed, decimalMode);
+    }
+
+    CompiledExpression compile(JSONArray expr, DecimalMode decimalMode) {
+        try {
+            return new ExpressionCompiler(operators, decimalMode, jsonBackend).compile(expr);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid expr: not a valid JSON");
+        }
+    }
+
+    private CompiledExpression compileCached(String expr) {
+        return cache != null ? cache.get(expr) : compile(expr);
+    }
+
+
+    /**
+     * Builder for {@link ExpressionEngine}.
+     */
+    public static final class Builder {
+        private final Map<String, Operator> operators = new LinkedHashMap<>();
+        private DecimalMode decimalMode;
+        private JsonBackend jsonBackend = JsonBackends.ORG_JSON;
+        private ExpressionCache.Builder cacheBuilder = ExpressionCache.builder();
+
+        private Builder() {
+            for (Operator operator : ExpressionParser.builtinOperators()) {
+                register(operator);
+            }
+        }
+
+        /**
+         * Register an operator, replacing any operator with the same name (including a built-in operator).
+         * @param operator The operator definition
+         * @return This builder
+         */
+        public Builder register(Operator operator) {
+            if (operator == null) {
+                throw new IllegalArgumentException("Invalid operator: null");
+            }
+            operators.put(operator.getName(), operator);
+            return this;
+        }
+
+        /**
+         * Remove an operator, eg: to disallow a built-in operator.
+         * @param operator The operator name
+         * @return This builder
+         */
+        public Builder unregister(String operator) {
+            operators.remove(operator);
+            return this;
+        }
+
+        /**
+         * Compute the arithmetic operators of all expressions exactly, with the given scale and rounding.
+         * @param decimalMode The decimal mode, or null for arithmetic on doubles (default)
+         * @return This builder
+         */
+        public Builder decimalMode(DecimalMode decimalMode) {
+            this.decimalMode = decimalMode;
+            return this;
+        }
+
+        /**
+         * Set the JSON backend that parses the expressions, and the documents bound to the variables of
+         * the expressions (eg: {@link JsonBackends#BYTES} to bind network buffers as bytes).
+         * @param jsonBackend The JSON backend ({@link JsonBackends#ORG_JSON} by default)
+         * @return This builder
+         */
+        public Builder jsonBackend(JsonBackend jsonBackend) {
+            if (jsonBackend == null) {
+                throw new IllegalArgumentException("Invalid JSON backend: null");
+            }
+            this.jsonBackend = jsonBackend;
+            return this;
+        }
+
+        /**
+         * Configure the cache of compiled expressions used by {@link ExpressionEngine#parseExpression(String)}.
+         * @param cacheBuilder The configuration of the cache, or null to disable caching
+         * @return This builder
+         */
+        public Builder cache(ExpressionCache.Builder cacheBuilder) {
+            this.cacheBuilder = cacheBuilder;
+            return this;
+        }
+
+        /**
+         * @return The new engine
+         */
+        public ExpressionEngine build() {
+            return new ExpressionEngine(this);
+        }
+    }
+}
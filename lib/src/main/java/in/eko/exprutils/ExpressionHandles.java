@@ -0,0 +1,206 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.OperatorFunction;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+
+/**
+ * Building blocks to translate a compiled expression tree into a chain of method handles
+ * (see {@link ExpressionBackend#METHOD_HANDLE}).
+ * Every handle of an expression takes the variable slots (Object[]) as its only argument, and returns
+ * either an Object or, for numeric subtrees, a primitive double.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class ExpressionHandles {
+    /**
+     * The type of an expression handle: (Object[] slots)Object
+     */
+    static final MethodType EXPRESSION_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    /**
+     * The type of a numeric handle: (Object[] slots)double
+     */
+    static final MethodType NUMERIC_TYPE = MethodType.methodType(double.class, Object[].class);
+
+    private static final MethodHandle EVAL;
+    private static final MethodHandle EVAL_DOUBLE;
+    private static final MethodHandle UNWRAP;
+    private static final MethodHandle DEEP_COPY;
+    private static final MethodHandle APPLY;
+    private static final MethodHandle OBJ2DBL;
+    private static final MethodHandle NON_NULL;
+    private static final MethodHandle SLOT;
+    private static final MethodHandle ADD;
+    private static final MethodHandle SUBTRACT;
+    private static final MethodHandle MULTIPLY;
+    private static final MethodHandle DIVIDE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodType binary = MethodType.methodType(double.class, double.class, double.class);
+
+            EVAL = lookup.findVirtual(ExpressionNode.class, "eval", EXPRESSION_TYPE);
+            EVAL_DOUBLE = lookup.findVirtual(ExpressionNode.class, "evalDouble", NUMERIC_TYPE);
+            UNWRAP = lookup.findStatic(PrimitiveSlot.class, "unwrap",
+                    MethodType.methodType(Object.class, Object.class));
+            DEEP_COPY = lookup.findStatic(JsonPath.class, "deepCopyOf",
+                    MethodType.methodType(Object.class, Object.class));
+            APPLY = lookup.findVirtual(OperatorFunction.class, "apply",
+                    MethodType.methodType(Object.class, Object.class, Object.class, Object.class));
+            OBJ2DBL = lookup.findStatic(ExpressionParser.class, "obj2dbl",
+                    MethodType.methodType(double.class, Object.class));
+            NON_NULL = lookup.findStatic(Objects.class, "nonNull",
+                    MethodType.methodType(boolean.class, Object.class));
+            SLOT = MethodHandles.arrayElementGetter(Object[].class);
+            ADD = lookup.findStatic(ExpressionHandles.class, "add", binary);
+            SUBTRACT = lookup.findStatic(ExpressionHandles.class, "subtract", binary);
+            MULTIPLY = lookup.findStatic(ExpressionHandles.class, "multiply", binary);
+            DIVIDE = lookup.findStatic(ExpressionHandles.class, "divide", binary);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Suppress default constructor for noninstantiability
+    private ExpressionHandles() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Fall back to the interpreter for a node.
+     * @param node The node to evaluate
+     * @return The expression handle that evaluates the node
+     */
+    static MethodHandle interpret(ExpressionNode node) {
+        return EVAL.bindTo(node);
+    }
+
+    /**
+     * Fall back to the interpreter for a numeric node.
+     * @param node The node to evaluate
+     * @return The numeric handle that evaluates the node
+     */
+    static MethodHandle interpretDouble(ExpressionNode node) {
+        return EVAL_DOUBLE.bindTo(node);
+    }
+
+    /**
+     * @param value The constant value
+     * @return The expression handle that always returns the value
+     */
+    static MethodHandle constant(Object value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(Object.class, value), 0, Object[].class);
+    }
+
+    /**
+     * @param value The constant value
+     * @return The numeric handle that always returns the value
+     */
+    static MethodHandle constant(double value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0, Object[].class);
+    }
+
+    /**
+     * @param slot The slot of the variable
+     * @param defaultValue The expression handle of the default value of the variable
+     * @return The expression handle that returns the variable's value, or its default value if it is null
+     */
+    static MethodHandle variable(int slot, MethodHandle defaultValue) {
+        // A slot bound to a primitive column is boxed (see PrimitiveSlot)
+        MethodHandle value = MethodHandles.filterReturnValue(MethodHandles.insertArguments(SLOT, 1, slot), UNWRAP);
+
+        // (value, slots) -> value != null ? value : defaultValue(slots), so that the value is read once
+        MethodHandle orDefault = MethodHandles.guardWithTest(
+                MethodHandles.dropArguments(NON_NULL, 1, Object[].class),
+                MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, Object[].class),
+                MethodHandles.dropArguments(defaultValue, 0, Object.class));
+        return MethodHandles.foldArguments(orDefault, value);
+    }
+
+    /**
+     * @param function The operator function
+     * @param operand1 The expression handle of the first operand
+     * @param operand2 The expression handle of the second operand
+     * @param operand3 The expression handle of the third operand
+     * @return The expression handle that calls the operator function with the operand values
+     */
+    static MethodHandle call(OperatorFunction function, MethodHandle operand1, MethodHandle operand2, MethodHandle operand3) {
+        MethodHandle call = MethodHandles.filterArguments(APPLY.bindTo(function), 0, operand1, operand2, operand3);
+
+        // Pass the same slots to all the operands
+        return MethodHandles.permuteArguments(call, EXPRESSION_TYPE, 0, 0, 0);
+    }
+
+    /**
+     * @param handle An expression handle
+     * @return The expression handle that returns a deep copy of the value of the expression handle
+     */
+    static MethodHandle deepCopy(MethodHandle handle) {
+        return MethodHandles.filterReturnValue(handle, DEEP_COPY);
+    }
+
+    /**
+     * @param operator The arithmetic operator: `+`, `-`, `*` or `/`
+     * @param left The numeric handle of the left operand
+     * @param right The numeric handle of the right operand
+     * @return The numeric handle that applies the operator to the operand values
+     */
+    static MethodHandle arithmetic(String operator, MethodHandle left, MethodHandle right) {
+        MethodHandle op;
+        switch (operator) {
+            case "+":
+                op = ADD;
+                break;
+            case "-":
+                op = SUBTRACT;
+                break;
+            case "*":
+                op = MULTIPLY;
+                break;
+            case "/":
+                op = DIVIDE;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + operator);
+        }
+
+        MethodHandle call = MethodHandles.filterArguments(op, 0, left, right);
+        return MethodHandles.permuteArguments(call, NUMERIC_TYPE, 0, 0);
+    }
+
+    /**
+     * @param handle An expression handle
+     * @return The numeric handle that converts the value of the expression handle to a double
+     */
+    static MethodHandle toDouble(MethodHandle handle) {
+        return MethodHandles.filterReturnValue(handle, OBJ2DBL);
+    }
+
+    /**
+     * @param handle A numeric handle
+     * @return The expression handle that boxes the value of the numeric handle
+     */
+    static MethodHandle box(MethodHandle handle) {
+        return handle.asType(EXPRESSION_TYPE);
+    }
+
+    private static double add(double operand1, double operand2) {
+        return operand1 + operand2;
+    }
+
+    private static double subtract(double operand1, double operand2) {
+        return operand1 - operand2;
+    }
+
+    private static double multiply(double operand1, double operand2) {
+        return operand1 * operand2;
+    }
+
+    private static double divide(double operand1, double operand2) {
+        return operand1 / operand2;
+    }
+}
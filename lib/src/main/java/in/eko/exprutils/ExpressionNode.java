@@ -0,0 +1,1176 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.JsonBackend;
+import in.eko.exprutils.interfaces.LazyOperands;
+import in.eko.exprutils.interfaces.LazyOperatorFunction;
+import in.eko.exprutils.interfaces.OperatorFunction;
+import in.eko.exprutils.interfaces.VariadicOperatorFunction;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A node of a compiled expression tree.
+ * Nodes are immutable and hold no per-evaluation state, so a compiled tree can be shared between threads.
+ * Variables are resolved at compile time to slots, and their values are passed to {@link #eval(Object[])}
+ * as an array indexed by slot.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+abstract class ExpressionNode {
+
+    /**
+     * Evaluate this node.
+     * @param slots The values of the variables, indexed by their slot
+     * @return The computed value of the node
+     */
+    abstract Object eval(Object[] slots);
+
+    /**
+     * Evaluate this node as a number, without boxing the intermediate results of numeric subtrees.
+     * @param slots The values of the variables, indexed by their slot
+     * @return The computed value of the node, converted to a double
+     */
+    double evalDouble(Object[] slots) {
+        return ExpressionParser.obj2dbl(eval(slots));
+    }
+
+    /**
+     * Evaluate this node as an integer. Integer-only arithmetic (see {@link #isIntegral(Object[])}) is
+     * computed exactly on longs; anything else is computed on doubles and truncated.
+     * @param slots The values of the variables, indexed by their slot
+     * @return The computed value of the node, converted to a long
+     */
+    long evalLong(Object[] slots) {
+        return (long) evalDouble(slots);
+    }
+
+    /**
+     * Evaluate this node as an exact decimal (see {@link DecimalMode}).
+     * @param slots The values of the variables, indexed by their slot
+     * @return The computed value of the node, converted to a BigDecimal
+     */
+    BigDecimal evalDecimal(Object[] slots) {
+        return ScaledDecimal.toBigDecimal(eval(slots));
+    }
+
+    /**
+     * Evaluate this node as an exact decimal, represented by its unscaled value at the given scale.
+     * The node is evaluated only once: when its value does not fit, it is returned in `exact` instead.
+     * @param slots The values of the variables, indexed by their slot
+     * @param scale The number of decimal places
+     * @param exact Receives the value (at index 0) when it does not fit
+     * @return The unscaled value, or {@link ScaledDecimal#NOT_EXACT} if it does not fit
+     */
+    long evalUnscaled(Object[] slots, int scale, BigDecimal[] exact) {
+        Object value = eval(slots);
+        long unscaled = ScaledDecimal.toUnscaled(value, scale);
+        if (unscaled == ScaledDecimal.NOT_EXACT) {
+            exact[0] = ScaledDecimal.toBigDecimal(value);
+        }
+        return unscaled;
+    }
+
+    /**
+     * Get the number of decimal places this node is expected to have in decimal mode, to choose the
+     * scale at which it is computed by {@link #evalUnscaled(Object[], int, BigDecimal[])}.
+     * @param mode The decimal mode
+     * @return The expected scale of the node's value
+     */
+    int decimalScale(DecimalMode mode) {
+        return mode.getScale();
+    }
+
+    /**
+     * Check if this node is known at compile time to always evaluate to an integer.
+     * @return True if the node can be evaluated exactly with {@link #evalLong(Object[])}
+     */
+    boolean isIntegral() {
+        return false;
+    }
+
+    /**
+     * Check if this node evaluates to an integer for the given values of the variables, without evaluating it:
+     * like {@link #isIntegral()}, except that the values of variables are checked too.
+     * @param slots The values of the variables, indexed by their slot
+     * @return True if the node can be evaluated exactly with {@link #evalLong(Object[])}
+     */
+    boolean isIntegral(Object[] slots) {
+        return isIntegral();
+    }
+
+    /**
+     * Optimize this node: replace known variables and pure constant subtrees with constants.
+     * @param folder The state of the optimization pass
+     * @return The optimized node (this node, if it cannot be optimized further)
+     */
+    abstract ExpressionNode fold(ConstantFolder folder);
+
+    /**
+     * Get the JSON representation of this node, as it would be written in an expression.
+     * @param variables The variable names, indexed by their slot
+     * @return The expression (JSONArray) or literal value
+     */
+    abstract Object toJson(String[] variables);
+
+    /**
+     * Translate this node into a method handle of type {@link ExpressionHandles#EXPRESSION_TYPE}.
+     * By default, the node is evaluated by the interpreter.
+     * @return The expression handle
+     */
+    MethodHandle toHandle() {
+        return ExpressionHandles.interpret(this);
+    }
+
+    /**
+     * Translate this node into a method handle of type {@link ExpressionHandles#NUMERIC_TYPE}, for numeric operands.
+     * @return The numeric handle
+     */
+    MethodHandle toDoubleHandle() {
+        return ExpressionHandles.toDouble(toHandle());
+    }
+
+    /**
+     * Check if this node is a constant (see {@link Constant}).
+     * @return True if the node always evaluates to the same value
+     */
+    boolean isConstant() {
+        return false;
+    }
+
+
+    /**
+     * A literal operand. The value is captured once, at compile time.
+     * A document value (an object or array) is copied for every evaluation, so that it is never shared
+     * by the results of different evaluations; unless it is frozen (see {@link #frozen(Object)}).
+     */
+    static final class Constant extends ExpressionNode {
+        static final Constant NULL = new Constant(null);
+
+        private final Object value;
+        // True to copy the value for every evaluation
+        private final boolean copied;
+        // The value converted to numbers once, at compile time
+        private final double doubleValue;
+        private final long longValue;
+        private final boolean integral;
+        // The exact value of numeric constants, and its unscaled value at its own scale
+        private final BigDecimal decimalValue;
+        private final int scale;
+        private final long unscaledValue;
+
+        Constant(Object value) {
+            this(value, value instanceof JSONObject || value instanceof JSONArray
+                    || value instanceof PathValues && ((PathValues) value).hasDocuments());
+        }
+
+        private Constant(Object value, boolean copied) {
+            this.value = value;
+            this.copied = copied;
+            this.doubleValue = value != null ? ExpressionParser.obj2dbl(value) : 0;
+            this.integral = value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte;
+            this.longValue = integral ? ((Number) value).longValue() : (long) doubleValue;
+            this.decimalValue = value instanceof Number && Double.isFinite(doubleValue)
+                    ? ScaledDecimal.toBigDecimal(value) : null;
+            this.scale = decimalValue != null ? Math.max(decimalValue.stripTrailingZeros().scale(), 0) : 0;
+            this.unscaledValue = decimalValue != null
+                    ? ScaledDecimal.toUnscaled(decimalValue, scale) : ScaledDecimal.NOT_EXACT;
+        }
+
+        /**
+         * A constant with an exact integer value, eg: folded integer arithmetic (which evaluates to a Double)
+         * @param value The value
+         * @param longValue The exact integer value
+         */
+        Constant(Object value, long longValue) {
+            this.value = value;
+            this.copied = false;
+            this.doubleValue = ExpressionParser.obj2dbl(value);
+            this.longValue = longValue;
+            this.integral = true;
+            this.decimalValue = BigDecimal.valueOf(longValue);
+            this.scale = 0;
+            this.unscaledValue = longValue;
+        }
+
+        /**
+         * A document operand of a built-in operator (eg: the object of `GET` or `SET`), which is passed as it is
+         * for every evaluation: the operators never modify their document, and the call copies what its result
+         * shares with it (see {@link Call}).
+         * @param value The document
+         */
+        static Constant frozen(Object value) {
+            return new Constant(value, false);
+        }
+
+        /**
+         * @return True if this constant is a document that is shared by all the evaluations
+         */
+        boolean isFrozenDocument() {
+            return !copied && (value instanceof JSONObject || value instanceof JSONArray);
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            if (!copied) {
+                return value;
+            }
+            return value instanceof PathValues ? ((PathValues) value).deepCopy() : JsonPath.deepCopyOf(value);
+        }
+
+        @Override
+        double evalDouble(Object[] slots) {
+            // A missing operand fails as it does when evaluated as an object
+            return value != null ? doubleValue : ExpressionParser.obj2dbl(null);
+        }
+
+        @Override
+        long evalLong(Object[] slots) {
+            return integral ? longValue : (long) evalDouble(slots);
+        }
+
+        @Override
+        boolean isIntegral() {
+            return integral;
+        }
+
+        @Override
+        BigDecimal evalDecimal(Object[] slots) {
+            return decimalValue != null ? decimalValue : super.evalDecimal(slots);
+        }
+
+        @Override
+        long evalUnscaled(Object[] slots, int scale, BigDecimal[] exact) {
+            long unscaled = unscaledValue == ScaledDecimal.NOT_EXACT
+                    ? ScaledDecimal.NOT_EXACT : ScaledDecimal.rescale(unscaledValue, this.scale, scale);
+            return unscaled == ScaledDecimal.NOT_EXACT ? super.evalUnscaled(slots, scale, exact) : unscaled;
+        }
+
+        @Override
+        int decimalScale(DecimalMode mode) {
+            return decimalValue != null ? scale : mode.getScale();
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            return this;
+        }
+
+        @Override
+        MethodHandle toHandle() {
+            return copied ? ExpressionHandles.interpret(this) : ExpressionHandles.constant(value);
+        }
+
+        @Override
+        MethodHandle toDoubleHandle() {
+            return value != null ? ExpressionHandles.constant(doubleValue) : super.toDoubleHandle();
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            // A JSONArray operand would be read as a nested expression: use its serialized form instead
+            // (and compiled JSON paths and options are written as they were before compiling them)
+            if (value instanceof JsonPaths) {
+                return ((JsonPaths) value).toJson();
+            } else if (value instanceof PathValues) {
+                return ((PathValues) value).toJson();
+            } else if (value instanceof JwtOptions) {
+                return ((JwtOptions) value).toJson();
+            }
+            return value instanceof JSONArray || value instanceof JsonPath ? value.toString() : value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+    }
+
+
+    /**
+     * An operator call with its operator function already resolved.
+     * Missing operands are represented by the {@link Constant#NULL} node.
+     */
+    static final class Call extends ExpressionNode {
+        private final String operator;
+        private final OperatorFunction function;
+        private final boolean pure;
+        private final ExpressionNode operand1;
+        private final ExpressionNode operand2;
+        private final ExpressionNode operand3;
+        // True if the document operand is a frozen constant: the result is copied, so that it shares nothing with it
+        private final boolean copiesResult;
+
+        /**
+         * @param operator The operator name
+         * @param function The operator function
+         * @param pure False if the operator may return a different value for the same operands (eg: it depends on time)
+         * @param operand1 The first operand
+         * @param operand2 The second operand
+         * @param operand3 The third operand
+         */
+        Call(String operator, OperatorFunction function, boolean pure,
+             ExpressionNode operand1, ExpressionNode operand2, ExpressionNode operand3) {
+            this.operator = operator;
+            this.function = function;
+            this.pure = pure;
+            this.operand1 = operand1;
+            this.operand2 = operand2;
+            this.operand3 = operand3;
+            this.copiesResult = operand1 instanceof Constant && ((Constant) operand1).isFrozenDocument();
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            Object value = function.apply(operand1.eval(slots), operand2.eval(slots), operand3.eval(slots));
+            return copiesResult ? JsonPath.deepCopyOf(value) : value;
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            Call folded = new Call(operator, function, pure,
+                    operand1.fold(folder), operand2.fold(folder), operand3.fold(folder));
+            return pure && folded.hasConstantOperands() ? ConstantFolder.evaluate(folded) : folded;
+        }
+
+        @Override
+        MethodHandle toHandle() {
+            MethodHandle call = ExpressionHandles.call(function, operand1.toHandle(), operand2.toHandle(), operand3.toHandle());
+            return copiesResult ? ExpressionHandles.deepCopy(call) : call;
+        }
+
+        private boolean hasConstantOperands() {
+            return operand1.isConstant() && operand2.isConstant() && operand3.isConstant();
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            return callJson(variables, operator, operand1, operand2, operand3);
+        }
+    }
+
+
+    /**
+     * A call to a variadic operator, with all its operands.
+     */
+    static final class VariadicCall extends ExpressionNode {
+        private final String operator;
+        private final VariadicOperatorFunction function;
+        private final boolean pure;
+        private final ExpressionNode[] operands;
+
+        /**
+         * @param operator The operator name
+         * @param function The operator function
+         * @param pure False if the operator may return a different value for the same operands
+         * @param operands The operands
+         */
+        VariadicCall(String operator, VariadicOperatorFunction function, boolean pure, ExpressionNode[] operands) {
+            this.operator = operator;
+            this.function = function;
+            this.pure = pure;
+            this.operands = operands;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            Object[] values = new Object[operands.length];
+            for (int i = 0; i < operands.length; i++) {
+                values[i] = operands[i].eval(slots);
+            }
+            return function.apply(values);
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            ExpressionNode[] folded = foldAll(operands, folder);
+            VariadicCall call = new VariadicCall(operator, function, pure, folded);
+            return pure && allConstant(folded) ? ConstantFolder.evaluate(call) : call;
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            return callJson(variables, operator, operands);
+        }
+    }
+
+
+    /**
+     * A call to a lazy operator, which evaluates its operands on demand (eg: only the branch taken by IF).
+     */
+    static final class LazyCall extends ExpressionNode {
+        private final String operator;
+        private final LazyOperatorFunction function;
+        private final boolean pure;
+        private final ExpressionNode[] operands;
+
+        /**
+         * @param operator The operator name
+         * @param function The operator function
+         * @param pure False if the operator may return a different value for the same operands
+         * @param operands The operands, evaluated only when the function requests them
+         */
+        LazyCall(String operator, LazyOperatorFunction function, boolean pure, ExpressionNode[] operands) {
+            this.operator = operator;
+            this.function = function;
+            this.pure = pure;
+            this.operands = operands;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            return function.apply(new Operands(operands, slots));
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            ExpressionNode[] folded = foldAll(operands, folder);
+            LazyCall call = new LazyCall(operator, function, pure, folded);
+            return pure && allConstant(folded) ? ConstantFolder.evaluate(call) : call;
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            return callJson(variables, operator, operands);
+        }
+
+        /**
+         * The operands of a single evaluation, bound to the values of the variables.
+         */
+        private static final class Operands implements LazyOperands {
+            private final ExpressionNode[] operands;
+            private final Object[] slots;
+
+            Operands(ExpressionNode[] operands, Object[] slots) {
+                this.operands = operands;
+                this.slots = slots;
+            }
+
+            @Override
+            public int size() {
+                return operands.length;
+            }
+
+            @Override
+            public Object get(int index) {
+                return index >= 0 && index < operands.length ? operands[index].eval(slots) : null;
+            }
+        }
+    }
+
+
+    /**
+     * A call to one of the built-in arithmetic operators (`+`, `-`, `*`, `/`), computed on primitives.
+     * Nested arithmetic is evaluated without boxing the intermediate results.
+     */
+    static final class Arithmetic extends ExpressionNode {
+        private final String operator;
+        private final char op;
+        private final ExpressionNode operand1;
+        private final ExpressionNode operand2;
+
+        Arithmetic(String operator, ExpressionNode operand1, ExpressionNode operand2) {
+            if (!isArithmetic(operator)) {
+                throw new IllegalArgumentException("Invalid operator: " + operator);
+            }
+            this.operator = operator;
+            this.op = operator.charAt(0);
+            this.operand1 = operand1;
+            this.operand2 = operand2;
+        }
+
+        /**
+         * @param operator The operator
+         * @return True for the built-in arithmetic operators
+         */
+        static boolean isArithmetic(String operator) {
+            return "+".equals(operator) || "-".equals(operator) || "*".equals(operator) || "/".equals(operator);
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            return evalDouble(slots);
+        }
+
+        @Override
+        double evalDouble(Object[] slots) {
+            double value1 = operand1.evalDouble(slots);
+            double value2 = operand2.evalDouble(slots);
+            switch (op) {
+                case '+':
+                    return value1 + value2;
+                case '-':
+                    return value1 - value2;
+                case '*':
+                    return value1 * value2;
+                default:
+                    return value1 / value2;
+            }
+        }
+
+        @Override
+        long evalLong(Object[] slots) {
+            if (!isIntegral(slots)) {
+                return (long) evalDouble(slots);
+            }
+
+            try {
+                return exactLong(slots);
+            } catch (ArithmeticException e) {
+                // Overflow: fall back to doubles
+                return (long) evalDouble(slots);
+            }
+        }
+
+        /**
+         * Evaluate integer-only arithmetic exactly.
+         * @throws ArithmeticException if the result overflows a long
+         */
+        private long exactLong(Object[] slots) {
+            long value1 = operand1.evalLong(slots);
+            long value2 = operand2.evalLong(slots);
+            switch (op) {
+                case '+':
+                    return Math.addExact(value1, value2);
+                case '-':
+                    return Math.subtractExact(value1, value2);
+                default:
+                    return Math.multiplyExact(value1, value2);
+            }
+        }
+
+        @Override
+        boolean isIntegral() {
+            return op != '/' && operand1.isIntegral() && operand2.isIntegral();
+        }
+
+        @Override
+        boolean isIntegral(Object[] slots) {
+            return op != '/' && operand1.isIntegral(slots) && operand2.isIntegral(slots);
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            Arithmetic folded = new Arithmetic(operator, operand1.fold(folder), operand2.fold(folder));
+            if (!folded.operand1.isConstant() || !folded.operand2.isConstant()) {
+                return folded;
+            }
+
+            if (folded.isIntegral()) {
+                // Keep the exact integer value along with the (Double) result
+                try {
+                    return new Constant(folded.eval(ConstantFolder.NO_SLOTS), folded.exactLong(ConstantFolder.NO_SLOTS));
+                } catch (ArithmeticException e) {
+                    // Overflow: fold as a double
+                }
+            }
+            return ConstantFolder.evaluate(folded);
+        }
+
+        @Override
+        MethodHandle toHandle() {
+            return ExpressionHandles.box(toDoubleHandle());
+        }
+
+        @Override
+        MethodHandle toDoubleHandle() {
+            return ExpressionHandles.arithmetic(operator, operand1.toDoubleHandle(), operand2.toDoubleHandle());
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            return callJson(variables, operator, operand1, operand2);
+        }
+    }
+
+
+    /**
+     * A call to one of the built-in arithmetic operators in decimal mode: the result is a BigDecimal,
+     * rounded to the scale of the {@link DecimalMode}.
+     * Values that fit are computed on scaled longs without allocating (see {@link ScaledDecimal});
+     * BigDecimal is used only when a value overflows, or cannot be represented exactly at its expected scale.
+     */
+    static final class DecimalArithmetic extends ExpressionNode {
+        private final String operator;
+        private final char op;
+        private final DecimalMode mode;
+        private final ExpressionNode operand1;
+        private final ExpressionNode operand2;
+        // The scales at which the operands are computed
+        private final int scale1;
+        private final int scale2;
+
+        DecimalArithmetic(String operator, DecimalMode mode, ExpressionNode operand1, ExpressionNode operand2) {
+            if (!Arithmetic.isArithmetic(operator)) {
+                throw new IllegalArgumentException("Invalid operator: " + operator);
+            }
+            this.operator = operator;
+            this.op = operator.charAt(0);
+            this.mode = mode;
+            this.operand1 = operand1;
+            this.operand2 = operand2;
+
+            int operandScale1 = operand1.decimalScale(mode);
+            int operandScale2 = operand2.decimalScale(mode);
+            if (op == '+' || op == '-') {
+                // Both operands are aligned to the same scale
+                operandScale1 = Math.max(operandScale1, operandScale2);
+                operandScale2 = operandScale1;
+            }
+            this.scale1 = operandScale1;
+            this.scale2 = operandScale2;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            return evalDecimal(slots);
+        }
+
+        @Override
+        double evalDouble(Object[] slots) {
+            return evalDecimal(slots).doubleValue();
+        }
+
+        @Override
+        long evalLong(Object[] slots) {
+            return evalDecimal(slots).longValue();
+        }
+
+        @Override
+        BigDecimal evalDecimal(Object[] slots) {
+            BigDecimal[] exact = new BigDecimal[1];
+            long unscaled = unscaled(slots, exact);
+            return unscaled != ScaledDecimal.NOT_EXACT ? BigDecimal.valueOf(unscaled, mode.getScale()) : exact[0];
+        }
+
+        @Override
+        long evalUnscaled(Object[] slots, int scale, BigDecimal[] exact) {
+            long unscaled = unscaled(slots, exact);
+            if (unscaled == ScaledDecimal.NOT_EXACT) {
+                return ScaledDecimal.NOT_EXACT;
+            }
+            long rescaled = ScaledDecimal.rescale(unscaled, mode.getScale(), scale);
+            if (rescaled == ScaledDecimal.NOT_EXACT) {
+                exact[0] = BigDecimal.valueOf(unscaled, mode.getScale());
+            }
+            return rescaled;
+        }
+
+        /**
+         * Compute the result on scaled longs, or on BigDecimal when a value does not fit.
+         * Each operand is evaluated once: the BigDecimal fallback reuses the values of the operands.
+         * @param exact Receives the result (at index 0) when it is computed on BigDecimal
+         * @return The unscaled result at the scale of the decimal mode, or NOT_EXACT
+         */
+        private long unscaled(Object[] slots, BigDecimal[] exact) {
+            long value1 = operand1.evalUnscaled(slots, scale1, exact);
+            BigDecimal decimal1 = value1 == ScaledDecimal.NOT_EXACT ? exact[0] : null;
+            long value2 = operand2.evalUnscaled(slots, scale2, exact);
+            BigDecimal decimal2 = value2 == ScaledDecimal.NOT_EXACT ? exact[0] : null;
+
+            if (decimal1 == null && decimal2 == null) {
+                long result = unscaled(value1, value2);
+                if (result != ScaledDecimal.NOT_EXACT) {
+                    return result;
+                }
+            }
+            exact[0] = decimal(decimal1 != null ? decimal1 : BigDecimal.valueOf(value1, scale1),
+                    decimal2 != null ? decimal2 : BigDecimal.valueOf(value2, scale2));
+            return ScaledDecimal.NOT_EXACT;
+        }
+
+        /**
+         * Compute the result on scaled longs.
+         * @return The unscaled result at the scale of the decimal mode, or NOT_EXACT
+         */
+        private long unscaled(long value1, long value2) {
+            long result;
+            int resultScale;
+            switch (op) {
+                case '+':
+                    result = ScaledDecimal.add(value1, value2);
+                    resultScale = scale1;
+                    break;
+                case '-':
+                    result = ScaledDecimal.subtract(value1, value2);
+                    resultScale = scale1;
+                    break;
+                case '*':
+                    result = ScaledDecimal.multiply(value1, value2);
+                    resultScale = scale1 + scale2;
+                    break;
+                default:
+                    return ScaledDecimal.divide(value1, scale1, value2, scale2, mode.getScale(), mode.getRounding());
+            }
+            return result == ScaledDecimal.NOT_EXACT
+                    ? ScaledDecimal.NOT_EXACT : ScaledDecimal.round(result, resultScale, mode.getScale(), mode.getRounding());
+        }
+
+        /**
+         * Compute the result on BigDecimal.
+         * @return The result, rounded to the scale of the decimal mode
+         */
+        private BigDecimal decimal(BigDecimal value1, BigDecimal value2) {
+            int scale = mode.getScale();
+            RoundingMode rounding = mode.getRounding();
+            switch (op) {
+                case '+':
+                    return value1.add(value2).setScale(scale, rounding);
+                case '-':
+                    return value1.subtract(value2).setScale(scale, rounding);
+                case '*':
+                    return value1.multiply(value2).setScale(scale, rounding);
+                default:
+                    return value1.divide(value2, scale, rounding);
+            }
+        }
+
+        @Override
+        int decimalScale(DecimalMode mode) {
+            return this.mode.getScale();
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            DecimalArithmetic folded = new DecimalArithmetic(operator, mode, operand1.fold(folder), operand2.fold(folder));
+            boolean constant = folded.operand1.isConstant() && folded.operand2.isConstant();
+            return constant ? ConstantFolder.evaluate(folded) : folded;
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            return callJson(variables, operator, operand1, operand2);
+        }
+    }
+
+
+    /**
+     * A reference to a variable, bound at evaluation time.
+     * The default value is returned when the variable is not bound (or bound to null).
+     */
+    static final class Variable extends ExpressionNode {
+        private final int slot;
+        private final ExpressionNode defaultValue;
+        private final boolean placeholder;
+
+        /**
+         * @param slot The slot of the variable
+         * @param defaultValue The default value of the variable
+         * @param placeholder True if the variable was written as a `${name}` placeholder (rather than with VAR)
+         */
+        Variable(int slot, ExpressionNode defaultValue, boolean placeholder) {
+            this.slot = slot;
+            this.defaultValue = defaultValue;
+            this.placeholder = placeholder;
+        }
+
+        int getSlot() {
+            return slot;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            Object value = PrimitiveSlot.unwrap(slots[slot]);
+            return value != null ? value : defaultValue.eval(slots);
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            Object value = folder.known(slot);
+            if (value != null) {
+                return new Constant(value);
+            }
+            return new Variable(folder.residualSlot(slot), defaultValue.fold(folder), placeholder);
+        }
+
+        @Override
+        double evalDouble(Object[] slots) {
+            Object value = slots[slot];
+            if (value instanceof PrimitiveSlot) {
+                // A primitive column is read without boxing
+                return ((PrimitiveSlot) value).doubleValue();
+            }
+            return value != null ? ExpressionParser.obj2dbl(value) : defaultValue.evalDouble(slots);
+        }
+
+        @Override
+        long evalLong(Object[] slots) {
+            Object value = slots[slot];
+            if (value instanceof PrimitiveSlot) {
+                return ((PrimitiveSlot) value).longValue();
+            } else if (isIntegralValue(value)) {
+                // Exact, even past the 53 bits of a double
+                return ((Number) value).longValue();
+            }
+            return value != null ? (long) ExpressionParser.obj2dbl(value) : defaultValue.evalLong(slots);
+        }
+
+        @Override
+        boolean isIntegral(Object[] slots) {
+            Object value = slots[slot];
+            if (value instanceof PrimitiveSlot) {
+                return ((PrimitiveSlot) value).isIntegral();
+            }
+            return value != null ? isIntegralValue(value) : defaultValue.isIntegral(slots);
+        }
+
+        private static boolean isIntegralValue(Object value) {
+            return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+        }
+
+        @Override
+        MethodHandle toHandle() {
+            return ExpressionHandles.variable(slot, defaultValue.toHandle());
+        }
+
+        @Override
+        MethodHandle toDoubleHandle() {
+            return ExpressionHandles.interpretDouble(this);
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            if (placeholder) {
+                return "${" + variables[slot] + "}";
+            }
+
+            JSONArray expr = new JSONArray().put(ExpressionCompiler.VAR).put(variables[slot]);
+            if (defaultValue != Constant.NULL) {
+                expr.put(defaultValue.toJson(variables));
+            }
+            return expr;
+        }
+    }
+
+
+    /**
+     * The JSON document operand of an operator (eg: the object of `GET` and `SET`).
+     * A document bound as UTF-8 bytes (byte[] or ByteBuffer, eg: a network buffer) is parsed here by the
+     * engine's JSON backend, without decoding it into a String first. A serialized document is parsed here
+     * too if the operator modifies it, once, and the parsed JSONObject or JSONArray flows on to the
+     * operator. When the operand is a variable that is used only as a document, the parsed document is
+     * stored back into its slot, so that other operators on the same variable do not parse it again.
+     */
+    static final class Document extends ExpressionNode {
+        private final ExpressionNode operand;
+        // The slot of the variable to store the parsed document into, or -1
+        private final int cacheSlot;
+        private final boolean parseStrings;
+        private final JsonBackend backend;
+
+        /**
+         * @param operand The document operand
+         * @param cacheSlot The slot of the variable to store the parsed document into, or -1
+         * @param parseStrings True to parse serialized documents (else only bytes are parsed)
+         * @param backend The JSON backend to parse with
+         */
+        Document(ExpressionNode operand, int cacheSlot, boolean parseStrings, JsonBackend backend) {
+            this.operand = operand;
+            this.cacheSlot = cacheSlot;
+            this.parseStrings = parseStrings;
+            this.backend = backend;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            Object value = operand.eval(slots);
+            Object document;
+            if (value instanceof String && parseStrings) {
+                document = parse((String) value);
+            } else if (value instanceof byte[] || value instanceof ByteBuffer) {
+                document = parse(value);
+            } else {
+                return value;
+            }
+
+            if (cacheSlot >= 0 && slots[cacheSlot] == value) {
+                slots[cacheSlot] = document;
+            }
+            return document;
+        }
+
+        /**
+         * @return The parsed JSON Object or Array, or the string itself if it is not one
+         */
+        private Object parse(String value) {
+            int i = 0;
+            while (i < value.length() && Character.isWhitespace(value.charAt(i))) {
+                i++;
+            }
+            if (i < value.length() && (value.charAt(i) == '{' || value.charAt(i) == '[')) {
+                try {
+                    return backend.parse(value);
+                } catch (JSONException e) {
+                    // Not a valid document: leave it to the operator
+                }
+            }
+            return value;
+        }
+
+        /**
+         * @return The parsed JSON Object or Array, or the decoded string if the bytes are not one
+         */
+        private Object parse(Object bytes) {
+            try {
+                Object document = bytes instanceof byte[]
+                        ? backend.parse((byte[]) bytes, 0, ((byte[]) bytes).length)
+                        : backend.parse((ByteBuffer) bytes);
+                if (document instanceof JSONObject || document instanceof JSONArray) {
+                    return document;
+                }
+            } catch (JSONException e) {
+                // Not a valid document: leave it to the operator
+            }
+            return bytes instanceof byte[]
+                    ? new String((byte[]) bytes, StandardCharsets.UTF_8)
+                    : StandardCharsets.UTF_8.decode(((ByteBuffer) bytes).duplicate()).toString();
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            ExpressionNode folded = operand.fold(folder);
+            if (folded.isConstant()) {
+                ExpressionNode document = ConstantFolder.evaluate(new Document(folded, -1, parseStrings, backend));
+                return document.isConstant() ? Constant.frozen(document.eval(ConstantFolder.NO_SLOTS)) : document;
+            }
+
+            boolean cache = cacheSlot >= 0 && folded instanceof Variable && folder.isDocument(cacheSlot);
+            return new Document(folded, cache ? ((Variable) folded).slot : -1, parseStrings, backend);
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            return operand.toJson(variables);
+        }
+    }
+
+
+    /**
+     * A string with embedded `${name}` placeholders.
+     * Like {@link ExpressionParser#interpolate(String, java.util.Map)}, unbound placeholders are kept as they are.
+     */
+    static final class Template extends ExpressionNode {
+        private final InterpolationTemplate template;
+        private final int[] variableSlots;
+
+        /**
+         * @param template The split template
+         * @param variableSlots The slot of the variable of each placeholder, in the order of appearance
+         */
+        Template(InterpolationTemplate template, int[] variableSlots) {
+            this.template = template;
+            this.variableSlots = variableSlots;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            return template.render(slots, variableSlots);
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            boolean allKnown = true;
+            for (int slot : variableSlots) {
+                allKnown &= folder.known(slot) != null;
+            }
+
+            if (allKnown) {
+                // Render with the known values, which are indexed by the original slots
+                return new Constant(template.render(knownValues(folder), variableSlots));
+            }
+
+            int[] slots = new int[variableSlots.length];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = folder.residualSlot(variableSlots[i]);
+            }
+            return new Template(template, slots);
+        }
+
+        private Object[] knownValues(ConstantFolder folder) {
+            int size = 0;
+            for (int slot : variableSlots) {
+                size = Math.max(size, slot + 1);
+            }
+
+            Object[] values = new Object[size];
+            for (int slot : variableSlots) {
+                values[slot] = folder.known(slot);
+            }
+            return values;
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            return template.toString();
+        }
+    }
+
+
+    /**
+     * A JSON Object literal with variables somewhere in its values.
+     * The object is rebuilt on every evaluation and, like a constant object literal, flows to the
+     * operator as a JSONObject.
+     */
+    static final class ObjectLiteral extends ExpressionNode {
+        private final String[] keys;
+        private final ExpressionNode[] values;
+
+        ObjectLiteral(String[] keys, ExpressionNode[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            JSONObject obj = new JSONObject();
+            for (int i = 0; i < keys.length; i++) {
+                obj.put(keys[i], values[i].eval(slots));
+            }
+            return obj;
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            ExpressionNode[] folded = foldAll(values, folder);
+            ObjectLiteral obj = new ObjectLiteral(keys, folded);
+            return allConstant(folded) ? ConstantFolder.evaluate(obj) : obj;
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            JSONObject obj = new JSONObject();
+            for (int i = 0; i < keys.length; i++) {
+                obj.put(keys[i], literalJson(values[i], variables));
+            }
+            return obj;
+        }
+    }
+
+
+    /**
+     * A JSON Object literal of values by path, eg: of `SET_MANY`. Its keys are compiled into {@link JsonPaths}
+     * once, and only its values are evaluated, into {@link PathValues}.
+     */
+    static final class PathValuesLiteral extends ExpressionNode {
+        private final JsonPaths paths;
+        private final ExpressionNode[] values;
+
+        PathValuesLiteral(JsonPaths paths, ExpressionNode[] values) {
+            this.paths = paths;
+            this.values = values;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            Object[] evaluated = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                evaluated[i] = values[i].eval(slots);
+            }
+            return new PathValues(paths, evaluated);
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            ExpressionNode[] folded = foldAll(values, folder);
+            PathValuesLiteral obj = new PathValuesLiteral(paths, folded);
+            return allConstant(folded) ? ConstantFolder.evaluate(obj) : obj;
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            JSONObject obj = new JSONObject();
+            for (int i = 0; i < values.length; i++) {
+                obj.put(paths.name(i), literalJson(values[i], variables));
+            }
+            return obj;
+        }
+    }
+
+
+    /**
+     * A JSON Array literal with variables, nested within a JSON Object literal.
+     */
+    static final class ArrayLiteral extends ExpressionNode {
+        private final ExpressionNode[] items;
+
+        ArrayLiteral(ExpressionNode[] items) {
+            this.items = items;
+        }
+
+        @Override
+        Object eval(Object[] slots) {
+            JSONArray arr = new JSONArray();
+            for (ExpressionNode item : items) {
+                Object value = item.eval(slots);
+                arr.put(value != null ? value : JSONObject.NULL);
+            }
+            return arr;
+        }
+
+        @Override
+        ExpressionNode fold(ConstantFolder folder) {
+            ExpressionNode[] folded = foldAll(items, folder);
+            return allConstant(folded) ? ConstantFolder.evaluate(new ArrayLiteral(folded)) : new ArrayLiteral(folded);
+        }
+
+        @Override
+        Object toJson(String[] variables) {
+            JSONArray arr = new JSONArray();
+            for (ExpressionNode item : items) {
+                Object value = literalJson(item, variables);
+                arr.put(value != null ? value : JSONObject.NULL);
+            }
+            return arr;
+        }
+    }
+
+
+    /**
+     * Get the JSON representation of an operator call.
+     */
+    private static JSONArray callJson(String[] variables, String operator, ExpressionNode... operands) {
+        JSONArray expr = new JSONArray().put(operator);
+
+        // Skip the missing operands at the end
+        int count = operands.length;
+        while (count > 0 && operands[count - 1] == Constant.NULL) {
+            count--;
+        }
+        for (int i = 0; i < count; i++) {
+            Object operand = operands[i].toJson(variables);
+            expr.put(operand != null ? operand : JSONObject.NULL);
+        }
+        return expr;
+    }
+
+    /**
+     * Get the JSON representation of a value nested within a JSON Object literal,
+     * where a JSONArray is data (and not an expression).
+     */
+    private static Object literalJson(ExpressionNode node, String[] variables) {
+        return node.isConstant() ? node.eval(ConstantFolder.NO_SLOTS) : node.toJson(variables);
+    }
+
+    private static ExpressionNode[] foldAll(ExpressionNode[] nodes, ConstantFolder folder) {
+        ExpressionNode[] folded = new ExpressionNode[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            folded[i] = nodes[i].fold(folder);
+        }
+        return folded;
+    }
+
+    private static boolean allConstant(ExpressionNode[] nodes) {
+        for (ExpressionNode node : nodes) {
+            if (!node.isConstant()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -3,41 +3,27 @@
  */
 package in.eko.exprutils;
 
-import java.util.HashMap;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import in.eko.exprutils.interfaces.OperatorFunction;
+import in.eko.exprutils.interfaces.LazyOperands;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * This class consists exclusively of static methods that operate on an expression represented as JSON Arrays.
  * @author Kumar Abhishek (https://abhi.page/)
  */
 public class ExpressionParser {
-    private static Map<String, OperatorFunction> operatorMap;
-
-    static {
-        // Initialize the operator map
-        operatorMap = new HashMap<>();
-        operatorMap.put("+", ExpressionParser::add);
-        operatorMap.put("-", ExpressionParser::subtract);
-        operatorMap.put("*", ExpressionParser::multiply);
-        operatorMap.put("/", ExpressionParser::divide);
-
-        operatorMap.put("CONCAT", ExpressionParser::concat);
-
-        operatorMap.put("GET", ExpressionParser::objDeepGet);
-        operatorMap.put("SET", ExpressionParser::objDeepSet);
-
-        operatorMap.put("SHA256", ExpressionParser::sha256);
-        operatorMap.put("SHA512", ExpressionParser::sha512);
-        operatorMap.put("MD5", ExpressionParser::md5);
-
-        operatorMap.put("JWT", ExpressionParser::generateJwt);
-    }
+    // The engine with the built-in operators. Compiled expressions are cached here, not by the engine
+    private static final ExpressionEngine engine = ExpressionEngine.builder().cache(null).build();
+    private static volatile ExpressionCache cache = ExpressionCache.builder().build();
 
 
     // Suppress default constructor for noninstantiability
@@ -52,99 +38,177 @@ public class ExpressionParser {
      * @return True if the operator is supported
      */
     public static boolean isValidOperator(String operator) {
-        return operatorMap.containsKey(operator);
+        return engine.isValidOperator(operator);
     }
 
 
     /**
      * Interpolate/replace values of dollar-curly-brace-wrapped variables into a string.
+     * To interpolate the same string repeatedly, compile it once with {@link InterpolationTemplate#compile(String)}.
      * @param expr The string where variables are to be replaced. Eg: "Hello, ${name}"
      * @param data The map of variable-value pairs
      * @return The interpolated string with the variables replaced
      */
     public static String interpolate(String expr, Map<String, String> data) {
-        Pattern pattern = Pattern.compile("\\$\\{(\\w+)\\}");
-        Matcher matcher = pattern.matcher(expr);
-
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            String newString = data.getOrDefault(matcher.group(1), matcher.group(0));
-            matcher.appendReplacement(sb, newString);
-        }
-        matcher.appendTail(sb);
-
-        return sb.toString();
+        return InterpolationTemplate.compile(expr).render(data);
     }
 
     /**
      * Execute an expression provided as a JSON array.
      * The first element is always an operator/function.
      * The remaining elements of the array are the operands/parameters or another nested expression as a JSON array.
+     * An expression with data interpolated into its text is a new expression for every call: bind the data with
+     * {@link #parseExpression(String, Map)} instead, so the expression is compiled once.
      * @param expr The expression to execute.
-     * @return The calculated value of the expression
+     * @return The calculated value of the expression (the document of `SET` and `SET_MANY` is returned serialized, as a String)
      * @throws IllegalArgumentException If `expr` is not a valid JSON Array
      */
     public static Object parseExpression(String expr) throws JSONException {
-        try {
-            JSONArray exprJson = new JSONArray(expr);
-            return exec(exprJson);
-        } catch (JSONException e) {
-            throw new IllegalArgumentException("Invalid expr: not a valid JSON");
-        }
+        ExpressionCache exprCache = cache;
+        CompiledExpression compiled = exprCache != null ? exprCache.get(expr) : compile(expr);
+        return compiled.toParseResult(compiled.evaluate());
+    }
+
+    /**
+     * Execute an expression provided as a JSON array, binding its variables to the given data.
+     * Variables are referenced as `${name}` placeholders or with the `VAR` operator, eg: ['+', '${amount}', ['VAR', 'fee', 0]]
+     * Unlike {@link #interpolate(String, Map)}, the data is not substituted into the expression text,
+     * so the expression is parsed only once (see {@link #getCache()}).
+     * @param expr The expression to execute.
+     * @param data The map of variable-value pairs
+     * @return The calculated value of the expression (the document of `SET` and `SET_MANY` is returned serialized, as a String)
+     * @throws IllegalArgumentException If `expr` is not a valid JSON Array
+     */
+    public static Object parseExpression(String expr, Map<String, ?> data) {
+        ExpressionCache exprCache = cache;
+        CompiledExpression compiled = exprCache != null ? exprCache.get(expr) : compile(expr);
+        return compiled.toParseResult(compiled.evaluate(data).getResult());
     }
 
     /**
-     * Private recursive function to solve the expression represented as nested JSON Arrays
-     * @param expr The expression to solve as JSONArray
-     * @return The computed value of the expression
-     * @throws IllegalArgumentException if the operator is not valid
+     * Get the cache of compiled expressions used by {@link #parseExpression(String)} and {@link #parseExpression(String, Map)}.
+     * By default, expressions are cached up to a total length of {@link ExpressionCache#DEFAULT_MAXIMUM_WEIGHT} characters.
+     * @return The expression cache, or null if caching is disabled
      */
-    private static Object exec(JSONArray expr) throws JSONException {
-        // Get the operator
-        String operator = expr.getString(0);
+    public static ExpressionCache getCache() {
+        return cache;
+    }
 
-        // Get the operands
-        Object operand1 = null;
-        Object operand2 = null;
-        Object operand3 = null;
+    /**
+     * Replace the cache of compiled expressions used by {@link #parseExpression(String)} and {@link #parseExpression(String, Map)}.
+     * @param expressionCache The new expression cache, or null to disable caching
+     */
+    public static void setCache(ExpressionCache expressionCache) {
+        cache = expressionCache;
+    }
 
-        try {
-            operand1 = parseOperand(expr.get(1));
-            operand2 = parseOperand(expr.get(2));
-            operand3 = parseOperand(expr.get(3));
-        } catch (JSONException e) {}
+    /**
+     * Compile an expression provided as a JSON array into a reusable, thread-safe {@link CompiledExpression}.
+     * The JSON is parsed and the operators are resolved only once; the compiled expression can then be
+     * evaluated any number of times.
+     * @param expr The expression to compile.
+     * @return The compiled expression
+     * @throws IllegalArgumentException If `expr` is not a valid JSON Array or uses an invalid operator
+     */
+    public static CompiledExpression compile(String expr) {
+        return compile(expr, null);
+    }
 
-        // Get the operator function from the map
-        OperatorFunction operatorFunction = operatorMap.get(operator);
-        if (operatorFunction == null) {
-            throw new IllegalArgumentException("Invalid operator: " + operator);
-        }
+    /**
+     * Compile an expression provided as a JSON array, with exact decimal arithmetic (eg: for money).
+     * The arithmetic operators (`+`, `-`, `*`, `/`) of the compiled expression return BigDecimals,
+     * rounded to the scale of the decimal mode; see {@link CompiledExpression#evaluateDecimal(Map)}.
+     * @param expr The expression to compile.
+     * @param decimalMode The scale and rounding of the arithmetic operators, or null for arithmetic on doubles
+     * @return The compiled expression
+     * @throws IllegalArgumentException If `expr` is not a valid JSON Array or uses an invalid operator
+     */
+    public static CompiledExpression compile(String expr, DecimalMode decimalMode) {
+        return engine.compile(expr, decimalMode);
+    }
 
-        // Evaluate the expression using the operator function
-        return operatorFunction.apply(operand1, operand2, operand3);
+    /**
+     * Compile an expression represented as nested JSON Arrays into a reusable, thread-safe {@link CompiledExpression}.
+     * The compiled expression does not keep any reference to `expr`.
+     * @param expr The expression to compile.
+     * @return The compiled expression
+     * @throws IllegalArgumentException If `expr` is not a valid expression or uses an invalid operator
+     */
+    public static CompiledExpression compile(JSONArray expr) {
+        return compile(expr, null);
     }
 
     /**
-     * Recursively return the operand.
-     * If the operand is another nested expression,
-     * it executes the expression before returning its value
-     * @param operand The operand or a nested expression as JSON Array
-     * @return The value of the operand
-     * @throws JSONException
+     * Compile an expression represented as nested JSON Arrays, with exact decimal arithmetic (eg: for money).
+     * @param expr The expression to compile.
+     * @param decimalMode The scale and rounding of the arithmetic operators, or null for arithmetic on doubles
+     * @return The compiled expression
+     * @throws IllegalArgumentException If `expr` is not a valid expression or uses an invalid operator
+     * @see #compile(String, DecimalMode)
      */
-    private static Object parseOperand(Object operand) throws JSONException {
-        if (operand instanceof JSONArray) {
-            // If the operand is a nested expression, parse it recursively
-            return exec((JSONArray) operand);
-        } else {
-            // Otherwise, get the operand
-            return operand;
-        }
+    public static CompiledExpression compile(JSONArray expr, DecimalMode decimalMode) {
+        return engine.compile(expr, decimalMode);
     }
 
-    private static double obj2dbl(Object value) {
+    /**
+     * Get the definitions of the built-in operators, which every {@link ExpressionEngine} starts with.
+     * @return The built-in operators
+     */
+    static List<Operator> builtinOperators() {
+        List<Operator> operators = Arrays.asList(
+                Operator.arithmetic("+", ExpressionParser::add),
+                Operator.arithmetic("-", ExpressionParser::subtract),
+                Operator.arithmetic("*", ExpressionParser::multiply),
+                Operator.arithmetic("/", ExpressionParser::divide),
+
+                // CONCAT takes two operands, as in 1.x; CONCAT_ALL takes any number
+                Operator.of("CONCAT", 2, ExpressionParser::concat).pure(),
+                Operator.variadic("CONCAT_ALL", 2, ExpressionParser::concatAll).pure(),
+
+                Operator.withPath("GET", 2, 3, 2, false, ExpressionParser::objDeepGet),
+                Operator.withPath("SET", 3, 3, 2, true, ExpressionParser::objDeepSet),
+                Operator.withPath("GET_MANY", 2, 3, 2, true, ExpressionParser::objDeepGetMany),
+                Operator.withPathKeys("SET_MANY", 2, 2, 2, ExpressionParser::objDeepSetMany),
+
+                Operator.of("SHA256", 1, ExpressionParser::sha256).pure(),
+                Operator.of("SHA512", 1, ExpressionParser::sha512).pure(),
+                Operator.of("MD5", 1, ExpressionParser::md5).pure(),
+                Operator.of("HMAC_SHA256", 2, 3, ExpressionParser::hmacSha256).pure(),
+                Operator.of("HMAC_SHA512", 2, 3, ExpressionParser::hmacSha512).pure(),
+
+                // The JWT depends on the current time
+                Operator.withOptions("JWT", 3, 3, 3, JwtOptions::of, ExpressionParser::generateJwt).impure(),
+
+                // Control flow: only the operands that are needed are evaluated
+                Operator.lazy("IF", 2, 3, ExpressionParser::ifThenElse).pure(),
+                Operator.lazy("AND", 1, Operator.VARIADIC, ExpressionParser::and).pure(),
+                Operator.lazy("OR", 1, Operator.VARIADIC, ExpressionParser::or).pure(),
+                Operator.of("NOT", 1, (operand1, operand2, operand3) -> !isTruthy(operand1)).pure(),
+                Operator.lazy("COALESCE", 1, Operator.VARIADIC, ExpressionParser::coalesce).pure(),
+                Operator.lazy("SWITCH", 3, Operator.VARIADIC, ExpressionParser::switchCase).pure(),
+
+                Operator.of("==", 2, (operand1, operand2, operand3) -> isEqual(operand1, operand2)).pure(),
+                Operator.of("!=", 2, (operand1, operand2, operand3) -> !isEqual(operand1, operand2)).pure(),
+                Operator.of("<", 2, (operand1, operand2, operand3) -> isOrdered(operand1, operand2) && compare(operand1, operand2) < 0).pure(),
+                Operator.of("<=", 2, (operand1, operand2, operand3) -> isOrdered(operand1, operand2) && compare(operand1, operand2) <= 0).pure(),
+                Operator.of(">", 2, (operand1, operand2, operand3) -> isOrdered(operand1, operand2) && compare(operand1, operand2) > 0).pure(),
+                Operator.of(">=", 2, (operand1, operand2, operand3) -> isOrdered(operand1, operand2) && compare(operand1, operand2) >= 0).pure());
+        // Like 1.x, the built-in operators ignore extra operands
+        operators.replaceAll(Operator::lenient);
+        return operators;
+    }
+
+    static double obj2dbl(Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        } else if (value instanceof Integer || value instanceof Long || value instanceof BigDecimal
+                || value instanceof BigInteger || value instanceof Short || value instanceof Byte) {
+            // Exact or correctly rounded, like parsing their string form
+            return ((Number) value).doubleValue();
+        }
+
         try {
-            return value instanceof Double ? (Double) value : new Double(value.toString());
+            return Double.parseDouble(value.toString());
         } catch (NumberFormatException e) {
             return 0;
         }
@@ -171,64 +235,346 @@ public class ExpressionParser {
         return (Object) (operand1.toString() + operand2.toString());
     }
 
+    private static Object concatAll(Object[] operands) {
+        StringBuilder result = new StringBuilder();
+        for (Object operand : operands) {
+            result.append(operand.toString());
+        }
+        return (Object) result.toString();
+    }
+
+    /**
+     * ['IF', condition, then, else]: evaluates only the branch that is taken.
+     * The else branch is optional (null).
+     */
+    private static Object ifThenElse(LazyOperands operands) {
+        return isTruthy(operands.get(0)) ? operands.get(1) : operands.get(2);
+    }
+
+    /**
+     * ['AND', operand1, operand2, ...]: true if all the operands are truthy.
+     * Stops at the first operand that is not.
+     */
+    private static Object and(LazyOperands operands) {
+        for (int i = 0; i < operands.size(); i++) {
+            if (!isTruthy(operands.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ['OR', operand1, operand2, ...]: true if any operand is truthy.
+     * Stops at the first operand that is.
+     */
+    private static Object or(LazyOperands operands) {
+        for (int i = 0; i < operands.size(); i++) {
+            if (isTruthy(operands.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ['COALESCE', operand1, operand2, ...]: the first operand that is not null or an empty string
+     * (eg: GET of a missing key). Stops at that operand.
+     */
+    private static Object coalesce(LazyOperands operands) {
+        for (int i = 0; i < operands.size(); i++) {
+            Object value = operands.get(i);
+            if (value != null && value != JSONObject.NULL && !"".equals(value)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ['SWITCH', value, case1, result1, case2, result2, ..., default]: the result of the first case equal
+     * to the value (see `==`), else the optional default (null).
+     * Cases are evaluated in order up to the matching one, and only the matching result is evaluated.
+     */
+    private static Object switchCase(LazyOperands operands) {
+        Object value = operands.get(0);
+        int i = 1;
+        for (; i + 1 < operands.size(); i += 2) {
+            if (isEqual(value, operands.get(i))) {
+                return operands.get(i + 1);
+            }
+        }
+        return operands.get(i);
+    }
+
+    /**
+     * Check if a value counts as true in a condition.
+     * Null, false, zero, NaN, the empty string and the string "false" (ignoring case) are false;
+     * everything else is true.
+     * @param value The value
+     * @return True if the value counts as true
+     */
+    private static boolean isTruthy(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return false;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof JSONObject || value instanceof JSONArray) {
+            // Without serializing the document
+            return true;
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).signum() != 0;
+        } else if (value instanceof Number) {
+            double dbl = ((Number) value).doubleValue();
+            return dbl != 0 && !Double.isNaN(dbl);
+        }
+
+        String str = value.toString();
+        return !str.isEmpty() && !"false".equalsIgnoreCase(str);
+    }
+
+    /**
+     * Check if two values are equal. Numbers are compared by value with each other and with numeric strings
+     * (eg: 5 == 5.0 == '5'); other values are compared by their string form.
+     */
+    private static boolean isEqual(Object operand1, Object operand2) {
+        boolean null1 = operand1 == null || operand1 == JSONObject.NULL;
+        boolean null2 = operand2 == null || operand2 == JSONObject.NULL;
+        if (null1 || null2) {
+            return null1 && null2;
+        }
+        return compare(operand1, operand2) == 0;
+    }
+
+    /**
+     * Check if two values can be ordered: null is not less than, nor greater than, anything.
+     */
+    private static boolean isOrdered(Object operand1, Object operand2) {
+        return operand1 != null && operand1 != JSONObject.NULL && operand2 != null && operand2 != JSONObject.NULL;
+    }
+
+    /**
+     * Compare two (non-null) values: numerically if either one is a number and the other one is a number
+     * or a numeric string, else by their string form.
+     */
+    private static int compare(Object operand1, Object operand2) {
+        if (operand1 instanceof Number || operand2 instanceof Number) {
+            BigDecimal number1 = toNumber(operand1);
+            BigDecimal number2 = toNumber(operand2);
+            if (number1 != null && number2 != null) {
+                return number1.compareTo(number2);
+            }
+        }
+        return operand1.toString().compareTo(operand2.toString());
+    }
+
+    /**
+     * @return The exact value of a number or numeric string, or null if the value is not a (finite) number
+     */
+    private static BigDecimal toNumber(Object value) {
+        if (value instanceof Number) {
+            boolean finite = !(value instanceof Double || value instanceof Float)
+                    || Double.isFinite(((Number) value).doubleValue());
+            return finite ? ScaledDecimal.toBigDecimal(value) : null;
+        }
+
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * Returns nested value from a Json object identified by the key.
-     * @param operand1 String serialized Json Object
-     * @param operand2 key (using dot notation for nested values)
-     * @param operand3 null
+     * @param operand1 Json Object (or Array), or its string serialized form
+     * @param operand2 key (using dot notation for nested values), or the JsonPath compiled from a literal key
+     * @param operand3 default value if the key is not found (optional)
      * @return Nested value from the object
      */
     private static Object objDeepGet(Object operand1, Object operand2, Object operand3) {
-        return (Object) JsonObj.get(operand1.toString(), operand2.toString(), "");
+        String defaultValue = operand3 != null ? operand3.toString() : "";
+        JsonPath path = toPath(operand2);
+        if (path == null) {
+            return defaultValue;
+        }
+
+        if (operand1 instanceof JSONObject || operand1 instanceof JSONArray) {
+            // A parsed document (eg: a record bound as a variable) is walked without serializing it
+            Object value = path.find(operand1);
+            return value != null ? value : defaultValue;
+        }
+        // A serialized document is scanned for the value, which is the only part of it that is parsed
+        return JsonObj.get(operand1.toString(), path, defaultValue);
     }
 
     /**
      * Set a nested value in a Json object identified by the key.
-     * @param operand1 String serialized Json Object
-     * @param operand2 key (using dot notation for nested values)
+     * A parsed document is never modified: the objects along the key are copied (copy-on-write).
+     * @param operand1 Json Object (or Array), or its string serialized form
+     * @param operand2 key (using dot notation for nested values), or the JsonPath compiled from a literal key
      * @param operand3 value
-     * @return Nested value from the object
+     * @return The Json Object with the value set (or the string serialized Json Object, if operand1 is not a
+     *         valid Json Object)
      */
     private static Object objDeepSet(Object operand1, Object operand2, Object operand3) {
-        return (Object) JsonObj.set(operand1.toString(), operand2.toString(), operand3.toString());
+        JsonPath path = toPath(operand2);
+        if (path == null) {
+            return operand1;
+        }
+
+        if (operand1 instanceof JSONObject || operand1 instanceof JSONArray) {
+            Object copy = path.putCopy(operand1, operand3.toString());
+            return copy != null ? copy : operand1;
+        }
+        return (Object) JsonObj.set(operand1.toString(), path, operand3.toString());
+    }
+
+    /**
+     * Returns several nested values from a Json object, parsing it only once.
+     * @param operand1 Json Object (or Array), or its string serialized form
+     * @param operand2 Json Object of the keys, by name (eg: {'status': 'data.txn.status'}), or the JsonPaths
+     *                 compiled from a literal object
+     * @param operand3 default value for the keys that are not found (optional)
+     * @return Json Object of the values, by name
+     */
+    private static Object objDeepGetMany(Object operand1, Object operand2, Object operand3) {
+        String defaultValue = operand3 != null ? operand3.toString() : "";
+        JsonPaths paths = operand2 instanceof JsonPaths ? (JsonPaths) operand2 : JsonPaths.compile(toJsonObject(operand2));
+
+        Object[] values = operand1 instanceof JSONObject || operand1 instanceof JSONArray
+                ? paths.findAll(operand1) : new Object[paths.size()];
+        JSONObject result = new JSONObject();
+        for (int i = 0; i < values.length; i++) {
+            result.put(paths.name(i), values[i] != null ? values[i] : defaultValue);
+        }
+        return result;
+    }
+
+    /**
+     * Set several nested values in a Json object, parsing it only once.
+     * A parsed document is never modified: the objects along the keys are copied (copy-on-write).
+     * @param operand1 Json Object (or Array), or its string serialized form
+     * @param operand2 Json Object of the values, by key (using dot notation for nested values), or the
+     *                 PathValues compiled from a literal object. Invalid keys are ignored.
+     * @return The Json Object with the values set (or operand1, if it is not a valid Json Object)
+     */
+    private static Object objDeepSetMany(Object operand1, Object operand2, Object operand3) {
+        if (!(operand1 instanceof JSONObject || operand1 instanceof JSONArray)) {
+            return operand1;
+        }
+
+        PathValues values = operand2 instanceof PathValues ? (PathValues) operand2 : PathValues.of(toJsonObject(operand2));
+        return values.putAllCopy(operand1);
+    }
+
+    /**
+     * @return The JsonPath of a key operand, or null if it is not a valid path
+     */
+    private static JsonPath toPath(Object operand) {
+        if (operand instanceof JsonPath) {
+            return (JsonPath) operand;
+        }
+
+        try {
+            return JsonPath.compile(operand.toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
 
     private static Object sha256(Object operand1, Object operand2, Object operand3) {
-        return (Object) Hash.sha256(operand1.toString());
+        return hash(operand1, "SHA-256");
     }
 
     private static Object sha512(Object operand1, Object operand2, Object operand3) {
-        return (Object) Hash.sha512(operand1.toString());
+        return hash(operand1, "SHA-512");
     }
 
     private static Object md5(Object operand1, Object operand2, Object operand3) {
-        return (Object) Hash.md5(operand1.toString());
+        return hash(operand1, "MD5");
+    }
+
+    /**
+     * Hash a value: bytes (eg: a request body) are hashed as they are, anything else as its UTF-8 string.
+     */
+    private static Object hash(Object operand, String type) {
+        if (operand instanceof byte[]) {
+            return Hash.getHash((byte[]) operand, type);
+        } else if (operand instanceof ByteBuffer) {
+            return Hash.getHash((ByteBuffer) operand, type);
+        }
+        return Hash.getHash(operand.toString(), type);
+    }
+
+    private static Object hmacSha256(Object operand1, Object operand2, Object operand3) {
+        return hmac(operand1, operand2, operand3, "HmacSHA256");
+    }
+
+    private static Object hmacSha512(Object operand1, Object operand2, Object operand3) {
+        return hmac(operand1, operand2, operand3, "HmacSHA512");
+    }
+
+    /**
+     * Compute the HMAC of a value with a key, through the cache of initialized Mac instances.
+     * @param operand The value: bytes are signed as they are, anything else as its UTF-8 string
+     * @param key The secret key: bytes, or a UTF-8 string
+     * @param encoding The encoding of the result: `hex` (default) or `base64`
+     */
+    private static Object hmac(Object operand, Object key, Object encoding, String type) {
+        byte[] keyBytes = key instanceof byte[] ? (byte[]) key : key.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] mac;
+        if (operand instanceof byte[]) {
+            mac = MacCache.hmac(type, keyBytes, (byte[]) operand);
+        } else if (operand instanceof ByteBuffer) {
+            mac = MacCache.hmac(type, keyBytes, (ByteBuffer) operand);
+        } else {
+            mac = MacCache.hmac(type, keyBytes, operand.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (encoding == null || "hex".equals(encoding)) {
+            return Hash.toHex(mac);
+        } else if ("base64".equals(encoding)) {
+            return Hash.toBase64(mac);
+        }
+        throw new IllegalArgumentException("Invalid encoding: " + encoding);
     }
 
     /**
      * Generate JWT
      * @param operand1  secretKey
      * @param operand2  algorithm
-     * @param operand3  String encoded Json with details like claim, issuer, etc
+     * @param operand3  Json Object (or its serialized form) with details like claim, issuer, etc
      * @return the generated token
      */
     private static Object generateJwt(Object operand1, Object operand2, Object operand3) {
-        String opt = operand3.toString();
-        String data = JsonObj.get(opt, "claim", "").toString();
-        String issuer = JsonObj.get(opt, "issuer", "").toString();
-        String audience = JsonObj.get(opt, "audience", "").toString();
-        String subject = JsonObj.get(opt, "subject", "").toString();
-        String jwtid = JsonObj.get(opt, "jwtid", "").toString();
-        int expiresInSeconds = new Integer(JsonObj.get(opt, "expiresInSeconds", "0").toString());
+        // Compiled once if the options are literal
+        JwtOptions options = JwtOptions.of(operand3);
 
         return (Object) JWT.generate(operand1.toString(),   // secretKey
                 operand2.toString(),                        // Algorithm
-                data,
-                issuer,
-                audience,
-                subject,
-                jwtid,
-                expiresInSeconds);
+                options.getClaim(),
+                options.getIssuer(),
+                options.getAudience(),
+                options.getSubject(),
+                options.getJwtid(),
+                options.getExpiresInSeconds());
+    }
+
+    /**
+     * @return The Json Object of an operand, parsing it if it is serialized (empty if it is not valid)
+     */
+    private static JSONObject toJsonObject(Object operand) {
+        if (operand instanceof JSONObject) {
+            return (JSONObject) operand;
+        }
+
+        try {
+            return new JSONObject(operand.toString());
+        } catch (JSONException e) {
+            return new JSONObject();
+        }
     }
 }
@@ -1,15 +1,35 @@
 package in.eko.exprutils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * This class consists exclusively of static methods that generate a cryptographic hash of the given string.
- * All the methods return an empty string if the input string is null.
+ * This class consists exclusively of static methods that generate a cryptographic hash of the given string or bytes.
+ * Strings are hashed as UTF-8, unless another charset is given.
+ * All the methods return an empty string if the input is null, except those that read a file or stream.
+ * <p>
+ * The message digests are reused by each thread, instead of being looked up from the security providers
+ * on every call, and the hash is encoded through a lookup table.
+ * Input that is too large for the heap, or that arrives in parts, is hashed with a {@link Hasher}.
  * @author Kumar Abhishek (https://abhi.page/)
  */
 public class Hash {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64_DIGITS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // The message digests of the current thread, by algorithm
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+
     // Suppress default constructor for noninstantiability
     private Hash() {
         throw new AssertionError();
@@ -24,6 +44,36 @@ public class Hash {
         return getHash(input, "SHA-256");
     }
 
+    /**
+     * Generate SHA-256 hash of bytes
+     * @param input The input bytes to generate hash for
+     * @return The hash of the bytes. Returns an empty string if the provided input is null.
+     */
+    public static String sha256(byte[] input) {
+        return getHash(input, "SHA-256");
+    }
+
+    /**
+     * Generate SHA-256 hash of a local file, read through memory-mapped regions (not onto the heap)
+     * @param input The path of the file to generate hash for
+     * @return The hash of the file
+     * @throws IOException if reading the file fails
+     */
+    public static String sha256(Path input) throws IOException {
+        return getHash(input, "SHA-256");
+    }
+
+    /**
+     * Generate SHA-256 hash of the rest of a stream, read through a fixed-size buffer.
+     * The stream is not closed.
+     * @param input The stream to generate hash for
+     * @return The hash of the stream
+     * @throws IOException if reading the stream fails
+     */
+    public static String sha256(InputStream input) throws IOException {
+        return getHash(input, "SHA-256");
+    }
+
     /**
      * Generate SHA-512 hash of a string
      * @param input The input string to generate hash for
@@ -33,6 +83,15 @@ public class Hash {
         return getHash(input, "SHA-512");
     }
 
+    /**
+     * Generate SHA-512 hash of bytes
+     * @param input The input bytes to generate hash for
+     * @return The hash of the bytes. Returns an empty string if the provided input is null.
+     */
+    public static String sha512(byte[] input) {
+        return getHash(input, "SHA-512");
+    }
+
     /**
      * Generate MD5 hash of a string
      * @param input The input string to generate hash for
@@ -43,34 +102,234 @@ public class Hash {
     }
 
     /**
-     * Generate hash of a string
+     * Generate MD5 hash of bytes
+     * @param input The input bytes to generate hash for
+     * @return The hash of the bytes. Returns an empty string if the provided input is null.
+     */
+    public static String md5(byte[] input) {
+        return getHash(input, "MD5");
+    }
+
+    /**
+     * Generate HMAC-SHA256 of a string, with a secret key
+     * @param input The input string to generate HMAC for
+     * @param key The secret key, encoded as UTF-8
+     * @return The HMAC of the string, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the key is null or empty
+     */
+    public static String hmacSha256(String input, String key) {
+        return getHmac(input, key, "HmacSHA256");
+    }
+
+    /**
+     * Generate HMAC-SHA512 of a string, with a secret key
+     * @param input The input string to generate HMAC for
+     * @param key The secret key, encoded as UTF-8
+     * @return The HMAC of the string, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the key is null or empty
+     */
+    public static String hmacSha512(String input, String key) {
+        return getHmac(input, key, "HmacSHA512");
+    }
+
+    /**
+     * Generate HMAC of a string, with a secret key
+     * @param input The input string to generate HMAC for, encoded as UTF-8
+     * @param key The secret key, encoded as UTF-8
+     * @param type The HMAC algorithm: `HmacSHA256`, `HmacSHA512`, etc
+     * @return The HMAC of the string, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the key is null or empty
+     * @throws IllegalArgumentException if the HMAC algorithm provided is invalid.
+     */
+    public static String getHmac(String input, String key, String type) {
+        if (input == null) {
+            return "";
+        }
+        return getHmac(input.getBytes(StandardCharsets.UTF_8), key != null ? key.getBytes(StandardCharsets.UTF_8) : null, type);
+    }
+
+    /**
+     * Generate HMAC of bytes, with a secret key.
+     * The key schedule of each key is computed once and cached, in a bounded cache that wipes its copy of a key
+     * when the key is evicted (see {@link #clearHmacKeys()}).
+     * @param input The input bytes to generate HMAC for
+     * @param key The secret key
+     * @param type The HMAC algorithm: `HmacSHA256`, `HmacSHA512`, etc
+     * @return The HMAC of the bytes, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the key is null or empty
+     * @throws IllegalArgumentException if the HMAC algorithm provided is invalid.
+     */
+    public static String getHmac(byte[] input, byte[] key, String type) {
+        if (input == null) {
+            return "";
+        }
+        return toHex(MacCache.hmac(type, key, input));
+    }
+
+    /**
+     * Evict all the HMAC keys from the cache, wiping the copies of the secrets it holds, eg: after rotating keys.
+     */
+    public static void clearHmacKeys() {
+        MacCache.invalidateAll();
+    }
+
+    /**
+     * Generate hash of a string, encoded as UTF-8
      * @param input The input string to generate hash for
-     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA512`, etc
-     * @return The hash of the string. Returns an empty string if the provided input is null.
-     * @throws RuntimeException if the hashing algorithm provided is invalid.
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hash of the string, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
      */
-    private static String getHash(String input, String type) {
+    public static String getHash(String input, String type) {
+        return getHash(input, StandardCharsets.UTF_8, type);
+    }
 
+    /**
+     * Generate hash of a string, encoded with the given charset
+     * @param input The input string to generate hash for
+     * @param charset The charset of the bytes to hash
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hash of the string, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
+     */
+    public static String getHash(String input, Charset charset, String type) {
         if (input == null) {
             return "";
         }
+        return toHex(digest(type).digest(input.getBytes(charset)));
+    }
 
-        try {
-            MessageDigest digest = MessageDigest.getInstance(type);
-            byte[] hash = digest.digest(input.getBytes());
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
+    /**
+     * Generate hash of bytes
+     * @param input The input bytes to generate hash for
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hash of the bytes, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
+     */
+    public static String getHash(byte[] input, String type) {
+        if (input == null) {
+            return "";
+        }
+        return toHex(digest(type).digest(input));
+    }
 
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    /**
+     * Generate hash of the remaining bytes of a buffer (from its position to its limit).
+     * The position of the buffer is not changed.
+     * @param input The input buffer to generate hash for
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hash of the bytes, in hex. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
+     */
+    public static String getHash(ByteBuffer input, String type) {
+        if (input == null) {
+            return "";
+        }
+        MessageDigest digest = digest(type);
+        digest.update(input.duplicate());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Generate hash of a local file, read through memory-mapped regions (not onto the heap)
+     * @param input The path of the file to generate hash for
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hash of the file, in hex
+     * @throws IOException if reading the file fails
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
+     * @see Hasher#update(Path)
+     */
+    public static String getHash(Path input, String type) throws IOException {
+        return Hasher.of(type).update(input).finish();
+    }
+
+    /**
+     * Generate hash of the rest of a stream, read through a fixed-size buffer. The stream is not closed.
+     * @param input The stream to generate hash for
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hash of the stream, in hex
+     * @throws IOException if reading the stream fails
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
+     * @see Hasher#update(InputStream)
+     */
+    public static String getHash(InputStream input, String type) throws IOException {
+        return Hasher.of(type).update(input).finish();
+    }
+
+    /**
+     * Generate hash of bytes, encoded in Base64 (with padding) instead of hex
+     * @param input The input bytes to generate hash for
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hash of the bytes, in Base64. Returns an empty string if the provided input is null.
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
+     */
+    public static String getHashBase64(byte[] input, String type) {
+        if (input == null) {
+            return "";
+        }
+        return toBase64(digest(type).digest(input));
+    }
+
+    /**
+     * Encode bytes in lowercase hex
+     * @param bytes The bytes to encode
+     * @return The hex string
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            chars[j++] = HEX_DIGITS[b >>> 4];
+            chars[j++] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encode bytes in Base64 (RFC 4648, with padding)
+     * @param bytes The bytes to encode
+     * @return The Base64 string
+     */
+    public static String toBase64(byte[] bytes) {
+        char[] chars = new char[(bytes.length + 2) / 3 * 4];
+        int i = 0;
+        int j = 0;
+        for (int whole = bytes.length - bytes.length % 3; i < whole; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            chars[j++] = BASE64_DIGITS[bits >>> 18];
+            chars[j++] = BASE64_DIGITS[bits >>> 12 & 0x3f];
+            chars[j++] = BASE64_DIGITS[bits >>> 6 & 0x3f];
+            chars[j++] = BASE64_DIGITS[bits & 0x3f];
+        }
+
+        int remaining = bytes.length - i;
+        if (remaining > 0) {
+            int bits = (bytes[i] & 0xff) << 16 | (remaining == 2 ? (bytes[i + 1] & 0xff) << 8 : 0);
+            chars[j++] = BASE64_DIGITS[bits >>> 18];
+            chars[j++] = BASE64_DIGITS[bits >>> 12 & 0x3f];
+            chars[j++] = remaining == 2 ? BASE64_DIGITS[bits >>> 6 & 0x3f] : '=';
+            chars[j] = '=';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Get the message digest of the current thread for an algorithm, ready for a new hash.
+     * @throws IllegalArgumentException if the hashing algorithm provided is invalid.
+     */
+    static MessageDigest digest(String type) {
+        Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get(type);
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(type);
+            } catch (NoSuchAlgorithmException | NullPointerException e) {
+                throw new IllegalArgumentException("Invalid hash type: " + type);
+            }
+            digests.put(type, digest);
+        } else {
+            digest.reset();
         }
+        return digest;
     }
 }
@@ -0,0 +1,148 @@
+package in.eko.exprutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes a hash incrementally, from input that arrives in parts or is too large for the heap
+ * (eg: a settlement file of hundreds of MB).
+ * <pre>
+ * Hasher hasher = Hasher.of("SHA-256");
+ * hasher.update(header).update(body);
+ * String hash = hasher.finish();
+ * </pre>
+ * Local files are read through memory-mapped regions, and streams through a fixed-size buffer,
+ * so memory use does not grow with the size of the input.
+ * Instances are not thread-safe; a hasher is reset by {@link #finish()} and can then be reused.
+ * @see Hash
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class Hasher {
+    // The size of the memory-mapped regions of files
+    private static final int MAP_SIZE = 64 * 1024 * 1024;
+    // The size of the buffer that streams are read through
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MessageDigest digest;
+
+    private Hasher(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * Create a hasher for an algorithm.
+     * @param type The hashing algorithm: `MD5`, `SHA-256`, `SHA-512`, etc
+     * @return The hasher
+     * @throws IllegalArgumentException if the hashing algorithm is invalid
+     */
+    public static Hasher of(String type) {
+        try {
+            return new Hasher(MessageDigest.getInstance(type));
+        } catch (NoSuchAlgorithmException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid hash type: " + type);
+        }
+    }
+
+    /**
+     * Hash a string, encoded as UTF-8.
+     * @param input The string
+     * @return This hasher
+     */
+    public Hasher update(String input) {
+        digest.update(input.getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    /**
+     * Hash bytes.
+     * @param input The bytes
+     * @return This hasher
+     */
+    public Hasher update(byte[] input) {
+        digest.update(input);
+        return this;
+    }
+
+    /**
+     * Hash a range of bytes.
+     * @param input The bytes
+     * @param offset The start of the range
+     * @param length The number of bytes
+     * @return This hasher
+     */
+    public Hasher update(byte[] input, int offset, int length) {
+        digest.update(input, offset, length);
+        return this;
+    }
+
+    /**
+     * Hash the remaining bytes of a buffer (from its position to its limit).
+     * The position of the buffer is not changed.
+     * @param input The buffer
+     * @return This hasher
+     */
+    public Hasher update(ByteBuffer input) {
+        digest.update(input.duplicate());
+        return this;
+    }
+
+    /**
+     * Hash the rest of a stream, through a fixed-size buffer. The stream is not closed.
+     * @param input The stream
+     * @return This hasher
+     * @throws IOException if reading fails
+     */
+    public Hasher update(InputStream input) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            digest.update(buffer, 0, read);
+        }
+        return this;
+    }
+
+    /**
+     * Hash a local file, reading it through memory-mapped regions instead of copying it onto the heap.
+     * @param input The path of the file
+     * @return This hasher
+     * @throws IOException if reading fails
+     */
+    public Hasher update(Path input) throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_SIZE) {
+                long length = Math.min(MAP_SIZE, size - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Complete the hash, and reset this hasher for a new one.
+     * @return The hash, in hex
+     */
+    public String finish() {
+        return Hash.toHex(digest.digest());
+    }
+
+    /**
+     * Complete the hash, and reset this hasher for a new one.
+     * @return The hash, as bytes
+     */
+    public byte[] finishBytes() {
+        return digest.digest();
+    }
+
+    @Override
+    public String toString() {
+        return "Hasher{" + digest.getAlgorithm() + "}";
+    }
+}
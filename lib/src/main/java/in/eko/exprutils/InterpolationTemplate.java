@@ -0,0 +1,191 @@
+package in.eko.exprutils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * A string with dollar-curly-brace-wrapped variables (eg: "Hello, ${name}"), split once into its
+ * literal and variable segments so that it can be rendered many times without scanning it again.
+ * Values are inserted as-is: unlike regex replacement, `$` and `\` in a value need no escaping.
+ * Instances are immutable and thread-safe.
+ * @see ExpressionParser#interpolate(String, Map)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class InterpolationTemplate {
+    // Estimated length of a value that is not a CharSequence, to size the output
+    private static final int ESTIMATED_VALUE_LENGTH = 16;
+
+    private final String source;
+    private final String[] literals;
+    private final String[] names;
+    private final String[] placeholders;
+    private final int literalsLength;
+
+    private InterpolationTemplate(String source, String[] literals, String[] names, String[] placeholders) {
+        this.source = source;
+        this.literals = literals;
+        this.names = names;
+        this.placeholders = placeholders;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+    }
+
+    /**
+     * Split a template into its literal and variable segments.
+     * @param template The template string. Eg: "Hello, ${name}"
+     * @return The compiled template
+     */
+    public static InterpolationTemplate compile(String template) {
+        Matcher matcher = ExpressionCompiler.PLACEHOLDER.matcher(template);
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(template.substring(last, matcher.start()));
+            names.add(matcher.group(1));
+            placeholders.add(matcher.group(0));
+            last = matcher.end();
+        }
+        literals.add(template.substring(last));
+
+        return new InterpolationTemplate(template,
+                literals.toArray(new String[0]),
+                names.toArray(new String[0]),
+                placeholders.toArray(new String[0]));
+    }
+
+    /**
+     * Get the names of the variables used in the template.
+     * @return The distinct variable names, in the order of their first appearance
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(Arrays.asList(names))));
+    }
+
+    /**
+     * Check if the template has any variables.
+     * @return True if there is at least one variable in the template
+     */
+    public boolean hasVariables() {
+        return names.length > 0;
+    }
+
+    /**
+     * Render the template with the given values into a new string.
+     * Variables without a value are kept as they are.
+     * @param data The map of variable-value pairs
+     * @return The interpolated string with the variables replaced
+     */
+    public String render(Map<String, ?> data) {
+        if (names.length == 0) {
+            return source;
+        }
+
+        StringBuilder sb = new StringBuilder(estimateLength(data));
+        render(data, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Render the template with the given values, appending to a StringBuilder.
+     * Variables without a value are kept as they are.
+     * @param data The map of variable-value pairs
+     * @param out The StringBuilder to append to
+     */
+    public void render(Map<String, ?> data, StringBuilder out) {
+        try {
+            render(data, (Appendable) out);
+        } catch (IOException e) {
+            // StringBuilder does not throw IOException
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Render the template with the given values, streaming to an Appendable (eg: a Writer).
+     * Variables without a value are kept as they are.
+     * @param data The map of variable-value pairs
+     * @param out The Appendable to write to
+     * @throws IOException if writing to `out` fails
+     */
+    public void render(Map<String, ?> data, Appendable out) throws IOException {
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            appendValue(out, data.get(names[i]), placeholders[i]);
+        }
+        out.append(literals[names.length]);
+    }
+
+    /**
+     * Render the template with values taken from evaluation slots.
+     * @param slots The values of the variables, indexed by their slot
+     * @param variableSlots The slot of each variable of the template, in the order of appearance
+     * @return The interpolated string with the variables replaced
+     */
+    String render(Object[] slots, int[] variableSlots) {
+        StringBuilder sb = new StringBuilder(literalsLength + ESTIMATED_VALUE_LENGTH * names.length);
+        try {
+            for (int i = 0; i < names.length; i++) {
+                sb.append(literals[i]);
+                appendValue(sb, PrimitiveSlot.unwrap(slots[variableSlots[i]]), placeholders[i]);
+            }
+        } catch (IOException e) {
+            // StringBuilder does not throw IOException
+            throw new UncheckedIOException(e);
+        }
+        return sb.append(literals[names.length]).toString();
+    }
+
+    /**
+     * Get the name of each variable, in the order of appearance (including repeated variables).
+     * @return The variable names
+     */
+    String[] names() {
+        return names;
+    }
+
+    /**
+     * Estimate the length of the rendered string, to allocate the output only once in most cases.
+     * @param data The map of variable-value pairs
+     * @return The estimated length
+     */
+    private int estimateLength(Map<String, ?> data) {
+        int length = literalsLength;
+        for (int i = 0; i < names.length; i++) {
+            Object value = data.get(names[i]);
+            length += value instanceof CharSequence ? ((CharSequence) value).length() : ESTIMATED_VALUE_LENGTH;
+        }
+        return length;
+    }
+
+    private static void appendValue(Appendable out, Object value, String placeholder) throws IOException {
+        if (value == null) {
+            out.append(placeholder);
+        } else if (value instanceof CharSequence) {
+            out.append((CharSequence) value);
+        } else {
+            out.append(value.toString());
+        }
+    }
+
+    /**
+     * @return The template string
+     */
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -1,11 +1,8 @@
 package in.eko.exprutils;
 
 import com.auth0.jwt.JWTCreator;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.Claim;
-import com.auth0.jwt.interfaces.DecodedJWT;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -13,11 +10,13 @@ import java.util.*;
 
 public class JWT {
 
+    private static volatile TokenCache tokenCache;
+
     /**
      * Generate JWT (token) with the given configuration.
      * Using java-jwt library (https://github.com/auth0/java-jwt)
      * @param secretKey The secure key used to encrypt the payload (if an encryption algorithm is selected)
-     * @param algo The encryption algorithm to use (defaults to NONE). Currently supported: HS256, HS384, HS512, NONE
+     * @param algo The encryption algorithm to use. Currently supported: HS256, HS384, HS512, NONE (which must be explicit: any other name is not valid)
      * @param data The additional claim (key-value pairs) as serialized JSON object (String).
      * @param issuer The token issuer
      * @param audience The intended audience of the token
@@ -25,7 +24,7 @@ public class JWT {
      * @param jwtid An optional JWT-ID
      * @param expiresInSeconds Number of seconds after which the token expires
      * @return The generated token
-     * @throws IllegalArgumentException if `data` is not a valid JSON Object
+     * @throws IllegalArgumentException if `data` is not a valid JSON Object, or the algorithm is not valid
      */
     public static String generate(String secretKey, String algo, String data, String issuer, String audience, String subject, String jwtid, long expiresInSeconds) {
         try {
@@ -48,7 +47,7 @@ public class JWT {
      * Generate JWT (token) with the given configuration.
      * Using java-jwt library (https://github.com/auth0/java-jwt)
      * @param secretKey The secure key used to encrypt the payload (if an encryption algorithm is selected)
-     * @param algo The encryption algorithm to use (defaults to NONE). Currently supported: HMAC256, HMAC384, HMAC512, NONE
+     * @param algo The encryption algorithm to use. Currently supported: HMAC256, HMAC384, HMAC512, NONE (which must be explicit: any other name is not valid)
      * @param data The JSONObject with key-value pairs of the additional claim/data.
      * @param issuer The token issuer
      * @param audience The intended audience of the token
@@ -56,8 +55,25 @@ public class JWT {
      * @param jwtid An optional JWT-ID
      * @param expiresInSeconds Number of seconds after which the token expires
      * @return The generated token
+     * @throws IllegalArgumentException if the algorithm is not valid
      */
     public static String generate(String secretKey, String algo, JSONObject data, String issuer, String audience, String subject, String jwtid, long expiresInSeconds) {
+        Date now = Calendar.getInstance().getTime();
+        Date expiryDate = null;
+        if (expiresInSeconds > 0) {
+            expiryDate = new Date(now.getTime() + expiresInSeconds * 1000);
+        }
+
+        return JwtSigner.of(algo, secretKey).sign(creator(data, issuer, audience, subject, jwtid, now, expiryDate));
+    }
+
+
+    /**
+     * Set the claims of a JWT, as {@link #generate(String, String, JSONObject, String, String, String, String, long)} does.
+     * @param expiryDate The expiry of the token, or null if it does not expire
+     * @return The JWT builder, ready to sign
+     */
+    static JWTCreator.Builder creator(JSONObject data, String issuer, String audience, String subject, String jwtid, Date issuedAt, Date expiryDate) {
         JWTCreator.Builder jwtBuilder = com.auth0.jwt.JWT.create();
 
         if (issuer != null && !issuer.equals("")) {
@@ -76,51 +92,31 @@ public class JWT {
             jwtBuilder.withJWTId(jwtid);
         }
 
-        Date expiryDate = null;
-        Date now = Calendar.getInstance().getTime();
-        if (expiresInSeconds > 0) {
-            long nowMillis = now.getTime();
-            long expMillis = nowMillis + expiresInSeconds * 1000;
-            expiryDate = new Date(nowMillis + expMillis);
+        if (expiryDate != null) {
             jwtBuilder.withExpiresAt(expiryDate);
         }
 
-        jwtBuilder.withIssuedAt(now);
+        jwtBuilder.withIssuedAt(issuedAt);
 
         if (data != null) {
-            Iterator i = data.keys();
-            while (i.hasNext()) {
-                String key = (String) i.next();
+            for (String key : data.keySet()) {
                 Object value = data.get(key);
                 if (value instanceof Number) {
-                    jwtBuilder.withClaim(key, new Double(value.toString()));
+                    jwtBuilder.withClaim(key, toDouble((Number) value));
                 } else {
                     jwtBuilder.withClaim(key, value.toString());
                 }
             }
         }
 
-        Algorithm algorithm = null;
-        switch (algo.toUpperCase()) {
-            case "HS256":
-            case "HMAC256":
-                algorithm = Algorithm.HMAC256(secretKey);
-                break;
-            case "HS384":
-            case "HMAC384":
-                algorithm = Algorithm.HMAC384(secretKey);
-                break;
-            case "HS512":
-            case "HMAC512":
-                algorithm = Algorithm.HMAC512(secretKey);
-                break;
-            // case "NONE":
-            default:
-                algorithm = Algorithm.none();
-        }
+        return jwtBuilder;
+    }
 
-        String token = jwtBuilder.sign(algorithm);
-        return token;
+    /**
+     * @return The value of a numeric claim: numbers are always written as doubles, eg: 1234.0
+     */
+    static Double toDouble(Number value) {
+        return Double.valueOf(value.toString());
     }
 
 
@@ -131,30 +127,45 @@ public class JWT {
      * @param algo The encryption algorithm used to generate the token
      * @return  The Map of claim (payload) key-value pairs.
      * @throws JWTVerificationException if the token cannot be verified
+     * @throws IllegalArgumentException if the algorithm is not valid
      */
     public static Map<String, Claim> parse(String token, String secretKey, String algo) throws JWTVerificationException {
-        DecodedJWT jwt;
-        Algorithm algorithm = null;
-        switch (algo.toUpperCase()) {
-            case "HS256":
-            case "HMAC256":
-                algorithm = Algorithm.HMAC256(secretKey);
-                break;
-            case "HS384":
-            case "HMAC384":
-                algorithm = Algorithm.HMAC384(secretKey);
-                break;
-            case "HS512":
-            case "HMAC512":
-                algorithm = Algorithm.HMAC512(secretKey);
-                break;
-            // case "NONE":
-            default:
-                algorithm = Algorithm.none();
-        }
-        JWTVerifier verifier = com.auth0.jwt.JWT.require(algorithm).build();
-        jwt = verifier.verify(token);
-        return jwt.getClaims();
+        return parse(token, secretKey, algo, null, null);
+    }
+
+
+    /**
+     * Validates and parses a JWT (token), also requiring its issuer and audience. If valid, returns a Map of
+     * key-value pairs of the claims.
+     * @param token The JWT to parse.
+     * @param secretKey The secure key that was used to encrypt the token
+     * @param algo The encryption algorithm used to generate the token
+     * @param issuer The required issuer, or null for any issuer
+     * @param audience The required audience, or null for any audience
+     * @return  The Map of claim (payload) key-value pairs.
+     * @throws JWTVerificationException if the token cannot be verified
+     * @throws IllegalArgumentException if the algorithm is not valid
+     */
+    public static Map<String, Claim> parse(String token, String secretKey, String algo, String issuer, String audience) throws JWTVerificationException {
+        JwtVerifier verifier = JwtVerifier.of(algo, secretKey, issuer, audience);
+        TokenCache cache = tokenCache;
+        return (cache != null ? cache.verify(verifier, token) : verifier.verify(token)).getClaims();
+    }
+
+
+    /**
+     * @return The cache of verified tokens used by {@link #parse(String, String, String)}, or null if it is disabled
+     */
+    public static TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * Replace the cache of verified tokens used by {@link #parse(String, String, String)}, eg: to enable it.
+     * @param cache The new token cache, or null to disable caching (default)
+     */
+    public static void setTokenCache(TokenCache cache) {
+        tokenCache = cache;
     }
 
 }
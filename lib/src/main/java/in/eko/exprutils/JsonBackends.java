@@ -0,0 +1,99 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.JsonBackend;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The built-in JSON backends.
+ * @see ExpressionEngine.Builder#jsonBackend(JsonBackend)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class JsonBackends {
+    /**
+     * The org.json parser (default). Bytes are decoded into a String before they are parsed.
+     */
+    public static final JsonBackend ORG_JSON = new OrgJson();
+
+    /**
+     * A parser that reads UTF-8 bytes directly, without decoding the input into a String first.
+     * ASCII strings are built straight from the bytes, short keys are reused across documents parsed by
+     * the same thread (eg: the records of an NDJSON file), and small integers are parsed without an
+     * intermediate String. It accepts standard JSON, and single-quoted strings like org.json; other
+     * non-standard syntax (eg: unquoted keys or trailing content) is not valid.
+     * Numbers are converted like org.json does, so both backends parse documents into the same values.
+     * String input is encoded into bytes first, so this backend is best used with byte input.
+     */
+    public static final JsonBackend BYTES = new Bytes();
+
+    // Suppress default constructor for noninstantiability
+    private JsonBackends() {
+        throw new AssertionError();
+    }
+
+
+    private static final class OrgJson implements JsonBackend {
+        @Override
+        public Object parse(String json) {
+            return new JSONTokener(json).nextValue();
+        }
+
+        @Override
+        public Object parse(byte[] json, int offset, int length) {
+            return parse(new String(json, offset, length, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Object parse(ByteBuffer json) {
+            return parse(StandardCharsets.UTF_8.decode(json.duplicate()).toString());
+        }
+
+        @Override
+        public String toJson(Object value) {
+            return JSONObject.valueToString(value);
+        }
+
+        @Override
+        public String toString() {
+            return "ORG_JSON";
+        }
+    }
+
+
+    private static final class Bytes implements JsonBackend {
+        // One parser per thread, so that its buffers and key cache are reused without synchronization
+        private final ThreadLocal<Utf8JsonParser> parsers = ThreadLocal.withInitial(Utf8JsonParser::new);
+
+        @Override
+        public Object parse(String json) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            return parsers.get().parse(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public Object parse(byte[] json, int offset, int length) {
+            if (offset < 0 || length < 0 || offset + length > json.length) {
+                throw new IndexOutOfBoundsException("Invalid range: " + offset + "+" + length);
+            }
+            return parsers.get().parse(json, offset, length);
+        }
+
+        @Override
+        public Object parse(ByteBuffer json) {
+            return parsers.get().parse(json);
+        }
+
+        @Override
+        public String toJson(Object value) {
+            return JSONObject.valueToString(value);
+        }
+
+        @Override
+        public String toString() {
+            return "BYTES";
+        }
+    }
+}
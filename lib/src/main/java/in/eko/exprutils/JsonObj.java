@@ -3,7 +3,10 @@ package in.eko.exprutils;
 import org.json.JSONObject;
 import org.json.JSONException;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class consists exclusively of static utility methods for processing JSON objects.
@@ -20,7 +23,8 @@ public class JsonObj {
     /**
      * Retrieve deep/nested value from a JSON Object.
      * @param obj String serialized JSON object to retrieve value from.
-     * @param key The key for fetching value from the object. Deep/nested path is represented by dot notation.
+     * @param key The key for fetching value from the object. Deep/nested path is represented by dot notation,
+     *            and array elements by their index (see {@link JsonPath}).
      * @param default_value Default value to return if the key was not found or in case of any error in parsing the object.
      * @return The value
      */
@@ -29,12 +33,36 @@ public class JsonObj {
             return default_value;
         }
 
+        JsonPath path = compilePath(key);
+        return path != null ? get(obj, path, default_value) : default_value;
+    }
+
+    /**
+     * Retrieve deep/nested value from a JSON Object, with a precompiled path.
+     * The object is scanned lazily: members that are not on the path are checked and skipped without being
+     * parsed, and only the value itself is parsed. Input that cannot be scanned (eg: unquoted keys), or that
+     * is invalid anywhere (eg: a duplicate key), is parsed in full instead, with the same result as before.
+     * @param obj String serialized JSON object to retrieve value from.
+     * @param path The path of the value within the object.
+     * @param default_value Default value to return if the path was not found or in case of any error in parsing the object.
+     * @return The value
+     */
+    public static Object get(String obj, JsonPath path, String default_value) {
+        if (obj == null || path == null) {
+            return default_value;
+        }
+
+        Object value = JsonScanner.find(obj, path);
+        if (value != JsonScanner.UNSUPPORTED) {
+            return value != null ? value : default_value;
+        }
+
         try {
             // Parse JSON Object from String
             JSONObject dataJson = new JSONObject(obj);
 
             // Extract deep value from the object
-            return get(dataJson, key, default_value);
+            return get(dataJson, path, default_value);
         } catch (JSONException e) {
             return default_value;
         }
@@ -44,7 +72,8 @@ public class JsonObj {
     /**
      * Retrieve deep/nested value from a JSON Object.
      * @param obj The JSONObject to retrieve value from.
-     * @param key The key for fetching value from the object. Deep/nested path is represented by dot notation.
+     * @param key The key for fetching value from the object. Deep/nested path is represented by dot notation,
+     *            and array elements by their index (see {@link JsonPath}).
      * @param default_value Default value to return if the key was not found or in case of any error in parsing the object.
      * @return The value
      */
@@ -53,32 +82,25 @@ public class JsonObj {
             return default_value;
         }
 
-        Object val = default_value;
-
-        if (key.contains(".")) {
-            // For nested/deep keys...
-
-            // Split key into sub-keys (using dot notation)
-            String keys[] = key.split("\\.", 20);
+        JsonPath path = compilePath(key);
+        return path != null ? get(obj, path, default_value) : default_value;
+    }
 
-            for (String k: keys) {
-                try {
-                    val = obj.get(k);
-                    if (val instanceof JSONObject) {
-                        obj = (JSONObject) val;
-                    }
-                } catch (JSONException e)  {
-                    return default_value;
-                }
-            }
-        } else {
-            // For simple (non-nested) keys...
-            try {
-                val = obj.get(key);
-            } catch (JSONException e) {}
+    /**
+     * Retrieve deep/nested value from a JSON Object, with a precompiled path.
+     * The path is walked without allocating.
+     * @param obj The JSONObject to retrieve value from.
+     * @param path The path of the value within the object.
+     * @param default_value Default value to return if the path was not found.
+     * @return The value
+     */
+    public static Object get(JSONObject obj, JsonPath path, String default_value) {
+        if (obj == null || path == null) {
+            return default_value;
         }
 
-        return val;
+        Object val = path.find(obj);
+        return val != null ? val : default_value;
     }
 
 
@@ -86,7 +108,8 @@ public class JsonObj {
      * Set a key-value pair deep within a JSON Object.
      * @param obj String serialized JSON object to insert value into.
      * @param key The key for inserting value into the object. Deep/nested path is
-     *            represented by dot notation. Unavailable object path is created.
+     *            represented by dot notation, and array elements by their index (see {@link JsonPath}).
+     *            Unavailable object path is created.
      * @param value An object which is the value. It should be of one of these types:
      *              Boolean, Double, Integer, JSONArray, JSONObject, Long, String,
      *              or the JSONObject.NULL object.
@@ -97,12 +120,28 @@ public class JsonObj {
             return obj;
         }
 
+        JsonPath path = compilePath(key);
+        return path != null ? set(obj, path, value) : obj;
+    }
+
+    /**
+     * Set a value deep within a JSON Object, with a precompiled path.
+     * @param obj String serialized JSON object to insert value into.
+     * @param path The path of the value within the object. Unavailable objects and arrays along the path are created.
+     * @param value The value (see {@link #set(String, String, Object)}).
+     * @return The String serialized JSON object with the value inserted.
+     */
+    public static String set(String obj, JsonPath path, Object value) {
+        if (obj == null || path == null) {
+            return obj;
+        }
+
         try {
             // Parse JSON Object from String
             JSONObject objJson = new JSONObject(obj);
 
-            // Extract deep value from the object
-            return set(objJson, key, value).toString();
+            // Set deep value into the object
+            return path.put(objJson, value) ? objJson.toString() : obj;
         } catch (JSONException e) {
             return obj;
             // throw new IllegalArgumentException("Invalid expr: not a valid JSON");
@@ -110,53 +149,134 @@ public class JsonObj {
     }
 
     /**
-     * Private generic method to set a key-value pair deep within a JSON Object.
+     * Set a value deep within a JSON Object, with a precompiled path.
+     * The object is modified in place; nothing is modified if the path goes through a value
+     * that is not an object or array.
      * @param obj JSON object to insert value into.
-     * @param key The key for inserting value into the object. Deep/nested path is
-     *            represented by dot notation. Unavailable object path is created.
-     * @param value The value to set.
-     * @return The String serialized JSON object with the key-value pair inserted.
+     * @param path The path of the value within the object. Unavailable objects and arrays along the path are created.
+     * @param value The value (see {@link #set(String, String, Object)}).
+     * @return The same JSON object.
      */
-    private static JSONObject set(JSONObject obj, String key, Object value) {
-        if (obj == null || key == null) {
-            return obj;
+    public static JSONObject set(JSONObject obj, JsonPath path, Object value) {
+        if (obj != null && path != null) {
+            path.put(obj, value);
+        }
+        return obj;
+    }
+
+    /**
+     * Retrieve several deep/nested values from a JSON Object, parsing it only once.
+     * @param obj String serialized JSON object to retrieve the values from.
+     * @param paths The keys of the values (see {@link #get(String, String, String)}). Invalid keys are ignored.
+     * @return The values that were found, by key (in the order of the keys). Empty in case of any error in
+     *         parsing the object.
+     */
+    public static Map<String, Object> getAll(String obj, String... paths) {
+        if (obj == null || paths == null) {
+            return new LinkedHashMap<>();
         }
 
-        if (key.contains(".")) {
-            // For nested/deep keys...
-
-            // Split key into sub-keys (using dot notation)
-            String keys[] = key.split("\\.", 20);
-
-            // reach the final nested object to set the key/value...
-            Object val;
-            JSONObject subObj = obj;
-            JSONObject newObj;
-
-            for (int j = 0; j < keys.length - 1; j++) {
-                if (subObj.has(keys[j])) {
-                    val = subObj.get(keys[j]);
-                    if (val instanceof JSONObject) {
-                        subObj = (JSONObject) val;
-                    } else {
-                        return obj;
-                    }
-                } else {
-                    newObj = new JSONObject();
-                    subObj.put(keys[j], newObj);
-                    subObj = newObj;
-                }
+        List<JsonPath> compiled = new ArrayList<>(paths.length);
+        for (String key : paths) {
+            JsonPath path = key != null ? compilePath(key) : null;
+            if (path != null) {
+                compiled.add(path);
             }
+        }
+        return getAll(obj, JsonPaths.of(compiled));
+    }
+
+    /**
+     * Retrieve several deep/nested values from a JSON Object, parsing it only once.
+     * @param obj String serialized JSON object to retrieve the values from.
+     * @param paths The compiled paths of the values.
+     * @return The values that were found, by path (in the order of the paths). Empty in case of any error in
+     *         parsing the object.
+     */
+    public static Map<String, Object> getAll(String obj, JsonPaths paths) {
+        if (obj == null || paths == null) {
+            return new LinkedHashMap<>();
+        }
+
+        try {
+            return paths.findAllByName(new JSONObject(obj));
+        } catch (JSONException e) {
+            return new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * Retrieve several deep/nested values from a JSON Object.
+     * The parents shared by several paths are looked up only once.
+     * @param obj The JSONObject to retrieve the values from.
+     * @param paths The compiled paths of the values.
+     * @return The values that were found, by path (in the order of the paths).
+     */
+    public static Map<String, Object> getAll(JSONObject obj, JsonPaths paths) {
+        if (obj == null || paths == null) {
+            return new LinkedHashMap<>();
+        }
+        return paths.findAllByName(obj);
+    }
+
+    /**
+     * Set several key-value pairs deep within a JSON Object, parsing and serializing it only once.
+     * @param obj String serialized JSON object to insert the values into.
+     * @param values The values, by key (see {@link #set(String, String, Object)}). Invalid keys, and keys
+     *               through a value that is not an object, are ignored. When a key is a prefix of another
+     *               key, its value is set first.
+     * @return The String serialized JSON object with the key-value pairs inserted.
+     */
+    public static String setAll(String obj, Map<String, ?> values) {
+        if (obj == null || values == null) {
+            return obj;
+        }
 
-            // Set the final key/value
-            subObj.put(keys[keys.length-1], value);
-        } else {
-            // For simple (non-nested) keys...
-            try {
-                obj.put(key, value);
-            } catch (JSONException e) {}
+        try {
+            // Parse JSON Object from String
+            JSONObject objJson = new JSONObject(obj);
+
+            return setAll(objJson, values).toString();
+        } catch (JSONException e) {
+            return obj;
+        }
+    }
+
+    /**
+     * Set several key-value pairs deep within a JSON Object.
+     * The object is modified in place (see {@link #setAll(String, Map)}).
+     * @param obj JSON object to insert the values into.
+     * @param values The values, by key.
+     * @return The same JSON object.
+     */
+    public static JSONObject setAll(JSONObject obj, Map<String, ?> values) {
+        if (obj == null || values == null) {
+            return obj;
         }
 
+        List<JsonPath> paths = new ArrayList<>(values.size());
+        List<Object> pathValues = new ArrayList<>(values.size());
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            JsonPath path = entry.getKey() != null ? compilePath(entry.getKey()) : null;
+            if (path != null) {
+                paths.add(path);
+                pathValues.add(entry.getValue());
+            }
+        }
+        JsonPaths.of(paths).putAll(obj, pathValues.toArray());
         return obj;
     }
+
+    /**
+     * Compile a path given as a string key.
+     * @param key The key
+     * @return The compiled path, or null if the key is not a valid path
+     */
+    private static JsonPath compilePath(String key) {
+        try {
+            return JsonPath.compile(key);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,319 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A path to a value deep within a JSON Object, parsed once into its segments.
+ * Keys are separated by dots, and array elements are addressed by their index: `data.txns[3].status`.
+ * A dot, bracket or backslash that is part of a key is escaped with a backslash: `headers.x\.request\.id`.
+ * There is no limit to the number of segments.
+ * Setting a value is append-only for arrays: an index can replace an element, or add one at the end of the
+ * array (at its length), so that a path cannot pad an array with nulls.
+ * Instances are immutable and thread-safe; walking a compiled path does not allocate.
+ * @see JsonObj#get(JSONObject, JsonPath, String)
+ * @see JsonObj#set(JSONObject, JsonPath, Object)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class JsonPath {
+    private final String path;
+    // The key of each segment, or null for an array index
+    private final String[] keys;
+    // The array index of each segment, or -1 for a key
+    private final int[] indexes;
+
+    private JsonPath(String path, String[] keys, int[] indexes) {
+        this.path = path;
+        this.keys = keys;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Parse a path into its segments.
+     * @param path The path, eg: `a.b[3].c`
+     * @return The compiled path
+     * @throws IllegalArgumentException if the path is null, has an unterminated or non-numeric index,
+     *         or ends with a backslash
+     */
+    public static JsonPath compile(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("Invalid path: null");
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        // False right after an index, where only a dot or another index may follow
+        boolean inKey = true;
+
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                if (inKey) {
+                    keys.add(key.toString());
+                    indexes.add(-1);
+                    key.setLength(0);
+                }
+                inKey = true;
+            } else if (c == '[') {
+                if (inKey && key.length() > 0) {
+                    keys.add(key.toString());
+                    indexes.add(-1);
+                    key.setLength(0);
+                } else if (inKey && i > 0) {
+                    // An index must follow a key or another index, eg: not `a.[0]`
+                    throw new IllegalArgumentException("Invalid path: " + path);
+                }
+
+                int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Invalid path: " + path);
+                }
+                keys.add(null);
+                indexes.add(parseIndex(path, i + 1, end));
+                i = end;
+                inKey = false;
+            } else if (!inKey) {
+                throw new IllegalArgumentException("Invalid path: " + path);
+            } else if (c == '\\') {
+                if (i + 1 == length) {
+                    throw new IllegalArgumentException("Invalid path: " + path);
+                }
+                key.append(path.charAt(++i));
+            } else {
+                key.append(c);
+            }
+        }
+        if (inKey) {
+            keys.add(key.toString());
+            indexes.add(-1);
+        }
+
+        int[] segmentIndexes = new int[indexes.size()];
+        for (int i = 0; i < segmentIndexes.length; i++) {
+            segmentIndexes[i] = indexes.get(i);
+        }
+        return new JsonPath(path, keys.toArray(new String[0]), segmentIndexes);
+    }
+
+    private static int parseIndex(String path, int start, int end) {
+        if (start == end || end - start > 9) {
+            throw new IllegalArgumentException("Invalid path: " + path);
+        }
+
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid path: " + path);
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /**
+     * @return The number of segments
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return The key of a segment, or null if the segment is an array index
+     */
+    String key(int segment) {
+        return keys[segment];
+    }
+
+    /**
+     * @return The array index of a segment, or -1 if the segment is a key
+     */
+    int index(int segment) {
+        return indexes[segment];
+    }
+
+    /**
+     * Find the value at this path.
+     * @param root The JSON Object (or Array) to start from
+     * @return The value, or null if the path does not exist
+     */
+    Object find(Object root) {
+        Object current = root;
+        for (int i = 0; i < keys.length && current != null; i++) {
+            current = child(current, i);
+        }
+        return current;
+    }
+
+    /**
+     * Set the value at this path, creating the missing objects and arrays along the path.
+     * @param root The JSON Object (or Array) to modify
+     * @param value The value; null removes a key
+     * @return False if the path goes through a value that is not an object or array, or has an index past the
+     *         end of an array (nothing is modified)
+     */
+    boolean put(Object root, Object value) {
+        if (!canPut(root)) {
+            return false;
+        }
+
+        Object current = root;
+        for (int i = 0; i < keys.length - 1; i++) {
+            Object next = child(current, i);
+            if (next == null || next == JSONObject.NULL) {
+                next = newContainer(i + 1);
+                putChild(current, i, next);
+            }
+            current = next;
+        }
+        putChild(current, keys.length - 1, value);
+        return true;
+    }
+
+    /**
+     * Set the value at this path without modifying the root (copy-on-write): only the objects and arrays
+     * along the path are copied, and everything else is shared with the root.
+     * @param root The JSON Object (or Array)
+     * @param value The value; null removes a key
+     * @return The copy of the root with the value set, or null if the path goes through a value that is not
+     *         an object or array, or has an index past the end of an array
+     */
+    Object putCopy(Object root, Object value) {
+        if (!canPut(root)) {
+            return null;
+        }
+
+        Object copy = copyOf(root);
+        Object current = copy;
+        for (int i = 0; i < keys.length - 1; i++) {
+            Object next = child(current, i);
+            next = next == null || next == JSONObject.NULL ? newContainer(i + 1) : copyOf(next);
+            putChild(current, i, next);
+            current = next;
+        }
+        putChild(current, keys.length - 1, value);
+        return copy;
+    }
+
+    /**
+     * Check the whole path before modifying anything.
+     * @return False if the path goes through a value that is not an object or array, or has an index past
+     *         the end of an array
+     */
+    private boolean canPut(Object root) {
+        Object current = root;
+        for (int i = 0; i < keys.length; i++) {
+            if (!isContainer(current, i) || (keys[i] == null && indexes[i] > ((JSONArray) current).length())) {
+                return false;
+            }
+            Object next = i < keys.length - 1 ? child(current, i) : null;
+            if (next == null || next == JSONObject.NULL) {
+                // The rest of the path is created: only the first element of its new arrays can be set
+                for (int j = i + 1; j < keys.length; j++) {
+                    if (keys[j] == null && indexes[j] > 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            current = next;
+        }
+        return true;
+    }
+
+    /**
+     * @return A new, empty container for a segment (an object for a key, an array for an index)
+     */
+    private Object newContainer(int segment) {
+        return keys[segment] != null ? new JSONObject() : new JSONArray();
+    }
+
+    /**
+     * @return A shallow copy of an object or array
+     */
+    static Object copyOf(Object container) {
+        if (container instanceof JSONObject) {
+            JSONObject obj = (JSONObject) container;
+            JSONObject copy = new JSONObject();
+            for (String key : obj.keySet()) {
+                copy.put(key, obj.opt(key));
+            }
+            return copy;
+        }
+
+        JSONArray arr = (JSONArray) container;
+        JSONArray copy = new JSONArray();
+        for (int i = 0; i < arr.length(); i++) {
+            copy.put(arr.opt(i));
+        }
+        return copy;
+    }
+
+    /**
+     * @return A deep copy of a value: its objects and arrays are copied, at every level
+     */
+    static Object deepCopyOf(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            JSONObject copy = new JSONObject();
+            for (String key : obj.keySet()) {
+                copy.put(key, deepCopyOf(obj.opt(key)));
+            }
+            return copy;
+        } else if (value instanceof JSONArray) {
+            JSONArray arr = (JSONArray) value;
+            JSONArray copy = new JSONArray();
+            for (int i = 0; i < arr.length(); i++) {
+                copy.put(deepCopyOf(arr.opt(i)));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * @return True if the value is the kind of container addressed by a segment (an object for a key,
+     *         an array for an index)
+     */
+    private boolean isContainer(Object value, int segment) {
+        return keys[segment] != null ? value instanceof JSONObject : value instanceof JSONArray;
+    }
+
+    private Object child(Object container, int segment) {
+        if (keys[segment] != null) {
+            return container instanceof JSONObject ? ((JSONObject) container).opt(keys[segment]) : null;
+        }
+        return container instanceof JSONArray ? ((JSONArray) container).opt(indexes[segment]) : null;
+    }
+
+    private void putChild(Object container, int segment, Object value) {
+        if (keys[segment] != null) {
+            ((JSONObject) container).put(keys[segment], value);
+        } else {
+            ((JSONArray) container).put(indexes[segment], value != null ? value : JSONObject.NULL);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JsonPath && path.equals(((JsonPath) o).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    /**
+     * @return The path, as it was compiled
+     */
+    @Override
+    public String toString() {
+        return path;
+    }
+}
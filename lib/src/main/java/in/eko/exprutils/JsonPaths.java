@@ -0,0 +1,285 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of paths to values within the same JSON Object, compiled once into a prefix trie.
+ * The paths are resolved in a single walk: a parent shared by several paths (eg: `data.txn` in
+ * `data.txn.id` and `data.txn.status`) is looked up only once.
+ * Instances are immutable and thread-safe.
+ * @see JsonObj#getAll(JSONObject, JsonPaths)
+ * @see JsonObj#setAll(JSONObject, Map)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class JsonPaths {
+    private final String[] names;
+    private final JsonPath[] paths;
+    private final Node root = new Node(null, -1);
+
+    private JsonPaths(String[] names, JsonPath[] paths) {
+        this.names = names;
+        this.paths = paths;
+        for (int i = 0; i < paths.length; i++) {
+            Node node = root;
+            for (int segment = 0; segment < paths[i].size(); segment++) {
+                node = node.child(paths[i].key(segment), paths[i].index(segment));
+            }
+            node.leaves.add(i);
+        }
+    }
+
+    /**
+     * Compile a set of paths (see {@link JsonPath#compile(String)}).
+     * @param paths The paths
+     * @return The compiled paths
+     * @throws IllegalArgumentException if a path is not valid
+     */
+    public static JsonPaths compile(String... paths) {
+        if (paths == null) {
+            throw new IllegalArgumentException("Invalid paths: null");
+        }
+
+        JsonPath[] compiled = new JsonPath[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            compiled[i] = JsonPath.compile(paths[i]);
+        }
+        return new JsonPaths(paths.clone(), compiled);
+    }
+
+    /**
+     * Combine compiled paths into a set.
+     * @param paths The paths
+     * @return The set of paths
+     */
+    public static JsonPaths of(List<JsonPath> paths) {
+        String[] names = new String[paths.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = paths.get(i).toString();
+        }
+        return new JsonPaths(names, paths.toArray(new JsonPath[0]));
+    }
+
+    /**
+     * Compile a set of named paths, eg: {'status': 'data.txn.status'}.
+     * @param namedPaths The paths (string values), by name
+     * @return The compiled paths, named by the keys of the object
+     * @throws IllegalArgumentException if a path is not a valid path
+     */
+    static JsonPaths compile(JSONObject namedPaths) {
+        String[] names = namedPaths.keySet().toArray(new String[0]);
+        JsonPath[] paths = new JsonPath[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Object path = namedPaths.opt(names[i]);
+            if (!(path instanceof String)) {
+                throw new IllegalArgumentException("Invalid path: " + path);
+            }
+            paths[i] = JsonPath.compile((String) path);
+        }
+        return new JsonPaths(names, paths);
+    }
+
+    /**
+     * @return The number of paths
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * @return The paths, in the order they were compiled
+     */
+    public List<JsonPath> getPaths() {
+        List<JsonPath> list = new ArrayList<>(paths.length);
+        Collections.addAll(list, paths);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return The paths as a Json Object, by name
+     */
+    JSONObject toJson() {
+        JSONObject obj = new JSONObject();
+        for (int i = 0; i < paths.length; i++) {
+            obj.put(names[i], paths[i].toString());
+        }
+        return obj;
+    }
+
+    /**
+     * @return The name of a path: the path itself, or its key in a set of named paths
+     */
+    String name(int path) {
+        return names[path];
+    }
+
+    /**
+     * Find the values of all the paths.
+     * @param root The JSON Object (or Array) to start from
+     * @return The values, indexed like the paths (null where a path does not exist)
+     */
+    Object[] findAll(Object root) {
+        Object[] values = new Object[paths.length];
+        find(this.root, root, values);
+        return values;
+    }
+
+    /**
+     * Find the values of all the paths.
+     * @param root The JSON Object (or Array) to start from
+     * @return The values that exist, by the name of their path (in the order of the paths)
+     */
+    Map<String, Object> findAllByName(Object root) {
+        Object[] values = findAll(root);
+        Map<String, Object> found = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                found.put(names[i], values[i]);
+            }
+        }
+        return found;
+    }
+
+    private static void find(Node node, Object container, Object[] values) {
+        for (Node child : node.children) {
+            Object value = child.get(container);
+            if (value == null) {
+                continue;
+            }
+            for (int leaf : child.leaves) {
+                values[leaf] = value;
+            }
+            if (!child.children.isEmpty()) {
+                find(child, value, values);
+            }
+        }
+    }
+
+    /**
+     * Set the values of all the paths, creating the missing objects and arrays along the paths.
+     * A path that goes through a value that is not an object or array, or that has an index past the end of
+     * an array, is skipped (see {@link JsonPath}), and no missing object or array is created for it alone.
+     * When a path is a prefix of another one, its value is set first, and the indexes of an array are set
+     * in ascending order.
+     * @param root The JSON Object (or Array) to modify
+     * @param values The values, indexed like the paths; null removes a key
+     */
+    void putAll(Object root, Object[] values) {
+        put(this.root, root, values, false);
+    }
+
+    /**
+     * Set the values of all the paths without modifying the root (copy-on-write): only the objects and arrays
+     * along the paths are copied, once each, and everything else is shared with the root.
+     * @param root The JSON Object (or Array)
+     * @param values The values, indexed like the paths; null removes a key
+     * @return The copy of the root with the values set
+     * @see #putAll(Object, Object[])
+     */
+    Object putAllCopy(Object root, Object[] values) {
+        return put(this.root, root, values, true);
+    }
+
+    private static Object put(Node node, Object container, Object[] values, boolean copy) {
+        Object target = copy ? JsonPath.copyOf(container) : container;
+        for (Node child : node.children) {
+            if (!child.accepts(target)) {
+                continue;
+            }
+
+            Object value = child.get(target);
+            boolean fresh = false;
+            for (int leaf : child.leaves) {
+                value = values[leaf];
+                child.set(target, value);
+            }
+            if (child.children.isEmpty()) {
+                continue;
+            }
+
+            if (value == null || value == JSONObject.NULL) {
+                // The first path below decides whether the missing container is an object or an array
+                value = child.children.get(0).key != null ? new JSONObject() : new JSONArray();
+                fresh = true;
+            } else if (!(value instanceof JSONObject || value instanceof JSONArray)) {
+                continue;
+            }
+            Object updated = put(child, value, values, copy && !fresh);
+            if (fresh && (updated instanceof JSONObject ? ((JSONObject) updated).isEmpty() : ((JSONArray) updated).isEmpty())) {
+                // No path below could be set in the missing container (eg: an index past its end): leave it missing
+                continue;
+            }
+            child.set(target, updated);
+        }
+        return target;
+    }
+
+
+    /**
+     * A node of the prefix trie: the segment that leads to it, and the paths that end at it.
+     */
+    private static final class Node {
+        private final String key;
+        private final int index;
+        private final List<Node> children = new ArrayList<>(2);
+        private final List<Integer> leaves = new ArrayList<>(1);
+
+        Node(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        /**
+         * @return The child for a segment, added if it does not exist yet
+         */
+        Node child(String key, int index) {
+            for (Node child : children) {
+                if (key != null ? key.equals(child.key) : child.key == null && child.index == index) {
+                    return child;
+                }
+            }
+            Node child = new Node(key, index);
+            int position = children.size();
+            if (key == null) {
+                // Indexes in ascending order, so that an array can be appended to with consecutive indexes
+                while (position > 0 && children.get(position - 1).key == null && children.get(position - 1).index > index) {
+                    position--;
+                }
+            }
+            children.add(position, child);
+            return child;
+        }
+
+        /**
+         * @return True if the container is the kind addressed by this segment (an object for a key,
+         *         an array for an index up to its length)
+         */
+        boolean accepts(Object container) {
+            if (key != null) {
+                return container instanceof JSONObject;
+            }
+            return container instanceof JSONArray && index <= ((JSONArray) container).length();
+        }
+
+        Object get(Object container) {
+            if (key != null) {
+                return container instanceof JSONObject ? ((JSONObject) container).opt(key) : null;
+            }
+            return container instanceof JSONArray ? ((JSONArray) container).opt(index) : null;
+        }
+
+        void set(Object container, Object value) {
+            if (key != null) {
+                ((JSONObject) container).put(key, value);
+            } else {
+                ((JSONArray) container).put(index, value != null ? value : JSONObject.NULL);
+            }
+        }
+    }
+}
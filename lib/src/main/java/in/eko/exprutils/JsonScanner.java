@@ -0,0 +1,478 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Extracts the value at a {@link JsonPath} from a serialized JSON Object without parsing the whole object.
+ * The input is tokenized in a single pass, and the members and elements that are not on the path are
+ * checked and skipped over without being materialized: only the value itself is parsed, in place, so reading
+ * a few fields of a large payload costs a fraction of a full parse.
+ * The whole input is still validated, so that the result is the same as that of a full parse: a syntax
+ * error or a duplicate key anywhere in the object, or anything but whitespace after it, gives up with
+ * {@link #UNSUPPORTED}.
+ * <p>
+ * Only the syntax of standard JSON (with single-quoted strings also accepted) is scanned. Anything else
+ * (eg: unquoted keys) makes the scan give up with {@link #UNSUPPORTED}, so that the caller can fall back
+ * to a full parse.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class JsonScanner {
+    /**
+     * The result of a scan that could not be completed: the input has to be parsed instead
+     */
+    static final Object UNSUPPORTED = new Object();
+
+    // The characters that end an unquoted value, as in JSONTokener#nextValue()
+    private static final String DELIMITERS = ",:]}/\\\"[{;=#";
+
+    // Deeper nesting is left to a full parse
+    private static final int MAX_DEPTH = 512;
+    // The number of keys of an object that are checked for duplicates by a linear search, without allocating
+    private static final int LINEAR_MEMBERS = 8;
+
+    private final String json;
+    private final JsonPath path;
+    private int pos;
+    private int depth;
+    private Object value;
+    // The hashes of the first keys of the objects being scanned, innermost last, to find duplicate keys
+    private int[] keyHashes = new int[16];
+    private int keyCount;
+    // Whether the last key read is the key of the path segment it was compared with
+    private boolean keyMatched;
+
+    private JsonScanner(String json, JsonPath path) {
+        this.json = json;
+        this.path = path;
+    }
+
+    /**
+     * Find the value at a path within a serialized JSON Object.
+     * @param json The serialized JSON Object
+     * @param path The path of the value
+     * @return The value, null if the path does not exist, or {@link #UNSUPPORTED} if the input could not be scanned
+     */
+    static Object find(String json, JsonPath path) {
+        JsonScanner scanner = new JsonScanner(json, path);
+        try {
+            if (scanner.nextClean() != '{') {
+                return UNSUPPORTED;
+            }
+            scanner.pos--;
+            scanner.scanValue(0);
+            for (; scanner.pos < json.length(); scanner.pos++) {
+                if (json.charAt(scanner.pos) > ' ') {
+                    return UNSUPPORTED;
+                }
+            }
+            return scanner.value;
+        } catch (Unsupported | JSONException e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Check and skip over the value at the current position, and parse it if it is the value at the path.
+     * @param segment The segment of the path that the members or elements of the value are compared with,
+     *                or -1 if the value is not on the path
+     */
+    private void scanValue(int segment) {
+        if (segment == path.size()) {
+            value = value();
+            return;
+        }
+
+        char c = nextClean();
+        if (c == '"' || c == '\'') {
+            skipString(c);
+        } else if (c == '{' || c == '[') {
+            if (++depth > MAX_DEPTH) {
+                throw Unsupported.INSTANCE;
+            }
+            if (c == '{') {
+                scanObject(segment >= 0 && path.key(segment) != null ? segment : -1);
+            } else {
+                scanArray(segment >= 0 && path.key(segment) == null ? segment : -1);
+            }
+            depth--;
+        } else {
+            pos--;
+            readToken();
+        }
+    }
+
+    /**
+     * Check and skip over the rest of the object at the current position.
+     * @param segment The segment of the path that its keys are compared with, or -1
+     */
+    private void scanObject(int segment) {
+        if (nextClean() == '}') {
+            return;
+        }
+        pos--;
+
+        int firstKey = keyCount;
+        // The hashes of all the keys of a wide object
+        KeyHashSet wide = null;
+        String key = segment >= 0 ? path.key(segment) : null;
+        for (;;) {
+            char c = nextClean();
+            if (c != '"' && c != '\'') {
+                throw Unsupported.INSTANCE;
+            }
+            int hash = readKey(c, key);
+            if (wide != null) {
+                wide.add(hash);
+            } else if (keyCount - firstKey < LINEAR_MEMBERS) {
+                addKey(firstKey, hash);
+            } else {
+                wide = new KeyHashSet();
+                for (int i = firstKey; i < keyCount; i++) {
+                    wide.add(keyHashes[i]);
+                }
+                wide.add(hash);
+            }
+            if (nextClean() != ':') {
+                throw Unsupported.INSTANCE;
+            }
+            scanValue(keyMatched ? segment + 1 : -1);
+
+            c = nextClean();
+            if (c == '}') {
+                keyCount = firstKey;
+                return;
+            } else if (c != ',') {
+                throw Unsupported.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Check and skip over the rest of the array at the current position.
+     * @param segment The segment of the path that its indexes are compared with, or -1
+     */
+    private void scanArray(int segment) {
+        if (nextClean() == ']') {
+            return;
+        }
+        pos--;
+
+        int index = segment >= 0 ? path.index(segment) : -1;
+        for (int i = 0;; i++) {
+            scanValue(i == index ? segment + 1 : -1);
+
+            char c = nextClean();
+            if (c == ']') {
+                return;
+            } else if (c != ',') {
+                throw Unsupported.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Record the hash of one of the first keys of the innermost object.
+     * @param firstKey The position of the hash of the first key of the object
+     * @throws Unsupported if the object already has a key with the same hash (a duplicate key, or a collision
+     *         that is left to a full parse)
+     */
+    private void addKey(int firstKey, int hash) {
+        for (int i = firstKey; i < keyCount; i++) {
+            if (keyHashes[i] == hash) {
+                throw Unsupported.INSTANCE;
+            }
+        }
+        if (keyCount == keyHashes.length) {
+            keyHashes = Arrays.copyOf(keyHashes, keyCount * 2);
+        }
+        keyHashes[keyCount++] = hash;
+    }
+
+    /**
+     * Parse the value at the current position, like JSONTokener#nextValue().
+     */
+    private Object value() {
+        char c = nextClean();
+        if (c == '"' || c == '\'') {
+            return readString(c);
+        } else if (c == '{' || c == '[') {
+            if (++depth > MAX_DEPTH) {
+                throw Unsupported.INSTANCE;
+            }
+            Object container = c == '{' ? readObject() : readArray();
+            depth--;
+            return container;
+        }
+        pos--;
+        return JSONObject.stringToValue(readToken());
+    }
+
+    /**
+     * Parse the rest of the object at the current position.
+     */
+    private JSONObject readObject() {
+        JSONObject obj = new JSONObject();
+        if (nextClean() == '}') {
+            return obj;
+        }
+        pos--;
+
+        for (;;) {
+            char c = nextClean();
+            if (c != '"' && c != '\'') {
+                throw Unsupported.INSTANCE;
+            }
+            String key = readString(c);
+            if (nextClean() != ':') {
+                throw Unsupported.INSTANCE;
+            }
+            Object member = value();
+            if (obj.opt(key) != null) {
+                // A duplicate key
+                throw Unsupported.INSTANCE;
+            }
+            obj.put(key, member);
+
+            c = nextClean();
+            if (c == '}') {
+                return obj;
+            } else if (c != ',') {
+                throw Unsupported.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Parse the rest of the array at the current position.
+     */
+    private JSONArray readArray() {
+        JSONArray array = new JSONArray();
+        if (nextClean() == ']') {
+            return array;
+        }
+        pos--;
+
+        for (;;) {
+            array.put(value());
+
+            char c = nextClean();
+            if (c == ']') {
+                return array;
+            } else if (c != ',') {
+                throw Unsupported.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Read the rest of a quoted key, and compare it with the key of a path segment.
+     * Sets {@link #keyMatched} to whether they are equal.
+     * @param key The key of the path segment, or null
+     * @return The hash of the key, as {@link String#hashCode()}
+     */
+    private int readKey(char quote, String key) {
+        int start = pos;
+        int hash = 0;
+        for (int end = start; end < json.length(); end++) {
+            char c = json.charAt(end);
+            if (c == quote) {
+                // No escapes: hash and compare in place
+                pos = end + 1;
+                keyMatched = key != null && end - start == key.length()
+                        && json.regionMatches(start, key, 0, key.length());
+                return hash;
+            } else if (c == '\\' || c == '\n' || c == '\r') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        String decoded = readString(quote);
+        keyMatched = decoded.equals(key);
+        return decoded.hashCode();
+    }
+
+    /**
+     * Skip the rest of a quoted string.
+     */
+    private void skipString(char quote) {
+        for (;;) {
+            char c = next();
+            if (c == quote) {
+                return;
+            } else if (c == '\\') {
+                next();
+            } else if (c == '\n' || c == '\r') {
+                throw Unsupported.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Read the rest of a quoted string, decoding its escapes like JSONTokener#nextString(char).
+     */
+    private String readString(char quote) {
+        StringBuilder sb = new StringBuilder();
+        for (;;) {
+            char c = next();
+            if (c == quote) {
+                return sb.toString();
+            } else if (c == '\n' || c == '\r') {
+                throw Unsupported.INSTANCE;
+            } else if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            c = next();
+            switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'u':
+                    if (pos + 4 > json.length()) {
+                        throw Unsupported.INSTANCE;
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw Unsupported.INSTANCE;
+                    }
+                    pos += 4;
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    sb.append(c);
+                    break;
+                default:
+                    throw Unsupported.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Read an unquoted value (a number, true, false or null).
+     */
+    private String readToken() {
+        int start = pos;
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c < ' ' || DELIMITERS.indexOf(c) >= 0) {
+                break;
+            }
+            pos++;
+        }
+        String token = json.substring(start, pos).trim();
+        if (token.isEmpty()) {
+            throw Unsupported.INSTANCE;
+        }
+        return token;
+    }
+
+    private char next() {
+        if (pos >= json.length()) {
+            throw Unsupported.INSTANCE;
+        }
+        return json.charAt(pos++);
+    }
+
+    /**
+     * @return The next character that is not whitespace
+     */
+    private char nextClean() {
+        for (;;) {
+            char c = next();
+            if (c > ' ') {
+                return c;
+            }
+        }
+    }
+
+
+    /**
+     * A set of the hashes of the keys of an object with many members, to find duplicate keys in constant time.
+     * Open addressing with linear probing, in a table that is at most half full.
+     */
+    private static final class KeyHashSet {
+        private int[] hashes = new int[4 * LINEAR_MEMBERS];
+        // Empty slots are 0, so a hash of 0 is recorded apart
+        private boolean zero;
+        private int size;
+
+        /**
+         * @throws Unsupported if the set already has the hash
+         */
+        void add(int hash) {
+            if (hash == 0) {
+                if (zero) {
+                    throw Unsupported.INSTANCE;
+                }
+                zero = true;
+                return;
+            }
+
+            int mask = hashes.length - 1;
+            int i = slot(hash, mask);
+            for (; hashes[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == hash) {
+                    throw Unsupported.INSTANCE;
+                }
+            }
+            hashes[i] = hash;
+            if (++size * 2 > hashes.length) {
+                grow();
+            }
+        }
+
+        private void grow() {
+            int[] old = hashes;
+            hashes = new int[old.length * 2];
+            int mask = hashes.length - 1;
+            for (int hash : old) {
+                if (hash != 0) {
+                    int i = slot(hash, mask);
+                    while (hashes[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    hashes[i] = hash;
+                }
+            }
+        }
+
+        private static int slot(int hash, int mask) {
+            // Spread the high bits of the hash into the index
+            int h = hash * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+
+    /**
+     * Signals input that is not scanned, eg: invalid or non-standard JSON.
+     * Thrown without a stack trace, as it is part of the normal flow.
+     */
+    private static final class Unsupported extends RuntimeException {
+        static final Unsupported INSTANCE = new Unsupported();
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.algorithms.Algorithm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The key of a cached JWT signer or verifier: an algorithm, a secret, and the issuer and audience policy
+ * of a verifier. Keys are compared by value; the secret can be wiped when the key is evicted.
+ * @see JwtSigner
+ * @see JwtVerifier
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class JwtKey {
+    private final String algorithm;
+    private final byte[] secret;
+    private final String issuer;
+    private final String audience;
+    private final int hash;
+
+    private JwtKey(String algorithm, byte[] secret, String issuer, String audience) {
+        this.algorithm = algorithm;
+        this.secret = secret;
+        this.issuer = issuer;
+        this.audience = audience;
+        this.hash = Objects.hash(algorithm, issuer, audience) * 31 + Arrays.hashCode(secret);
+    }
+
+    /**
+     * @param algo The algorithm: HS256 (or HMAC256), HS384, HS512 or NONE
+     * @param secretKey The secret, encoded as UTF-8 (ignored for NONE)
+     * @param issuer The required issuer of a verifier, or null
+     * @param audience The required audience of a verifier, or null
+     * @throws IllegalArgumentException if the algorithm is not valid, or needs a secret and the secret is null
+     */
+    static JwtKey of(String algo, String secretKey, String issuer, String audience) {
+        String algorithm = algorithm(algo);
+        if ("none".equals(algorithm)) {
+            return new JwtKey(algorithm, new byte[0], issuer, audience);
+        }
+        if (secretKey == null) {
+            throw new IllegalArgumentException("Invalid secret key: null");
+        }
+        return new JwtKey(algorithm, secretKey.getBytes(StandardCharsets.UTF_8), issuer, audience);
+    }
+
+    /**
+     * @return The JWA name of an algorithm: HS256, HS384, HS512 or none
+     * @throws IllegalArgumentException if the algorithm is null or unknown: NONE is never a default
+     */
+    static String algorithm(String algo) {
+        if (algo == null) {
+            throw new IllegalArgumentException("Invalid algorithm: null");
+        }
+
+        switch (algo.toUpperCase()) {
+            case "HS256":
+            case "HMAC256":
+                return "HS256";
+            case "HS384":
+            case "HMAC384":
+                return "HS384";
+            case "HS512":
+            case "HMAC512":
+                return "HS512";
+            case "NONE":
+                return "none";
+            default:
+                throw new IllegalArgumentException("Invalid algorithm: " + algo);
+        }
+    }
+
+    /**
+     * @return A new algorithm for this key
+     */
+    Algorithm newAlgorithm() {
+        switch (algorithm) {
+            case "HS256":
+                return Algorithm.HMAC256(secret);
+            case "HS384":
+                return Algorithm.HMAC384(secret);
+            case "HS512":
+                return Algorithm.HMAC512(secret);
+            default:
+                return Algorithm.none();
+        }
+    }
+
+    String getAlgorithm() {
+        return algorithm;
+    }
+
+    byte[] getSecret() {
+        return secret;
+    }
+
+    String getIssuer() {
+        return issuer;
+    }
+
+    String getAudience() {
+        return audience;
+    }
+
+    void wipe() {
+        Arrays.fill(secret, (byte) 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof JwtKey)) {
+            return false;
+        }
+        JwtKey other = (JwtKey) o;
+        return hash == other.hash && algorithm.equals(other.algorithm) && Arrays.equals(secret, other.secret)
+                && Objects.equals(issuer, other.issuer) && Objects.equals(audience, other.audience);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,127 @@
+package in.eko.exprutils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * The options of the `JWT` operator, read once from a JSON Object:
+ * `{"claim": {...}, "issuer": "...", "audience": "...", "subject": "...", "jwtid": "...", "expiresInSeconds": 300}`.
+ * Literal options are compiled into an instance when the expression is compiled, so they are not parsed again
+ * on every evaluation; options from the context (a JSONObject or Map) are read without serializing them.
+ * Instances are immutable.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class JwtOptions {
+    private final JSONObject json;
+    private final JSONObject claim;
+    private final String issuer;
+    private final String audience;
+    private final String subject;
+    private final String jwtid;
+    private final long expiresInSeconds;
+
+    private JwtOptions(JSONObject json) {
+        this.json = json;
+        this.claim = claim(json.opt("claim"));
+        this.issuer = json.optString("issuer", "");
+        this.audience = json.optString("audience", "");
+        this.subject = json.optString("subject", "");
+        this.jwtid = json.optString("jwtid", "");
+        this.expiresInSeconds = expiresInSeconds(json.opt("expiresInSeconds"));
+    }
+
+    /**
+     * Read the options of the `JWT` operator.
+     * @param options The options: a JSON Object (or its serialized form), a Map, or compiled options
+     * @return The options
+     * @throws IllegalArgumentException if the options, the claim or the expiry are not valid
+     */
+    static JwtOptions of(Object options) {
+        if (options instanceof JwtOptions) {
+            return (JwtOptions) options;
+        } else if (options instanceof JSONObject) {
+            return new JwtOptions((JSONObject) options);
+        } else if (options instanceof Map) {
+            return new JwtOptions(new JSONObject((Map<?, ?>) options));
+        } else if (options == null) {
+            throw new IllegalArgumentException("Invalid JWT options: null");
+        }
+
+        try {
+            return new JwtOptions(new JSONObject(options.toString()));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid JWT options: not a valid JSON Object");
+        }
+    }
+
+    private static JSONObject claim(Object claim) {
+        if (claim == null || "".equals(claim)) {
+            return null;
+        } else if (claim instanceof JSONObject) {
+            return (JSONObject) claim;
+        } else if (claim instanceof Map) {
+            return new JSONObject((Map<?, ?>) claim);
+        }
+
+        try {
+            return new JSONObject(claim.toString());
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid JWT claim: not a valid JSON Object");
+        }
+    }
+
+    private static long expiresInSeconds(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid expiresInSeconds: " + value);
+        }
+    }
+
+    /**
+     * @return The additional claims, or null if there are none
+     */
+    JSONObject getClaim() {
+        return claim;
+    }
+
+    String getIssuer() {
+        return issuer;
+    }
+
+    String getAudience() {
+        return audience;
+    }
+
+    String getSubject() {
+        return subject;
+    }
+
+    String getJwtid() {
+        return jwtid;
+    }
+
+    long getExpiresInSeconds() {
+        return expiresInSeconds;
+    }
+
+    /**
+     * @return The options, as they were before compiling them
+     */
+    JSONObject toJson() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return json.toString();
+    }
+}
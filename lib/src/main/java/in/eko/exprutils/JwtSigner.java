@@ -0,0 +1,86 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import java.time.Duration;
+
+/**
+ * Signs JWTs with an algorithm and a secret. The algorithm of each (algorithm, secret) pair is built once,
+ * and reused by all threads from a registry.
+ * <pre>
+ * String token = JwtSigner.of("HS256", secretKey).sign(com.auth0.jwt.JWT.create().withIssuer("eko"));
+ * </pre>
+ * The registry holds at most {@link #MAXIMUM_SIGNERS} signers, and a signer that is not used for
+ * {@link #EXPIRE_AFTER_ACCESS} is evicted. When a signer is evicted, the copy of the secret held by the
+ * registry is wiped, and its algorithm is released.
+ * Instances are immutable and thread-safe.
+ * @see JwtVerifier
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class JwtSigner {
+    static final int MAXIMUM_SIGNERS = 256;
+    static final Duration EXPIRE_AFTER_ACCESS = Duration.ofMinutes(10);
+
+    private static final Cache<JwtKey, JwtSigner> SIGNERS = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIGNERS)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS)
+            .removalListener((RemovalNotification<JwtKey, JwtSigner> notification) -> notification.getKey().wipe())
+            .build();
+
+    private final Algorithm algorithm;
+
+    private JwtSigner(JwtKey key) {
+        this.algorithm = key.newAlgorithm();
+    }
+
+    /**
+     * Get the signer for an algorithm and a secret, building it if it is not in the registry yet.
+     * @param algo The algorithm: HS256 (or HMAC256), HS384, HS512 or NONE
+     * @param secretKey The secret (ignored for NONE)
+     * @return The signer
+     * @throws IllegalArgumentException if the algorithm is not valid, or needs a secret and the secret is null
+     */
+    public static JwtSigner of(String algo, String secretKey) {
+        return SIGNERS.asMap().computeIfAbsent(JwtKey.of(algo, secretKey, null, null), JwtSigner::new);
+    }
+
+    /**
+     * Evict all the signers from the registry, wiping the copies of the secrets it holds, eg: after rotating keys.
+     */
+    public static void invalidateAll() {
+        SIGNERS.invalidateAll();
+        SIGNERS.cleanUp();
+    }
+
+    /**
+     * @return The number of signers in the registry
+     */
+    static long size() {
+        return SIGNERS.size();
+    }
+
+    /**
+     * Sign a JWT.
+     * @param jwt The header and claims of the JWT
+     * @return The token
+     */
+    public String sign(JWTCreator.Builder jwt) {
+        return jwt.sign(algorithm);
+    }
+
+    /**
+     * @return The signing algorithm
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public String toString() {
+        return "JwtSigner{" + algorithm.getName() + "}";
+    }
+}
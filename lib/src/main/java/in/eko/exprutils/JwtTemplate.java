@@ -0,0 +1,468 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.JWTCreator;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Mints JWTs that differ only in a few fields, eg: `iat`, `exp`, `jti` and a transaction id.
+ * The header and the constant claims are serialized once, when the template is built; each token only splices
+ * its own fields into them, encodes the payload, and signs it with a pooled HMAC instance.
+ * <pre>
+ * JwtTemplate template = JwtTemplate.builder()
+ *         .algorithm("HS256").secretKey(secretKey)
+ *         .issuer("eko").claims(new JSONObject().put("product", "dmt"))
+ *         .variableClaims("txn_id")
+ *         .jwtId(true)
+ *         .expiresInSeconds(300)
+ *         .build();
+ * String token = template.generate(UUID.randomUUID().toString(), "TX123");
+ * </pre>
+ * The tokens are byte-identical to the ones of
+ * {@link JWT#generate(String, String, JSONObject, String, String, String, String, long)} with the same claims:
+ * the template is cut from a probe token generated that way. Numeric claims are written as doubles (eg: 1234.0),
+ * and any other value as a string.
+ * Instances are immutable and thread-safe.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class JwtTemplate {
+    // The per-token fields of the payload (a variable claim is a field >= 0: its index)
+    private static final int ISSUED_AT = -1;
+    private static final int EXPIRES_AT = -2;
+    private static final int JWT_ID = -3;
+
+    // The values of the fields in the probe token, in seconds
+    private static final long PROBE_ISSUED_AT = 1000000007L;
+    private static final long PROBE_EXPIRES_AT = 3000000019L;
+
+    private static final byte[] BASE64_URL_DIGITS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    // The payload and token of the current thread
+    private static final ThreadLocal<ByteSink[]> SINKS = ThreadLocal.withInitial(
+            () -> new ByteSink[]{new ByteSink(), new ByteSink()});
+
+    // The HMAC algorithm, or null for NONE
+    private final String macAlgorithm;
+    private final byte[] secret;
+    private final long expiresInSeconds;
+    private final boolean jwtId;
+    private final String[] claimNames;
+    // The encoded header, the dot, and the encoded start of the payload (a multiple of 3 bytes of the first literal)
+    private final byte[] prefix;
+    // The constant parts of the payload JSON, around the fields
+    private final byte[][] literals;
+    private final int[] fields;
+    private final LongSupplier clock;
+
+    private JwtTemplate(Builder builder) {
+        JwtKey key = JwtKey.of(builder.algo, builder.secretKey, null, null);
+        String algorithm = key.getAlgorithm();
+        this.macAlgorithm = "none".equals(algorithm) ? null : "HmacSHA" + algorithm.substring(2);
+        this.secret = key.getSecret();
+        this.expiresInSeconds = builder.expiresInSeconds;
+        this.jwtId = builder.jwtId;
+        this.claimNames = builder.variableClaims.toArray(new String[0]);
+        this.clock = builder.clock;
+
+        // Generate a probe token, with a unique marker in each field
+        String marker = "jwt-template-" + UUID.randomUUID();
+        JWTCreator.Builder creator = JWT.creator(builder.claims, builder.issuer, builder.audience, builder.subject,
+                jwtId ? marker + "-jti" : null, new Date(PROBE_ISSUED_AT * 1000),
+                expiresInSeconds > 0 ? new Date(PROBE_EXPIRES_AT * 1000) : null);
+        for (int i = 0; i < claimNames.length; i++) {
+            creator.withClaim(claimNames[i], marker + "-" + i);
+        }
+        String[] probe = creator.sign(key.newAlgorithm()).split("\\.", -1);
+        String payload = new String(Base64.getUrlDecoder().decode(probe[1]), StandardCharsets.UTF_8);
+
+        // Find the fields in the payload
+        List<int[]> found = new ArrayList<>();
+        found.add(find(payload, Long.toString(PROBE_ISSUED_AT), ISSUED_AT, true));
+        if (expiresInSeconds > 0) {
+            found.add(find(payload, Long.toString(PROBE_EXPIRES_AT), EXPIRES_AT, true));
+        }
+        if (jwtId) {
+            found.add(find(payload, JSONObject.quote(marker + "-jti"), JWT_ID, false));
+        }
+        for (int i = 0; i < claimNames.length; i++) {
+            found.add(find(payload, JSONObject.quote(marker + "-" + i), i, false));
+        }
+        found.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        // Cut the payload into the literals around the fields
+        this.fields = new int[found.size()];
+        this.literals = new byte[fields.length + 1][];
+        int start = 0;
+        for (int i = 0; i < fields.length; i++) {
+            int[] field = found.get(i);
+            literals[i] = payload.substring(start, field[0]).getBytes(StandardCharsets.UTF_8);
+            fields[i] = field[2];
+            start = field[0] + field[1];
+        }
+        literals[fields.length] = payload.substring(start).getBytes(StandardCharsets.UTF_8);
+
+        // Encode the header, and as much of the first literal as is a whole number of Base64 blocks
+        ByteSink sink = new ByteSink();
+        sink.write(probe[0].getBytes(StandardCharsets.US_ASCII));
+        sink.write('.');
+        int whole = literals[0].length - literals[0].length % 3;
+        sink.writeBase64Url(literals[0], 0, whole);
+        this.prefix = Arrays.copyOf(sink.bytes, sink.length);
+        literals[0] = Arrays.copyOfRange(literals[0], whole, literals[0].length);
+    }
+
+    /**
+     * Find the only occurrence of a field in the probe payload.
+     * @return The position, length and kind of the field
+     */
+    private static int[] find(String payload, String value, int field, boolean number) {
+        int position = -1;
+        for (int i = payload.indexOf(value); i >= 0; i = payload.indexOf(value, i + 1)) {
+            int end = i + value.length();
+            if (number && (i == 0 || payload.charAt(i - 1) != ':' || end == payload.length()
+                    || (payload.charAt(end) != ',' && payload.charAt(end) != '}'))) {
+                continue;
+            }
+            if (position >= 0) {
+                throw new IllegalArgumentException("Invalid JWT template: ambiguous field " + field);
+            }
+            position = i;
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Invalid JWT template: field " + field + " not found");
+        }
+        return new int[]{position, value.length(), field};
+    }
+
+    /**
+     * Create a new builder to configure a JWT template.
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Generate a token, issued now.
+     * @param jwtid The JWT-ID of the token, if the template has one per token (else null)
+     * @param claims The values of the variable claims, in the order of {@link Builder#variableClaims(String...)}
+     * @return The token
+     * @throws IllegalArgumentException if the JWT-ID is missing or unexpected, or the claims do not match the
+     *         variable claims
+     */
+    public String generate(String jwtid, Object... claims) {
+        if (jwtId != (jwtid != null && !jwtid.isEmpty())) {
+            throw new IllegalArgumentException("Invalid JWT-ID: " + (jwtId ? "missing" : "not in the template"));
+        }
+        if (claims.length != claimNames.length) {
+            throw new IllegalArgumentException("Invalid claims: expected " + claimNames.length + ", got " + claims.length);
+        }
+
+        long now = clock.getAsLong();
+        ByteSink[] sinks = SINKS.get();
+
+        ByteSink payload = sinks[0];
+        payload.length = 0;
+        payload.write(literals[0]);
+        for (int i = 0; i < fields.length; i++) {
+            int field = fields[i];
+            if (field == ISSUED_AT) {
+                payload.writeAscii(Long.toString(now / 1000));
+            } else if (field == EXPIRES_AT) {
+                payload.writeAscii(Long.toString((now + expiresInSeconds * 1000) / 1000));
+            } else if (field == JWT_ID) {
+                payload.writeQuoted(jwtid);
+            } else {
+                Object value = claims[field];
+                if (value == null) {
+                    throw new IllegalArgumentException("Invalid claim " + claimNames[field] + ": null");
+                } else if (value instanceof Number) {
+                    payload.writeAscii(JWT.toDouble((Number) value).toString());
+                } else {
+                    payload.writeQuoted(value.toString());
+                }
+            }
+            payload.write(literals[i + 1]);
+        }
+
+        ByteSink token = sinks[1];
+        token.length = 0;
+        token.write(prefix);
+        token.writeBase64Url(payload.bytes, 0, payload.length);
+        byte[] signature = macAlgorithm != null
+                ? MacCache.hmac(macAlgorithm, secret, token.bytes, 0, token.length)
+                : new byte[0];
+        token.write('.');
+        token.writeBase64Url(signature, 0, signature.length);
+        return new String(token.bytes, 0, token.length, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return "JwtTemplate{" + (macAlgorithm != null ? macAlgorithm : "none") + ", claims=" + Arrays.toString(claimNames) + "}";
+    }
+
+
+    /**
+     * A growable byte array, reused by a thread for every token.
+     */
+    private static final class ByteSink {
+        byte[] bytes = new byte[512];
+        int length;
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        void writeAscii(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                bytes[length++] = (byte) s.charAt(i);
+            }
+        }
+
+        /**
+         * Write a JSON string in UTF-8, escaped as the JWT library (Jackson) escapes it.
+         */
+        void writeQuoted(String s) {
+            ensure(s.length() * 3 + 2);
+            bytes[length++] = '"';
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    bytes[length++] = '\\';
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x20) {
+                    writeControl(c);
+                } else if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xc0 | c >> 6);
+                    bytes[length++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    bytes[length++] = (byte) (0xf0 | codePoint >> 18);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    bytes[length++] = (byte) (0x80 | codePoint & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    // A lone surrogate, replaced as String.getBytes() does
+                    bytes[length++] = '?';
+                } else {
+                    bytes[length++] = (byte) (0xe0 | c >> 12);
+                    bytes[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    bytes[length++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+            bytes[length++] = '"';
+        }
+
+        private void writeControl(char c) {
+            ensure(6);
+            bytes[length++] = '\\';
+            switch (c) {
+                case '\b':
+                    bytes[length++] = 'b';
+                    break;
+                case '\t':
+                    bytes[length++] = 't';
+                    break;
+                case '\n':
+                    bytes[length++] = 'n';
+                    break;
+                case '\f':
+                    bytes[length++] = 'f';
+                    break;
+                case '\r':
+                    bytes[length++] = 'r';
+                    break;
+                default:
+                    bytes[length++] = 'u';
+                    bytes[length++] = '0';
+                    bytes[length++] = '0';
+                    bytes[length++] = HEX_DIGITS[c >> 4];
+                    bytes[length++] = HEX_DIGITS[c & 0x0f];
+            }
+        }
+
+        /**
+         * Write bytes in Base64URL, without padding.
+         */
+        void writeBase64Url(byte[] src, int offset, int count) {
+            ensure((count + 2) / 3 * 4);
+            int end = offset + count;
+            int i = offset;
+            for (int whole = end - count % 3; i < whole; i += 3) {
+                int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+                bytes[length++] = BASE64_URL_DIGITS[bits >>> 18];
+                bytes[length++] = BASE64_URL_DIGITS[bits >>> 12 & 0x3f];
+                bytes[length++] = BASE64_URL_DIGITS[bits >>> 6 & 0x3f];
+                bytes[length++] = BASE64_URL_DIGITS[bits & 0x3f];
+            }
+
+            int remaining = end - i;
+            if (remaining > 0) {
+                int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+                bytes[length++] = BASE64_URL_DIGITS[bits >>> 18];
+                bytes[length++] = BASE64_URL_DIGITS[bits >>> 12 & 0x3f];
+                if (remaining == 2) {
+                    bytes[length++] = BASE64_URL_DIGITS[bits >>> 6 & 0x3f];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Builder for {@link JwtTemplate}.
+     */
+    public static final class Builder {
+        private String algo;
+        private String secretKey;
+        private JSONObject claims;
+        private String issuer;
+        private String audience;
+        private String subject;
+        private long expiresInSeconds;
+        private boolean jwtId;
+        private final List<String> variableClaims = new ArrayList<>();
+        private LongSupplier clock = System::currentTimeMillis;
+
+        private Builder() {
+        }
+
+        /**
+         * @param algo The signing algorithm: HS256 (or HMAC256), HS384, HS512 or NONE
+         * @return This builder
+         */
+        public Builder algorithm(String algo) {
+            this.algo = algo;
+            return this;
+        }
+
+        /**
+         * @param secretKey The secret that signs the tokens (ignored for NONE)
+         * @return This builder
+         */
+        public Builder secretKey(String secretKey) {
+            this.secretKey = secretKey;
+            return this;
+        }
+
+        /**
+         * @param claims The constant claims of all the tokens
+         * @return This builder
+         */
+        public Builder claims(JSONObject claims) {
+            this.claims = claims;
+            return this;
+        }
+
+        /**
+         * @param issuer The token issuer
+         * @return This builder
+         */
+        public Builder issuer(String issuer) {
+            this.issuer = issuer;
+            return this;
+        }
+
+        /**
+         * @param audience The intended audience of the tokens
+         * @return This builder
+         */
+        public Builder audience(String audience) {
+            this.audience = audience;
+            return this;
+        }
+
+        /**
+         * @param subject The subject of the tokens
+         * @return This builder
+         */
+        public Builder subject(String subject) {
+            this.subject = subject;
+            return this;
+        }
+
+        /**
+         * @param expiresInSeconds Number of seconds after which each token expires, or 0 for tokens without expiry
+         * @return This builder
+         */
+        public Builder expiresInSeconds(long expiresInSeconds) {
+            this.expiresInSeconds = expiresInSeconds;
+            return this;
+        }
+
+        /**
+         * @param jwtId True if each token has its own JWT-ID, given to {@link JwtTemplate#generate(String, Object...)}
+         * @return This builder
+         */
+        public Builder jwtId(boolean jwtId) {
+            this.jwtId = jwtId;
+            return this;
+        }
+
+        /**
+         * Add claims whose values are given to each token, in this order.
+         * @param names The names of the claims
+         * @return This builder
+         */
+        public Builder variableClaims(String... names) {
+            for (String name : names) {
+                if (name == null || name.isEmpty() || variableClaims.contains(name)) {
+                    throw new IllegalArgumentException("Invalid variable claim: " + name);
+                }
+                variableClaims.add(name);
+            }
+            return this;
+        }
+
+        /**
+         * @param clock The current time, in milliseconds
+         * @return This builder
+         */
+        Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return The new JWT template
+         * @throws IllegalArgumentException if the algorithm is not valid, or needs a secret and the secret is null, or a variable claim is
+         *         also a constant or registered claim
+         */
+        public JwtTemplate build() {
+            for (String name : variableClaims) {
+                if ((claims != null && claims.has(name))
+                        || Arrays.asList("iss", "aud", "sub", "jti", "exp", "iat").contains(name)) {
+                    throw new IllegalArgumentException("Invalid variable claim: " + name);
+                }
+            }
+            return new JwtTemplate(this);
+        }
+    }
+}
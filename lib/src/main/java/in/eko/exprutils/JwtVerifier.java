@@ -0,0 +1,118 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.Verification;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Verifies JWTs with an algorithm, a secret, and an optional issuer and audience policy. The verifier of each
+ * (algorithm, secret, issuer, audience) is built once, and reused by all threads from a registry.
+ * <pre>
+ * DecodedJWT jwt = JwtVerifier.of("HS256", secretKey, "eko", null).verify(token);
+ * </pre>
+ * The registry holds at most {@link #MAXIMUM_VERIFIERS} verifiers, and a verifier that is not used for
+ * {@link #EXPIRE_AFTER_ACCESS} is evicted. When a verifier is evicted, the copy of the secret held by the
+ * registry is wiped, and its algorithm is released.
+ * Instances are immutable and thread-safe.
+ * @see JwtSigner
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class JwtVerifier {
+    static final int MAXIMUM_VERIFIERS = 256;
+    static final Duration EXPIRE_AFTER_ACCESS = Duration.ofMinutes(10);
+
+    private static final Cache<JwtKey, JwtVerifier> VERIFIERS = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_VERIFIERS)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS)
+            .removalListener((RemovalNotification<JwtKey, JwtVerifier> notification) -> notification.getKey().wipe())
+            .build();
+
+    // The source of the ids of the verifiers
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final long id;
+    private final String algorithm;
+    private final JWTVerifier verifier;
+
+    private JwtVerifier(JwtKey key) {
+        this.id = IDS.incrementAndGet();
+        this.algorithm = key.getAlgorithm();
+        Verification verification = com.auth0.jwt.JWT.require(key.newAlgorithm());
+        if (key.getIssuer() != null && !key.getIssuer().isEmpty()) {
+            verification = verification.withIssuer(key.getIssuer());
+        }
+        if (key.getAudience() != null && !key.getAudience().isEmpty()) {
+            verification = verification.withAudience(key.getAudience());
+        }
+        this.verifier = verification.build();
+    }
+
+    /**
+     * Get the verifier for an algorithm and a secret, without an issuer or audience policy.
+     * @param algo The algorithm: HS256 (or HMAC256), HS384, HS512 or NONE
+     * @param secretKey The secret that was used to sign the tokens (ignored for NONE)
+     * @return The verifier
+     * @throws IllegalArgumentException if the algorithm is not valid, or needs a secret and the secret is null
+     */
+    public static JwtVerifier of(String algo, String secretKey) {
+        return of(algo, secretKey, null, null);
+    }
+
+    /**
+     * Get the verifier for an algorithm, a secret, and the required issuer and audience of the tokens,
+     * building it if it is not in the registry yet.
+     * @param algo The algorithm: HS256 (or HMAC256), HS384, HS512 or NONE
+     * @param secretKey The secret that was used to sign the tokens (ignored for NONE)
+     * @param issuer The required issuer, or null (or empty) for any issuer
+     * @param audience The required audience, or null (or empty) for any audience
+     * @return The verifier
+     * @throws IllegalArgumentException if the algorithm is not valid, or needs a secret and the secret is null
+     */
+    public static JwtVerifier of(String algo, String secretKey, String issuer, String audience) {
+        return VERIFIERS.asMap().computeIfAbsent(JwtKey.of(algo, secretKey, issuer, audience), JwtVerifier::new);
+    }
+
+    /**
+     * Evict all the verifiers from the registry, wiping the copies of the secrets it holds, eg: after rotating keys.
+     */
+    public static void invalidateAll() {
+        VERIFIERS.invalidateAll();
+        VERIFIERS.cleanUp();
+    }
+
+    /**
+     * @return The number of verifiers in the registry
+     */
+    static long size() {
+        return VERIFIERS.size();
+    }
+
+    /**
+     * Verify a token: its signature, expiry, and the issuer and audience policy.
+     * @param token The JWT
+     * @return The decoded JWT
+     * @throws JWTVerificationException if the token cannot be verified
+     */
+    public DecodedJWT verify(String token) throws JWTVerificationException {
+        return verifier.verify(token);
+    }
+
+    /**
+     * @return The id of this verifier, unique within the JVM (a verifier that is evicted and built again has a new id)
+     */
+    long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "JwtVerifier{" + algorithm + "}";
+    }
+}
@@ -0,0 +1,167 @@
+package in.eko.exprutils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A bounded cache of initialized {@link Mac} instances, by algorithm and key, so the key schedule of a
+ * key is computed once rather than on every HMAC. Each key has a pool of instances: a thread borrows one
+ * for a single HMAC, and returns it.
+ * <p>
+ * The cache holds at most {@link #MAXIMUM_KEYS} keys, and a key that is not used for
+ * {@link #EXPIRE_AFTER_ACCESS} is evicted. When a key is evicted, the copy of the secret held by the cache
+ * is wiped, and its Mac instances are released.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class MacCache {
+    static final int MAXIMUM_KEYS = 1024;
+    static final Duration EXPIRE_AFTER_ACCESS = Duration.ofMinutes(10);
+
+    private static final Cache<MacKey, Queue<Mac>> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_KEYS)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS)
+            .removalListener((RemovalNotification<MacKey, Queue<Mac>> notification) -> notification.getKey().wipe())
+            .build();
+
+    // Suppress default constructor for noninstantiability
+    private MacCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Compute the HMAC of bytes.
+     * @param algorithm The Mac algorithm, eg: `HmacSHA256`
+     * @param key The secret key (it is copied, never modified)
+     * @param input The bytes
+     * @return The HMAC
+     * @throws IllegalArgumentException if the key is null or empty
+     * @throws IllegalArgumentException if the algorithm is invalid
+     */
+    static byte[] hmac(String algorithm, byte[] key, byte[] input) {
+        return hmac(algorithm, key, input, 0, input.length);
+    }
+
+    /**
+     * Compute the HMAC of a range of bytes.
+     * @see #hmac(String, byte[], byte[])
+     */
+    static byte[] hmac(String algorithm, byte[] key, byte[] input, int offset, int length) {
+        Queue<Mac> pool = pool(algorithm, key);
+        Mac mac = borrow(pool, algorithm, key);
+        try {
+            mac.update(input, offset, length);
+            return mac.doFinal();
+        } finally {
+            pool.offer(mac);
+        }
+    }
+
+    /**
+     * Compute the HMAC of the remaining bytes of a buffer, without changing its position.
+     * @see #hmac(String, byte[], byte[])
+     */
+    static byte[] hmac(String algorithm, byte[] key, ByteBuffer input) {
+        Queue<Mac> pool = pool(algorithm, key);
+        Mac mac = borrow(pool, algorithm, key);
+        try {
+            mac.update(input.duplicate());
+            return mac.doFinal();
+        } finally {
+            pool.offer(mac);
+        }
+    }
+
+    /**
+     * Evict all the keys, wiping their secrets.
+     */
+    static void invalidateAll() {
+        CACHE.invalidateAll();
+        CACHE.cleanUp();
+    }
+
+    /**
+     * @return The number of cached keys
+     */
+    static long size() {
+        return CACHE.size();
+    }
+
+    private static Queue<Mac> pool(String algorithm, byte[] key) {
+        if (key == null || key.length == 0) {
+            throw new IllegalArgumentException("Invalid key: " + (key == null ? "null" : "empty"));
+        }
+
+        // Look up with the caller's key; only a new entry keeps a copy of it
+        Queue<Mac> pool = CACHE.getIfPresent(new MacKey(algorithm, key));
+        if (pool == null) {
+            pool = new ConcurrentLinkedQueue<>();
+            Queue<Mac> existing = CACHE.asMap().putIfAbsent(new MacKey(algorithm, key.clone()), pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    private static Mac borrow(Queue<Mac> pool, String algorithm, byte[] key) {
+        Mac mac = pool.poll();
+        if (mac != null) {
+            return mac;
+        }
+
+        try {
+            mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(key, algorithm));
+            return mac;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Invalid HMAC type: " + algorithm);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Invalid key for " + algorithm, e);
+        }
+    }
+
+
+    /**
+     * The cache key: an algorithm and a secret key, compared by value.
+     */
+    private static final class MacKey {
+        private final String algorithm;
+        private final byte[] key;
+        private final int hash;
+
+        MacKey(String algorithm, byte[] key) {
+            this.algorithm = algorithm;
+            this.key = key;
+            this.hash = 31 * algorithm.hashCode() + Arrays.hashCode(key);
+        }
+
+        void wipe() {
+            Arrays.fill(key, (byte) 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MacKey)) {
+                return false;
+            }
+            MacKey other = (MacKey) o;
+            return hash == other.hash && algorithm.equals(other.algorithm) && Arrays.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.JsonBackend;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluates expressions against every record of a newline-delimited JSON (NDJSON) stream, eg: a multi-GB
+ * reconciliation file. Each line is a JSON Object, which is bound as the context of the expressions:
+ * its top-level keys are the variables (`${amount}`), and the whole record is the `${record}` variable
+ * (eg: ['GET', '${record}', 'payment.status']).
+ * <p>
+ * One result line is written per record: the JSON value of the expression, or a JSON Object of the values
+ * of named expressions. Records are read, evaluated and written one at a time, so memory stays flat
+ * whatever the size of the input. Output is buffered up to a bounded size; when the output is slower
+ * than the input, writes block and no more records are read until they complete (backpressure).
+ * Local files are read through memory-mapped regions instead of a stream.
+ * <p>
+ * By default, a line that is not a valid JSON Object stops the evaluation with an IllegalArgumentException;
+ * the results of the records before it are written and flushed first. With
+ * {@link Builder#skipInvalidRecords(boolean)}, such lines are skipped instead, without a result line.
+ * Instances are thread-safe.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class NdjsonEvaluator {
+    private final String[] names;
+    private final CompiledExpression[] expressions;
+    private final String recordVariable;
+    private final int bufferSize;
+    private final int mapSize;
+    private final JsonBackend jsonBackend;
+    private final boolean skipInvalidRecords;
+
+    private NdjsonEvaluator(Builder builder) {
+        this.names = builder.names.toArray(new String[0]);
+        this.expressions = builder.expressions.toArray(new CompiledExpression[0]);
+        this.recordVariable = builder.recordVariable;
+        this.bufferSize = builder.bufferSize;
+        this.mapSize = builder.mapSize;
+        this.jsonBackend = builder.jsonBackend;
+        this.skipInvalidRecords = builder.skipInvalidRecords;
+    }
+
+    /**
+     * Create a new builder to configure an NDJSON evaluator.
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Evaluate the expressions for every record of a stream.
+     * The streams are not closed; the output is flushed, even if the evaluation fails.
+     * @param in The NDJSON input
+     * @param out The NDJSON output, one line per record
+     * @return The number of records
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if a line is not a valid JSON Object (unless invalid records are skipped)
+     */
+    public long evaluate(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = writer(out);
+
+        long records = 0;
+        long lineNumber = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (process(line, lineNumber, writer)) {
+                    records++;
+                }
+            }
+        } finally {
+            // Also the results of the records before a failure
+            writer.flush();
+        }
+        return records;
+    }
+
+    /**
+     * Evaluate the expressions for every record of a local file, reading it through memory-mapped regions.
+     * @param in The path of the NDJSON file
+     * @param out The NDJSON output, one line per record (not closed, but flushed, even if the evaluation fails)
+     * @return The number of records
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if a line is not a valid JSON Object (unless invalid records are skipped)
+     */
+    public long evaluate(Path in, OutputStream out) throws IOException {
+        Writer writer = writer(out);
+
+        long records = 0;
+        long lineNumber = 0;
+        try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            int regionSize = mapSize;
+            while (position < size) {
+                int length = (int) Math.min(regionSize, size - position);
+                boolean last = position + length == size;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                // Process the complete lines of the region
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (region.get(i) != '\n' && !(last && i == length - 1)) {
+                        continue;
+                    }
+
+                    int lineEnd = region.get(i) == '\n' ? i : length;
+                    region.limit(lineEnd);
+                    region.position(lineStart);
+
+                    lineNumber++;
+                    if (process(region, lineNumber, writer)) {
+                        records++;
+                    }
+                    region.limit(length);
+                    lineStart = i + 1;
+                }
+
+                if (last) {
+                    break;
+                } else if (lineStart == 0) {
+                    // A line longer than the region: map a larger one
+                    if (regionSize == Integer.MAX_VALUE) {
+                        throw new IOException("Record too long at line " + (lineNumber + 1));
+                    }
+                    regionSize = (int) Math.min(regionSize * 2L, Integer.MAX_VALUE);
+                } else {
+                    // The next region starts at the first incomplete line
+                    position += lineStart;
+                }
+            }
+        } finally {
+            // Also the results of the records before a failure
+            writer.flush();
+        }
+        return records;
+    }
+
+    private Writer writer(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize);
+    }
+
+    /**
+     * Evaluate the expressions for a line, and write the result line.
+     * @return False if the line is blank or skipped
+     */
+    private boolean process(String line, long lineNumber, Writer writer) throws IOException {
+        if (line.trim().isEmpty()) {
+            return false;
+        }
+
+        Object record;
+        try {
+            record = jsonBackend.parse(line);
+        } catch (JSONException e) {
+            record = null;
+        }
+        return process(record, lineNumber, writer);
+    }
+
+    /**
+     * Evaluate the expressions for a line of UTF-8 bytes, parsed without decoding them into a String
+     * (with a byte-oriented JSON backend).
+     * @return False if the line is blank or skipped
+     */
+    private boolean process(ByteBuffer line, long lineNumber, Writer writer) throws IOException {
+        boolean blank = true;
+        for (int i = line.position(); i < line.limit() && blank; i++) {
+            blank = (line.get(i) & 0xff) <= ' ';
+        }
+        if (blank) {
+            return false;
+        }
+
+        Object record;
+        try {
+            record = jsonBackend.parse(line);
+        } catch (JSONException e) {
+            record = null;
+        }
+        return process(record, lineNumber, writer);
+    }
+
+    private boolean process(Object parsed, long lineNumber, Writer writer) throws IOException {
+        if (!(parsed instanceof JSONObject)) {
+            if (skipInvalidRecords) {
+                return false;
+            }
+            throw new IllegalArgumentException("Invalid record at line " + lineNumber + ": not a valid JSON Object");
+        }
+
+        JSONObject record = (JSONObject) parsed;
+        RecordContext context = new RecordContext(record, recordVariable);
+        if (names.length == 1 && names[0] == null) {
+            writer.write(JSONObject.valueToString(expressions[0].evaluate(context).getResult()));
+        } else {
+            writer.write('{');
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(JSONObject.quote(names[i]));
+                writer.write(':');
+                writer.write(JSONObject.valueToString(expressions[i].evaluate(context).getResult()));
+            }
+            writer.write('}');
+        }
+        writer.write('\n');
+        return true;
+    }
+
+
+    /**
+     * A record as the context of an expression, without copying it into a map.
+     */
+    private static final class RecordContext extends AbstractMap<String, Object> {
+        private final JSONObject record;
+        private final String recordVariable;
+
+        RecordContext(JSONObject record, String recordVariable) {
+            this.record = record;
+            this.recordVariable = recordVariable;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (key.equals(recordVariable)) {
+                return record;
+            }
+            Object value = record.opt((String) key);
+            return value != JSONObject.NULL ? value : null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return record.toMap().entrySet();
+        }
+    }
+
+
+    /**
+     * Builder for {@link NdjsonEvaluator}.
+     */
+    public static final class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<CompiledExpression> expressions = new ArrayList<>();
+        private String recordVariable = "record";
+        private int bufferSize = 64 * 1024;
+        private int mapSize = 64 * 1024 * 1024;
+        private JsonBackend jsonBackend = JsonBackends.ORG_JSON;
+        private boolean skipInvalidRecords;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the only expression to evaluate; each result line is the value of the expression.
+         * @param expression The expression
+         * @return This builder
+         */
+        public Builder expression(CompiledExpression expression) {
+            return expression(null, expression);
+        }
+
+        /**
+         * Add a named expression to evaluate; each result line is a JSON Object of the values of the expressions.
+         * @param name The name of the expression in the result
+         * @param expression The expression
+         * @return This builder
+         */
+        public Builder expression(String name, CompiledExpression expression) {
+            if (expression == null) {
+                throw new IllegalArgumentException("Invalid expression: null");
+            }
+            names.add(name);
+            expressions.add(expression);
+            return this;
+        }
+
+        /**
+         * Set the name of the variable bound to the whole record ("record" by default).
+         * @param recordVariable The variable name
+         * @return This builder
+         */
+        public Builder recordVariable(String recordVariable) {
+            this.recordVariable = recordVariable;
+            return this;
+        }
+
+        /**
+         * Set the size of the output buffer (64 KB by default).
+         * @param bufferSize The buffer size, in characters
+         * @return This builder
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Set the size of the memory-mapped regions of local files (64 MB by default).
+         * Larger regions are mapped for records that do not fit.
+         * @param mapSize The region size, in bytes
+         * @return This builder
+         */
+        public Builder mapSize(int mapSize) {
+            if (mapSize <= 0) {
+                throw new IllegalArgumentException("Invalid map size: " + mapSize);
+            }
+            this.mapSize = mapSize;
+            return this;
+        }
+
+        /**
+         * Set the JSON backend that parses the records ({@link JsonBackends#ORG_JSON} by default).
+         * With {@link JsonBackends#BYTES}, the records of local files are parsed straight from the
+         * memory-mapped bytes.
+         * @param jsonBackend The JSON backend
+         * @return This builder
+         */
+        public Builder jsonBackend(JsonBackend jsonBackend) {
+            if (jsonBackend == null) {
+                throw new IllegalArgumentException("Invalid JSON backend: null");
+            }
+            this.jsonBackend = jsonBackend;
+            return this;
+        }
+
+        /**
+         * Set whether lines that are not valid JSON Objects are skipped, without a result line (false by default:
+         * the evaluation stops with an IllegalArgumentException). Skipped lines are not counted as records, and
+         * the result lines no longer match the input lines one to one.
+         * @param skipInvalidRecords True to skip invalid records
+         * @return This builder
+         */
+        public Builder skipInvalidRecords(boolean skipInvalidRecords) {
+            this.skipInvalidRecords = skipInvalidRecords;
+            return this;
+        }
+
+        /**
+         * @return The new NDJSON evaluator
+         * @throws IllegalArgumentException if there is no expression, or if the only unnamed expression is not alone
+         */
+        public NdjsonEvaluator build() {
+            if (expressions.isEmpty()) {
+                throw new IllegalArgumentException("Invalid NDJSON evaluator: no expression");
+            }
+            if (expressions.size() > 1 && names.contains(null)) {
+                throw new IllegalArgumentException("Invalid NDJSON evaluator: multiple expressions must be named");
+            }
+            return new NdjsonEvaluator(this);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.LazyOperatorFunction;
+import in.eko.exprutils.interfaces.OperatorFunction;
+import in.eko.exprutils.interfaces.VariadicOperatorFunction;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * The definition of an operator: its name, the number of operands it takes, whether it is pure,
+ * and the function that computes it. Operators are registered with an {@link ExpressionEngine}.
+ * The number of operands is checked when an expression is compiled, so an operator function is only
+ * ever called with the operands it declared (missing optional operands are null). The built-in operators
+ * ignore extra operands instead, as 1.x did.
+ * An operator is impure unless it is declared {@link #pure()}: only pure operators are evaluated ahead of time,
+ * when their operands are constant.
+ * Instances are immutable.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class Operator {
+    /**
+     * The maximum number of operands of a variadic operator (see {@link #getMaxArity()})
+     */
+    public static final int VARIADIC = Integer.MAX_VALUE;
+
+    // The maximum number of operands of an OperatorFunction
+    private static final int MAX_FIXED_ARITY = 3;
+
+    private final String name;
+    private final int minArity;
+    private final int maxArity;
+    private final boolean pure;
+    // True to ignore extra operands, rather than reject them (the built-in operators, like 1.x)
+    private final boolean lenient;
+    private final OperatorFunction function;
+    private final VariadicOperatorFunction variadicFunction;
+    private final LazyOperatorFunction lazyFunction;
+    // True for the built-in arithmetic operators, which are compiled into primitive arithmetic
+    private final boolean arithmetic;
+    // The position of the operand that is a JSON path into the first operand (a JSON document), or 0
+    private final int pathOperand;
+    // True to parse a serialized document before the call (else the operator reads the serialized form)
+    private final boolean parseDocument;
+    // True if the paths are the keys of an object of values at the path operand (eg: of SET_MANY)
+    private final boolean pathKeys;
+    // The position of the operand that holds the options of the operator, or 0
+    private final int optionsOperand;
+    // Compiles literal options once, when the expression is compiled
+    private final UnaryOperator<Object> optionsCompiler;
+
+    private Operator(String name, int minArity, int maxArity, boolean pure, boolean lenient, OperatorFunction function,
+                     VariadicOperatorFunction variadicFunction, LazyOperatorFunction lazyFunction, boolean arithmetic,
+                     int pathOperand, boolean parseDocument, boolean pathKeys, int optionsOperand,
+                     UnaryOperator<Object> optionsCompiler) {
+        if (name == null || name.isEmpty() || ExpressionCompiler.VAR.equals(name)) {
+            throw new IllegalArgumentException("Invalid operator name: " + name);
+        }
+        if (minArity < 0 || minArity > maxArity) {
+            throw new IllegalArgumentException("Invalid arity: " + minArity + ".." + maxArity);
+        }
+        this.name = name;
+        this.minArity = minArity;
+        this.maxArity = maxArity;
+        this.pure = pure;
+        this.lenient = lenient;
+        this.function = function;
+        this.variadicFunction = variadicFunction;
+        this.lazyFunction = lazyFunction;
+        this.arithmetic = arithmetic;
+        this.pathOperand = pathOperand;
+        this.parseDocument = parseDocument;
+        this.pathKeys = pathKeys;
+        this.optionsOperand = optionsOperand;
+        this.optionsCompiler = optionsCompiler;
+    }
+
+    /**
+     * Define an operator with a fixed number of operands.
+     * @param name The operator name, as written in expressions
+     * @param arity The number of operands, from 0 to 3
+     * @param function The operator function
+     * @return The operator
+     * @throws IllegalArgumentException if the name or arity is not valid
+     */
+    public static Operator of(String name, int arity, OperatorFunction function) {
+        return of(name, arity, arity, function);
+    }
+
+    /**
+     * Define an operator with optional trailing operands.
+     * @param name The operator name, as written in expressions
+     * @param minArity The minimum number of operands
+     * @param maxArity The maximum number of operands, up to 3
+     * @param function The operator function, called with null for the missing operands
+     * @return The operator
+     * @throws IllegalArgumentException if the name or arity is not valid
+     */
+    public static Operator of(String name, int minArity, int maxArity, OperatorFunction function) {
+        if (function == null) {
+            throw new IllegalArgumentException("Invalid function: null");
+        }
+        if (maxArity > MAX_FIXED_ARITY) {
+            throw new IllegalArgumentException("Invalid arity: an OperatorFunction takes at most 3 operands");
+        }
+        return new Operator(name, minArity, maxArity, false, false, function, null, null, false, 0, false, false, 0, null);
+    }
+
+    /**
+     * Define an operator that takes any number of operands.
+     * @param name The operator name, as written in expressions
+     * @param minArity The minimum number of operands
+     * @param function The operator function, called with all the operands
+     * @return The operator
+     * @throws IllegalArgumentException if the name or arity is not valid
+     */
+    public static Operator variadic(String name, int minArity, VariadicOperatorFunction function) {
+        if (function == null) {
+            throw new IllegalArgumentException("Invalid function: null");
+        }
+        return new Operator(name, minArity, VARIADIC, false, false, null, function, null, false, 0, false, false, 0, null);
+    }
+
+    /**
+     * Define an operator that evaluates its operands on demand, eg: a conditional that evaluates only
+     * the branch it takes.
+     * @param name The operator name, as written in expressions
+     * @param minArity The minimum number of operands
+     * @param maxArity The maximum number of operands, or {@link #VARIADIC}
+     * @param function The operator function
+     * @return The operator
+     * @throws IllegalArgumentException if the name or arity is not valid
+     */
+    public static Operator lazy(String name, int minArity, int maxArity, LazyOperatorFunction function) {
+        if (function == null) {
+            throw new IllegalArgumentException("Invalid function: null");
+        }
+        return new Operator(name, minArity, maxArity, false, false, null, null, function, false, 0, false, false, 0, null);
+    }
+
+    /**
+     * Define a built-in arithmetic operator (`+`, `-`, `*`, `/`).
+     * Like the other built-in factories below, the operator is pure.
+     */
+    static Operator arithmetic(String name, OperatorFunction function) {
+        return new Operator(name, 2, 2, true, false, function, null, null, true, 0, false, false, 0, null);
+    }
+
+    /**
+     * Define a built-in operator on a path within a JSON document (`GET`, `SET`): the first operand is the
+     * document, and a literal path is compiled into a {@link JsonPath} once, when the expression is compiled.
+     * If `parseDocument` is true, a serialized document is parsed once before the call; else it is passed
+     * as it is (eg: to be scanned lazily). A document bound as bytes is always parsed.
+     */
+    static Operator withPath(String name, int minArity, int maxArity, int pathOperand, boolean parseDocument,
+                             OperatorFunction function) {
+        return new Operator(name, minArity, maxArity, true, false, function, null, null, false, pathOperand, parseDocument, false, 0,
+                null);
+    }
+
+    /**
+     * Define a built-in operator that sets values at several paths within a JSON document (`SET_MANY`): the first
+     * operand is the document, and the keys of a literal object of values are compiled into {@link JsonPaths}
+     * once, when the expression is compiled. A serialized document is parsed once before the call.
+     */
+    static Operator withPathKeys(String name, int minArity, int maxArity, int pathOperand, OperatorFunction function) {
+        return new Operator(name, minArity, maxArity, true, false, function, null, null, false, pathOperand, true, true, 0, null);
+    }
+
+    /**
+     * Define a built-in operator with an operand of options (`JWT`): literal options are compiled once, when the
+     * expression is compiled, and the operator function gets the compiled options. Options that are not literal,
+     * or that fail to compile, are passed as they are.
+     */
+    static Operator withOptions(String name, int minArity, int maxArity, int optionsOperand,
+                                UnaryOperator<Object> optionsCompiler, OperatorFunction function) {
+        return new Operator(name, minArity, maxArity, true, false, function, null, null, false, 0, false, false, optionsOperand,
+                optionsCompiler);
+    }
+
+    /**
+     * Get a copy of this operator that is pure: it always returns the same value for the same operands, and has
+     * no side effects, so it is evaluated ahead of time (once, when the expression is compiled) if its operands
+     * are constant. Do not declare an operator pure if it depends on the current time, randomness, or other state.
+     * @return The pure operator
+     */
+    public Operator pure() {
+        return pure ? this : copy(true, lenient);
+    }
+
+    /**
+     * Get a copy of this operator that is impure: it may return a different value for the same operands
+     * (eg: it depends on the current time), so it is never evaluated ahead of time.
+     * Operators are impure unless they are declared {@link #pure()}.
+     * @return The impure operator
+     */
+    public Operator impure() {
+        return pure ? copy(false, lenient) : this;
+    }
+
+    /**
+     * Get a copy of this operator that ignores extra operands, like the built-in operators of 1.x.
+     */
+    Operator lenient() {
+        return lenient ? this : copy(pure, true);
+    }
+
+    private Operator copy(boolean pure, boolean lenient) {
+        return new Operator(name, minArity, maxArity, pure, lenient, function, variadicFunction, lazyFunction, arithmetic,
+                pathOperand, parseDocument, pathKeys, optionsOperand, optionsCompiler);
+    }
+
+    /**
+     * @return The operator name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The minimum number of operands
+     */
+    public int getMinArity() {
+        return minArity;
+    }
+
+    /**
+     * @return The maximum number of operands, or {@link #VARIADIC}
+     */
+    public int getMaxArity() {
+        return maxArity;
+    }
+
+    /**
+     * @return True if the operator takes any number of operands
+     */
+    public boolean isVariadic() {
+        return maxArity == VARIADIC;
+    }
+
+    /**
+     * @return True if the operator evaluates its operands on demand
+     */
+    public boolean isLazy() {
+        return lazyFunction != null;
+    }
+
+    /**
+     * @return True if the operator always returns the same value for the same operands
+     */
+    public boolean isPure() {
+        return pure;
+    }
+
+    /**
+     * @return True if extra operands are ignored, rather than rejected when an expression is compiled
+     */
+    boolean isLenient() {
+        return lenient;
+    }
+
+    OperatorFunction getFunction() {
+        return function;
+    }
+
+    VariadicOperatorFunction getVariadicFunction() {
+        return variadicFunction;
+    }
+
+    LazyOperatorFunction getLazyFunction() {
+        return lazyFunction;
+    }
+
+    boolean isArithmetic() {
+        return arithmetic;
+    }
+
+    int getPathOperand() {
+        return pathOperand;
+    }
+
+    boolean isParseDocument() {
+        return parseDocument;
+    }
+
+    boolean isPathKeys() {
+        return pathKeys;
+    }
+
+    int getOptionsOperand() {
+        return optionsOperand;
+    }
+
+    UnaryOperator<Object> getOptionsCompiler() {
+        return optionsCompiler;
+    }
+
+    @Override
+    public String toString() {
+        String arity = maxArity == VARIADIC ? minArity + "+" : minArity == maxArity ? "" + minArity : minArity + ".." + maxArity;
+        return "Operator{" + name + ", arity=" + arity + (pure ? "" : ", impure") + "}";
+    }
+}
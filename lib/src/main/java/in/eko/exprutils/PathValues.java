@@ -0,0 +1,104 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The values to set at several paths within a JSON document, by path: the operand of `SET_MANY`,
+ * eg: {'data.status': 'ok', 'data.items[0]': 1}.
+ * The keys of a literal object are compiled into {@link JsonPaths} once, when the expression is compiled,
+ * so that only its values are evaluated on every call.
+ * Instances are immutable.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class PathValues {
+    private final JsonPaths paths;
+    private final Object[] values;
+
+    /**
+     * @param paths The paths, named by the keys they were compiled from
+     * @param values The values, indexed like the paths; a null value is not set
+     */
+    PathValues(JsonPaths paths, Object[] values) {
+        this.paths = paths;
+        this.values = values;
+    }
+
+    /**
+     * Read the values of a JSON Object, by path. Keys that are not valid paths are ignored.
+     * @param obj The values, by path
+     * @return The values
+     */
+    static PathValues of(JSONObject obj) {
+        List<JsonPath> paths = new ArrayList<>(obj.length());
+        List<Object> values = new ArrayList<>(obj.length());
+        for (String key : obj.keySet()) {
+            try {
+                paths.add(JsonPath.compile(key));
+                values.add(obj.opt(key));
+            } catch (IllegalArgumentException e) {
+                // Not a valid path: ignore it
+            }
+        }
+        return new PathValues(JsonPaths.of(paths), values.toArray());
+    }
+
+    /**
+     * Set the values without modifying the root (copy-on-write).
+     * @param root The JSON Object (or Array)
+     * @return The copy of the root with the values set
+     * @see JsonPaths#putAllCopy(Object, Object[])
+     */
+    Object putAllCopy(Object root) {
+        for (Object value : values) {
+            if (value == null) {
+                // Leave out the paths without a value, rather than removing their keys
+                return of(toJson()).putAllCopy(root);
+            }
+        }
+        return paths.putAllCopy(root, values);
+    }
+
+    /**
+     * @return True if any of the values is an object or array, which would be shared with the documents
+     *         they are set in
+     */
+    boolean hasDocuments() {
+        for (Object value : values) {
+            if (value instanceof JSONObject || value instanceof JSONArray) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return A copy of these values, with their objects and arrays copied at every level
+     */
+    PathValues deepCopy() {
+        Object[] copies = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            copies[i] = JsonPath.deepCopyOf(values[i]);
+        }
+        return new PathValues(paths, copies);
+    }
+
+    /**
+     * @return The values as a JSON Object, by path, as they were before compiling them
+     */
+    JSONObject toJson() {
+        JSONObject obj = new JSONObject();
+        for (int i = 0; i < values.length; i++) {
+            obj.put(paths.name(i), values[i]);
+        }
+        return obj;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+}
@@ -0,0 +1,91 @@
+package in.eko.exprutils;
+
+/**
+ * The value of a variable slot that is bound to a primitive column (double[], long[] or int[]) rather than
+ * to a single value, eg: by {@link BatchEvaluator} for {@link BatchEvaluator.Columns}.
+ * The slot is bound once for a range of rows and moved from row to row, so numeric evaluation reads the
+ * column without boxing its values; the value is boxed only when an operator needs it as an object.
+ * Instances are used by a single thread.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class PrimitiveSlot {
+    private final double[] doubles;
+    private final long[] longs;
+    private final int[] ints;
+    private int row;
+
+    private PrimitiveSlot(double[] doubles, long[] longs, int[] ints) {
+        this.doubles = doubles;
+        this.longs = longs;
+        this.ints = ints;
+    }
+
+    /**
+     * Bind a slot to a column.
+     * @param column The column
+     * @return The slot, or null if the column is not a primitive array
+     */
+    static PrimitiveSlot of(Object column) {
+        if (column instanceof double[]) {
+            return new PrimitiveSlot((double[]) column, null, null);
+        } else if (column instanceof long[]) {
+            return new PrimitiveSlot(null, (long[]) column, null);
+        } else if (column instanceof int[]) {
+            return new PrimitiveSlot(null, null, (int[]) column);
+        }
+        return null;
+    }
+
+    /**
+     * Get the value of a slot, boxing it if the slot is bound to a primitive column.
+     * @param value The value of the slot
+     * @return The value of the variable
+     */
+    static Object unwrap(Object value) {
+        return value instanceof PrimitiveSlot ? ((PrimitiveSlot) value).value() : value;
+    }
+
+    /**
+     * @param row The index of the current row
+     */
+    void moveTo(int row) {
+        this.row = row;
+    }
+
+    /**
+     * @return The value of the current row
+     */
+    double doubleValue() {
+        if (doubles != null) {
+            return doubles[row];
+        }
+        return longs != null ? longs[row] : ints[row];
+    }
+
+    /**
+     * @return True if the column is of integers (long[] or int[])
+     */
+    boolean isIntegral() {
+        return doubles == null;
+    }
+
+    /**
+     * @return The value of the current row, truncated to an integer
+     */
+    long longValue() {
+        if (doubles != null) {
+            return (long) doubles[row];
+        }
+        return longs != null ? longs[row] : ints[row];
+    }
+
+    /**
+     * @return The value of the current row, boxed
+     */
+    Object value() {
+        if (doubles != null) {
+            return doubles[row];
+        }
+        return longs != null ? (Object) longs[row] : (Object) ints[row];
+    }
+}
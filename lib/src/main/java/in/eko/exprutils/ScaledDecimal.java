@@ -0,0 +1,292 @@
+package in.eko.exprutils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Exact decimal arithmetic on scaled longs, for {@link DecimalMode}.
+ * A decimal is represented by its unscaled value at a given scale: 12.34 at scale 2 is 1234.
+ * Operations return {@link #NOT_EXACT} instead of throwing when the result does not fit in a long
+ * (or a value cannot be represented exactly at the requested scale), so that callers can fall back to BigDecimal.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class ScaledDecimal {
+    /**
+     * The result of an operation that cannot be represented exactly as a scaled long
+     */
+    static final long NOT_EXACT = Long.MIN_VALUE;
+
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    // Suppress default constructor for noninstantiability
+    private ScaledDecimal() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Convert a value to its unscaled value at the given scale, without rounding.
+     * Integers and plain decimal strings are converted without allocating.
+     * @param value The value (a Number, or its string form)
+     * @param scale The number of decimal places
+     * @return The unscaled value, or NOT_EXACT
+     */
+    static long toUnscaled(Object value, int scale) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return scaleUp(((Number) value).longValue(), scale);
+        } else if (value instanceof String) {
+            return parse((String) value, scale);
+        } else if (value instanceof Double && !Double.isFinite((Double) value)) {
+            return NOT_EXACT;
+        }
+        return toUnscaled(toBigDecimal(value), scale);
+    }
+
+    /**
+     * Convert a BigDecimal to its unscaled value at the given scale, without rounding.
+     * @param value The value
+     * @param scale The number of decimal places
+     * @return The unscaled value, or NOT_EXACT
+     */
+    static long toUnscaled(BigDecimal value, int scale) {
+        BigDecimal scaled = value.movePointRight(scale);
+        if (scaled.scale() > 0) {
+            scaled = scaled.stripTrailingZeros();
+        }
+        // Integer digits: precision - scale
+        if (scaled.scale() > 0 || scaled.precision() - scaled.scale() >= POW10.length) {
+            return NOT_EXACT;
+        }
+        return scaled.longValue();
+    }
+
+    /**
+     * Convert a value to a BigDecimal. Values that are not numbers are converted from their string form,
+     * and are zero if that is not a number (like {@link ExpressionParser#obj2dbl(Object)}).
+     * @param value The value
+     * @return The exact decimal value
+     * @throws ArithmeticException if the value is NaN or infinite
+     */
+    static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            double dbl = ((Number) value).doubleValue();
+            if (!Double.isFinite(dbl)) {
+                throw new ArithmeticException("Not a decimal: " + value);
+            }
+            return BigDecimal.valueOf(dbl);
+        }
+
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Parse a plain decimal string (eg: "-12.50") to its unscaled value at the given scale.
+     * Any other syntax (eg: exponents) is parsed as a BigDecimal.
+     */
+    private static long parse(String str, int scale) {
+        int length = str.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (str.charAt(0) == '-' || str.charAt(0) == '+')) {
+            negative = str.charAt(0) == '-';
+            i++;
+        }
+
+        long unscaled = 0;
+        boolean digits = false;
+        // The number of decimal places read so far, or -1 before the decimal point
+        int fraction = -1;
+        for (; i < length; i++) {
+            char c = str.charAt(i);
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            } else if (c < '0' || c > '9') {
+                return toUnscaled(toBigDecimal(str), scale);
+            }
+
+            digits = true;
+            int digit = c - '0';
+            if (fraction == scale) {
+                // Trailing zeros beyond the scale are fine, anything else would need rounding
+                if (digit != 0) {
+                    return NOT_EXACT;
+                }
+                continue;
+            } else if (fraction >= 0) {
+                fraction++;
+            }
+
+            if (unscaled > (Long.MAX_VALUE - digit) / 10) {
+                return NOT_EXACT;
+            }
+            unscaled = unscaled * 10 + digit;
+        }
+
+        if (!digits) {
+            return toUnscaled(toBigDecimal(str), scale);
+        }
+        unscaled = scaleUp(unscaled, scale - Math.max(fraction, 0));
+        return negative && unscaled != NOT_EXACT ? -unscaled : unscaled;
+    }
+
+    /**
+     * @return value * 10^digits, or NOT_EXACT on overflow
+     */
+    static long scaleUp(long value, int digits) {
+        if (value == 0 || digits == 0) {
+            return value;
+        } else if (digits >= POW10.length) {
+            return NOT_EXACT;
+        }
+
+        long factor = POW10[digits];
+        if (value > Long.MAX_VALUE / factor || value < -Long.MAX_VALUE / factor) {
+            return NOT_EXACT;
+        }
+        return value * factor;
+    }
+
+    /**
+     * Change the scale of an unscaled value, without rounding.
+     * @return The unscaled value at the new scale, or NOT_EXACT
+     */
+    static long rescale(long value, int fromScale, int toScale) {
+        if (toScale >= fromScale) {
+            return scaleUp(value, toScale - fromScale);
+        } else if (fromScale - toScale >= POW10.length) {
+            return value == 0 ? 0 : NOT_EXACT;
+        }
+
+        long factor = POW10[fromScale - toScale];
+        return value % factor == 0 ? value / factor : NOT_EXACT;
+    }
+
+    /**
+     * Change the scale of an unscaled value, rounding if it has more decimal places than the new scale.
+     * @return The unscaled value at the new scale, or NOT_EXACT
+     */
+    static long round(long value, int fromScale, int toScale, RoundingMode rounding) {
+        if (toScale >= fromScale) {
+            return scaleUp(value, toScale - fromScale);
+        } else if (fromScale - toScale >= POW10.length) {
+            return value == 0 ? 0 : NOT_EXACT;
+        }
+        return divide(value, POW10[fromScale - toScale], rounding);
+    }
+
+    /**
+     * @return value1 + value2, or NOT_EXACT on overflow
+     */
+    static long add(long value1, long value2) {
+        long sum = value1 + value2;
+        return ((value1 ^ sum) & (value2 ^ sum)) < 0 ? NOT_EXACT : sum;
+    }
+
+    /**
+     * @return value1 - value2, or NOT_EXACT on overflow
+     */
+    static long subtract(long value1, long value2) {
+        long difference = value1 - value2;
+        return ((value1 ^ value2) & (value1 ^ difference)) < 0 ? NOT_EXACT : difference;
+    }
+
+    /**
+     * @return value1 * value2, or NOT_EXACT on overflow
+     */
+    static long multiply(long value1, long value2) {
+        long high = Math.multiplyHigh(value1, value2);
+        long low = value1 * value2;
+        return (high == 0 && low >= 0) || (high == -1 && low < 0) ? low : NOT_EXACT;
+    }
+
+    /**
+     * Divide two decimals, rounding the quotient to the given scale.
+     * @param value1 The unscaled dividend
+     * @param scale1 The scale of the dividend
+     * @param value2 The unscaled divisor
+     * @param scale2 The scale of the divisor
+     * @param scale The scale of the quotient
+     * @param rounding How to round the quotient
+     * @return The unscaled quotient, or NOT_EXACT
+     * @throws ArithmeticException on division by zero
+     */
+    static long divide(long value1, int scale1, long value2, int scale2, int scale, RoundingMode rounding) {
+        // value1 / 10^scale1 / (value2 / 10^scale2) * 10^scale
+        int exponent = scale + scale2 - scale1;
+        if (exponent >= 0) {
+            long dividend = scaleUp(value1, exponent);
+            return dividend == NOT_EXACT ? NOT_EXACT : divide(dividend, value2, rounding);
+        }
+
+        long divisor = scaleUp(value2, -exponent);
+        return divisor == NOT_EXACT ? NOT_EXACT : divide(value1, divisor, rounding);
+    }
+
+    /**
+     * Divide two longs, rounding the quotient to an integer.
+     * @return The rounded quotient, or NOT_EXACT on overflow
+     * @throws ArithmeticException on division by zero, or if rounding is UNNECESSARY but needed
+     */
+    private static long divide(long dividend, long divisor, RoundingMode rounding) {
+        if (divisor == 0) {
+            throw new ArithmeticException("Division by zero");
+        } else if (dividend == Long.MIN_VALUE && divisor == -1) {
+            return NOT_EXACT;
+        }
+
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        // The sign of the exact quotient, and how the remainder compares with half of the divisor
+        int sign = (dividend < 0) == (divisor < 0) ? 1 : -1;
+        long absRemainder = Math.abs(remainder);
+        long absDivisor = Math.abs(divisor);
+        int half = Long.compare(absRemainder, absDivisor - absRemainder);
+
+        boolean increment;
+        switch (rounding) {
+            case UP:
+                increment = true;
+                break;
+            case DOWN:
+                increment = false;
+                break;
+            case CEILING:
+                increment = sign > 0;
+                break;
+            case FLOOR:
+                increment = sign < 0;
+                break;
+            case HALF_UP:
+                increment = half >= 0;
+                break;
+            case HALF_DOWN:
+                increment = half > 0;
+                break;
+            case HALF_EVEN:
+                increment = half > 0 || (half == 0 && (quotient & 1) != 0);
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return increment ? quotient + sign : quotient;
+    }
+}
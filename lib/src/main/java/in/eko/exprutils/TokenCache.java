@@ -0,0 +1,272 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, concurrent cache of verified JWTs, so a bearer token that is reused for many calls is verified once.
+ * Entries are keyed by a SHA-256 digest of the token and the identity of the verifier, so neither the token nor
+ * the secret is held by the cache.
+ * <p>
+ * A verified token is served from the cache until its `exp` claim at the latest, and never longer than the
+ * maximum lifetime of the cache. A token that fails verification is remembered for a short time (negative caching),
+ * and the same failure is thrown again without verifying it.
+ * <pre>
+ * TokenCache cache = TokenCache.builder().maximumSize(10_000).build();
+ * DecodedJWT jwt = cache.verify(JwtVerifier.of("HS256", secretKey), token);
+ * </pre>
+ * @see JWT#setTokenCache(TokenCache)
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+public final class TokenCache {
+    private final Cache<ByteBuffer, Verified> verified;
+    private final Cache<ByteBuffer, JWTVerificationException> failed;
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private TokenCache(Builder builder) {
+        this.verified = CacheBuilder.newBuilder()
+                .maximumSize(builder.maximumSize)
+                .expireAfterWrite(builder.maximumLifetime.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+        this.failed = CacheBuilder.newBuilder()
+                .maximumSize(builder.maximumSize)
+                .expireAfterWrite(builder.negativeLifetime.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Create a new builder to configure a token cache.
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Verify a token with a verifier, unless it was verified (or failed verification) recently.
+     * @param verifier The verifier
+     * @param token The JWT
+     * @return The decoded JWT
+     * @throws JWTVerificationException if the token cannot be verified, or failed verification recently
+     */
+    public DecodedJWT verify(JwtVerifier verifier, String token) throws JWTVerificationException {
+        ByteBuffer key = key(verifier, token);
+
+        Verified entry = verified.getIfPresent(key);
+        if (entry != null) {
+            if (clock.getAsLong() < entry.expiresAt) {
+                hits.increment();
+                return entry.jwt;
+            }
+            verified.invalidate(key);
+        }
+
+        JWTVerificationException failure = failed.getIfPresent(key);
+        if (failure != null) {
+            negativeHits.increment();
+            throw failure;
+        }
+
+        misses.increment();
+        DecodedJWT jwt;
+        try {
+            jwt = verifier.verify(token);
+        } catch (JWTVerificationException e) {
+            failed.put(key, e);
+            throw e;
+        }
+
+        Date expiresAt = jwt.getExpiresAt();
+        verified.put(key, new Verified(jwt, expiresAt != null ? expiresAt.getTime() : Long.MAX_VALUE));
+        return jwt;
+    }
+
+    /**
+     * The key of a token: a digest of the id of the verifier and the token.
+     */
+    private static ByteBuffer key(JwtVerifier verifier, String token) {
+        MessageDigest digest = Hash.digest("SHA-256");
+        long id = verifier.getId();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (id >>> shift));
+        }
+        return ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Remove all tokens from the cache, including the failed ones. The statistics are not reset.
+     */
+    public void invalidateAll() {
+        verified.invalidateAll();
+        failed.invalidateAll();
+    }
+
+    /**
+     * Get the approximate number of tokens in the cache, including the failed ones.
+     * @return The number of cached tokens
+     */
+    public long size() {
+        return verified.size() + failed.size();
+    }
+
+    /**
+     * Get a snapshot of the cache statistics.
+     * @return The cache statistics
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), negativeHits.sum(), misses.sum());
+    }
+
+
+    /**
+     * A verified token, and the time (in milliseconds) when it expires.
+     */
+    private static final class Verified {
+        final DecodedJWT jwt;
+        final long expiresAt;
+
+        Verified(DecodedJWT jwt, long expiresAt) {
+            this.jwt = jwt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+
+    /**
+     * Builder for {@link TokenCache}.
+     * By default, the cache holds up to 10000 tokens of each kind (verified and failed), verified tokens are kept
+     * for up to 5 minutes, and failed tokens for 10 seconds.
+     */
+    public static final class Builder {
+        private long maximumSize = 10_000;
+        private Duration maximumLifetime = Duration.ofMinutes(5);
+        private Duration negativeLifetime = Duration.ofSeconds(10);
+        private LongSupplier clock = System::currentTimeMillis;
+
+        private Builder() {
+        }
+
+        /**
+         * Limit the number of cached tokens.
+         * @param maximumSize The maximum number of verified tokens to keep (and of failed tokens)
+         * @return This builder
+         */
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("maximumSize must not be negative");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Limit the time a verified token is cached, even if it expires later (or has no `exp` claim).
+         * @param duration The time after the verification when a token is verified again
+         * @return This builder
+         */
+        public Builder maximumLifetime(Duration duration) {
+            if (duration == null || duration.isNegative()) {
+                throw new IllegalArgumentException("Invalid maximum lifetime: " + duration);
+            }
+            this.maximumLifetime = duration;
+            return this;
+        }
+
+        /**
+         * Set the time a failed token is remembered (negative caching).
+         * @param duration The time after the failure when a token is verified again, or zero to disable negative caching
+         * @return This builder
+         */
+        public Builder negativeLifetime(Duration duration) {
+            if (duration == null || duration.isNegative()) {
+                throw new IllegalArgumentException("Invalid negative lifetime: " + duration);
+            }
+            this.negativeLifetime = duration;
+            return this;
+        }
+
+        /**
+         * @param clock The current time, in milliseconds, to check the expiry of the tokens against
+         * @return This builder
+         */
+        Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Build the token cache.
+         * @return The new, empty cache
+         */
+        public TokenCache build() {
+            return new TokenCache(this);
+        }
+    }
+
+
+    /**
+     * An immutable snapshot of the statistics of a {@link TokenCache}.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long negativeHitCount;
+        private final long missCount;
+
+        private Stats(long hitCount, long negativeHitCount, long missCount) {
+            this.hitCount = hitCount;
+            this.negativeHitCount = negativeHitCount;
+            this.missCount = missCount;
+        }
+
+        /**
+         * @return The number of verifications served by a cached, verified token
+         */
+        public long hitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return The number of verifications rejected by a cached failure
+         */
+        public long negativeHitCount() {
+            return negativeHitCount;
+        }
+
+        /**
+         * @return The number of verifications that had to verify the token
+         */
+        public long missCount() {
+            return missCount;
+        }
+
+        /**
+         * @return The ratio of verifications served from the cache (verified or failed), or 1.0 if there were none
+         */
+        public double hitRate() {
+            long requests = hitCount + negativeHitCount + missCount;
+            return requests == 0 ? 1.0 : (double) (hitCount + negativeHitCount) / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "TokenCache.Stats{hitCount=" + hitCount + ", negativeHitCount=" + negativeHitCount
+                    + ", missCount=" + missCount + "}";
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON parser that reads UTF-8 bytes directly into the org.json tree model (see {@link JsonBackends#BYTES}).
+ * A parser keeps buffers and a cache of keys between documents, so an instance must be confined to a thread.
+ * @author Kumar Abhishek (https://abhi.page/)
+ */
+final class Utf8JsonParser {
+    // Deeper documents are not valid, instead of overflowing the stack
+    private static final int MAX_DEPTH = 512;
+    // The number of cached keys (a power of 2), and the longest key that is cached
+    private static final int KEY_CACHE_SIZE = 256;
+    private static final int MAX_CACHED_KEY = 32;
+    // The largest copy of a direct buffer that is kept for the next document
+    private static final int MAX_SCRATCH = 1024 * 1024;
+
+    private final String[] keys = new String[KEY_CACHE_SIZE];
+    private final StringBuilder escaped = new StringBuilder();
+    private byte[] scratch = new byte[0];
+
+    private byte[] buf;
+    private int start;
+    private int pos;
+    private int limit;
+    private int depth;
+
+    /**
+     * Parse a JSON value.
+     * @param json The buffer
+     * @param offset The position of the first byte of the value
+     * @param length The number of bytes of the value
+     * @return The parsed value
+     * @throws JSONException if the bytes are not a valid JSON value
+     */
+    Object parse(byte[] json, int offset, int length) {
+        buf = json;
+        start = offset;
+        pos = offset;
+        limit = offset + length;
+        depth = 0;
+        try {
+            Object value = readValue();
+            skipWhitespace();
+            if (pos < limit) {
+                throw error("Unexpected content after the value");
+            }
+            return value;
+        } finally {
+            // Do not hold on to the caller's buffer
+            buf = null;
+        }
+    }
+
+    /**
+     * Parse a JSON value from the bytes between the position and the limit of a buffer.
+     * The bytes of a direct buffer (eg: memory-mapped) are copied into an array, but not decoded.
+     * @param json The buffer (its position is not changed)
+     * @return The parsed value
+     * @throws JSONException if the bytes are not a valid JSON value
+     */
+    Object parse(ByteBuffer json) {
+        int length = json.remaining();
+        if (json.hasArray()) {
+            return parse(json.array(), json.arrayOffset() + json.position(), length);
+        }
+
+        byte[] bytes;
+        if (length <= MAX_SCRATCH) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.min(Math.max(length, scratch.length * 2), MAX_SCRATCH)];
+            }
+            bytes = scratch;
+        } else {
+            bytes = new byte[length];
+        }
+        json.duplicate().get(bytes, 0, length);
+        return parse(bytes, 0, length);
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        byte b = peek();
+        switch (b) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+            case '\'':
+                pos++;
+                return readString(b);
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", JSONObject.NULL);
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + (char) b + "'");
+        }
+    }
+
+    private JSONObject readObject() {
+        pos++;
+        enter();
+        JSONObject obj = new JSONObject();
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            depth--;
+            return obj;
+        }
+
+        for (;;) {
+            skipWhitespace();
+            byte quote = peek();
+            if (quote != '"' && quote != '\'') {
+                throw error("Expected a quoted key");
+            }
+            pos++;
+            String key = readKey(quote);
+
+            skipWhitespace();
+            if (next() != ':') {
+                throw error("Expected a ':' after a key");
+            }
+            Object value = readValue();
+            if (obj.opt(key) != null) {
+                throw error("Duplicate key \"" + key + "\"");
+            }
+            obj.put(key, value);
+
+            skipWhitespace();
+            byte c = next();
+            if (c == '}') {
+                depth--;
+                return obj;
+            } else if (c != ',') {
+                throw error("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    private JSONArray readArray() {
+        pos++;
+        enter();
+        JSONArray arr = new JSONArray();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            depth--;
+            return arr;
+        }
+
+        for (;;) {
+            arr.put(readValue());
+
+            skipWhitespace();
+            byte c = next();
+            if (c == ']') {
+                depth--;
+                return arr;
+            } else if (c != ',') {
+                throw error("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Read the rest of a quoted key, reusing the same String for the same short ASCII key.
+     */
+    private String readKey(byte quote) {
+        int keyStart = pos;
+        int hash = 0;
+        for (int i = pos; i < limit && i - keyStart <= MAX_CACHED_KEY; i++) {
+            byte c = buf[i];
+            if (c == quote) {
+                int length = i - keyStart;
+                int slot = hash & (KEY_CACHE_SIZE - 1);
+                String key = keys[slot];
+                if (key == null || !matches(key, keyStart, length)) {
+                    key = new String(buf, keyStart, length, StandardCharsets.ISO_8859_1);
+                    keys[slot] = key;
+                }
+                pos = i + 1;
+                return key;
+            } else if (c == '\\' || c < 0x20) {
+                // Escaped, non-ASCII (negative) or invalid
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+        return readString(quote);
+    }
+
+    private boolean matches(String key, int offset, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != buf[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the rest of a quoted string.
+     */
+    private String readString(byte quote) {
+        int strStart = pos;
+        boolean ascii = true;
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c == quote) {
+                String str = new String(buf, strStart, pos - strStart,
+                        ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+                pos++;
+                return str;
+            } else if (c == '\\') {
+                return readEscapedString(quote, strStart);
+            } else if (c == '\n' || c == '\r') {
+                throw error("Unterminated string");
+            } else if (c < 0) {
+                ascii = false;
+            }
+            pos++;
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Read the rest of a quoted string that has escapes, from the first escape on.
+     */
+    private String readEscapedString(byte quote, int strStart) {
+        escaped.setLength(0);
+        escaped.append(new String(buf, strStart, pos - strStart, StandardCharsets.UTF_8));
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c == quote) {
+                pos++;
+                return escaped.toString();
+            } else if (c == '\\') {
+                pos++;
+                readEscape();
+            } else if (c == '\n' || c == '\r') {
+                throw error("Unterminated string");
+            } else {
+                // The bytes up to the next escape or quote: escapes never split a UTF-8 sequence
+                int segmentStart = pos;
+                while (pos < limit && buf[pos] != quote && buf[pos] != '\\' && buf[pos] != '\n' && buf[pos] != '\r') {
+                    pos++;
+                }
+                escaped.append(new String(buf, segmentStart, pos - segmentStart, StandardCharsets.UTF_8));
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void readEscape() {
+        byte c = next();
+        switch (c) {
+            case 'b':
+                escaped.append('\b');
+                break;
+            case 't':
+                escaped.append('\t');
+                break;
+            case 'n':
+                escaped.append('\n');
+                break;
+            case 'f':
+                escaped.append('\f');
+                break;
+            case 'r':
+                escaped.append('\r');
+                break;
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw error("Illegal escape");
+                    }
+                    code = code * 16 + digit;
+                }
+                escaped.append((char) code);
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                escaped.append((char) c);
+                break;
+            default:
+                throw error("Illegal escape");
+        }
+    }
+
+    /**
+     * Read a number: small integers directly, anything else like org.json does.
+     */
+    private Number readNumber() {
+        int numberStart = pos;
+        if (buf[pos] == '-') {
+            pos++;
+        }
+        int digitsStart = pos;
+        int value = 0;
+        while (pos < limit && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos] - '0');
+            pos++;
+        }
+        int digits = pos - digitsStart;
+        boolean integer = true;
+        while (pos < limit && isNumberPart(buf[pos])) {
+            integer = false;
+            pos++;
+        }
+
+        boolean negative = digitsStart > numberStart;
+        if (integer && digits > 0 && digits <= 9 && (digits == 1 || buf[digitsStart] != '0') && !(negative && value == 0)) {
+            return negative ? -value : value;
+        }
+
+        // Decimals, large integers and unusual forms (eg: leading zeros, -0)
+        Object number = JSONObject.stringToValue(new String(buf, numberStart, pos - numberStart, StandardCharsets.ISO_8859_1));
+        if (!(number instanceof Number)) {
+            throw error("Invalid number");
+        }
+        return (Number) number;
+    }
+
+    private static boolean isNumberPart(byte c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (pos + literal.length() > limit) {
+            throw error("Unexpected end");
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (buf[pos + i] != literal.charAt(i)) {
+                throw error("Unexpected character '" + (char) buf[pos] + "'");
+            }
+        }
+        pos += literal.length();
+        return value;
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("Nested too deep");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private byte peek() {
+        if (pos >= limit) {
+            throw error("Unexpected end");
+        }
+        return buf[pos];
+    }
+
+    private byte next() {
+        byte c = peek();
+        pos++;
+        return c;
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at byte " + (pos - start));
+    }
+}
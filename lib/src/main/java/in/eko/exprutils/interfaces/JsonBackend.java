@@ -0,0 +1,41 @@
+package in.eko.exprutils.interfaces;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A JSON parser and serializer, chosen per expression engine (see {@code in.eko.exprutils.JsonBackends}).
+ * Parsed documents are represented with the org.json tree model: JSONObject, JSONArray, String, Number,
+ * Boolean and JSONObject.NULL, so that every backend works with every operator.
+ * Implementations must be thread-safe, and throw org.json's JSONException for input that is not valid.
+ */
+public interface JsonBackend {
+    /**
+     * Parse a JSON value.
+     * @param json The serialized value
+     * @return The parsed value
+     */
+    Object parse(String json);
+
+    /**
+     * Parse a JSON value from UTF-8 bytes.
+     * @param json The buffer
+     * @param offset The position of the first byte of the value
+     * @param length The number of bytes of the value
+     * @return The parsed value
+     */
+    Object parse(byte[] json, int offset, int length);
+
+    /**
+     * Parse a JSON value from UTF-8 bytes, eg: a network buffer or a memory-mapped file.
+     * @param json The bytes between the position and the limit of the buffer (the position is not changed)
+     * @return The parsed value
+     */
+    Object parse(ByteBuffer json);
+
+    /**
+     * Serialize a value.
+     * @param value The value
+     * @return The JSON text of the value
+     */
+    String toJson(Object value);
+}
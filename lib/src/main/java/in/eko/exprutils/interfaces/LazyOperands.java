@@ -0,0 +1,19 @@
+package in.eko.exprutils.interfaces;
+
+/**
+ * The operands of a lazy operator (see {@link LazyOperatorFunction}).
+ * An operand is evaluated only when it is requested, and again every time it is requested.
+ */
+public interface LazyOperands {
+    /**
+     * @return The number of operands
+     */
+    int size();
+
+    /**
+     * Evaluate an operand.
+     * @param index The position of the operand, starting at 0
+     * @return The value of the operand, or null if there is no operand at that position
+     */
+    Object get(int index);
+}
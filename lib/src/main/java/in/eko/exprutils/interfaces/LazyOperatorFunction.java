@@ -0,0 +1,9 @@
+package in.eko.exprutils.interfaces;
+
+/**
+ * Common interface for operator functions that evaluate their operands on demand (eg: conditionals),
+ * so that the operands which are not needed are never computed
+ */
+public interface LazyOperatorFunction {
+    Object apply(LazyOperands operands);
+}
@@ -0,0 +1,8 @@
+package in.eko.exprutils.interfaces;
+
+/**
+ * Common interface for operator functions that take any number of operands
+ */
+public interface VariadicOperatorFunction {
+    Object apply(Object[] operands);
+}
@@ -2,6 +2,9 @@ package in.eko.exprutils.result;
 
 import java.util.Map;
 
+/**
+ * The result of evaluating an expression, along with the data (variables) it was evaluated with.
+ */
 public class ExpressionResult {
     private Object result;
     private Map data;
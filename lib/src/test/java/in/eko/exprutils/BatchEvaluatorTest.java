@@ -0,0 +1,141 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchEvaluatorTest {
+
+    @Test
+    void evaluateContexts() {
+        BatchEvaluator batch = BatchEvaluator.builder(ExpressionParser.compile("['CONCAT_ALL', '${id}', ':', '${status}']"))
+                .chunkSize(16)
+                .build();
+
+        List<Map<String, Object>> contexts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> context = new HashMap<>();
+            context.put("id", i);
+            context.put("status", i % 2 == 0 ? "ok" : "failed");
+            contexts.add(context);
+        }
+
+        // Results are in the order of the contexts, whatever the order in which chunks complete
+        Object[] results = batch.evaluate(contexts);
+        assertEquals(1000, results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(i + ":" + (i % 2 == 0 ? "ok" : "failed"), results[i]);
+        }
+
+        // Lists without random access, and arrays
+        assertArrayEquals(results, batch.evaluate(new LinkedList<>(contexts)));
+        @SuppressWarnings("unchecked")
+        Map<String, ?>[] array = contexts.toArray(new Map[0]);
+        assertArrayEquals(results, batch.evaluate(array));
+
+        assertEquals(0, batch.evaluate(Collections.emptyList()).length);
+    }
+
+    @Test
+    void evaluateColumns() {
+        int size = 10_000;
+        double[] amounts = new double[size];
+        Object[] rates = new Object[size];
+        long[] fees = new long[size];
+        for (int i = 0; i < size; i++) {
+            amounts[i] = i * 1.5;
+            rates[i] = i % 2 == 0 ? 0.5 : "2";
+            fees[i] = i % 7;
+        }
+
+        CompiledExpression expr = ExpressionParser.compile("['+', ['*', '${amount}', '${rate}'], ['VAR', 'fee', 0]]");
+        BatchEvaluator batch = BatchEvaluator.builder(expr).pool(ForkJoinPool.commonPool()).chunkSize(100).build();
+        BatchEvaluator.Columns columns = BatchEvaluator.Columns.of(size)
+                .put("amount", amounts)
+                .put("rate", rates)
+                .put("fee", fees);
+
+        double[] results = batch.evaluateDouble(columns);
+        long[] longResults = batch.evaluateLong(columns);
+        Object[] objectResults = batch.evaluate(columns);
+        for (int i = 0; i < size; i++) {
+            double expected = amounts[i] * (i % 2 == 0 ? 0.5 : 2) + fees[i];
+            assertEquals(expected, results[i], 1e-9);
+            assertEquals((long) expected, longResults[i]);
+            assertEquals(expected, (Double) objectResults[i], 1e-9);
+        }
+
+        // Missing columns evaluate to the default value of the variable
+        double[] withoutFees = batch.evaluateDouble(BatchEvaluator.Columns.of(2)
+                .put("amount", new double[]{10, 20})
+                .put("rate", new int[]{1, 2}));
+        assertArrayEquals(new double[]{10, 40}, withoutFees, 1e-9);
+
+        assertThrows(IllegalArgumentException.class, () -> BatchEvaluator.Columns.of(2).put("amount", new double[3]));
+    }
+
+    @Test
+    void primitiveColumns() {
+        BatchEvaluator.Columns columns = BatchEvaluator.Columns.of(3)
+                .put("id", new long[]{Long.MAX_VALUE - 1, 2, 3})
+                .put("amount", new int[]{10, 20, 30})
+                .put("rate", new double[]{0.5, 1.5, 2});
+
+        // Integer columns are read exactly
+        long[] ids = BatchEvaluator.builder(ExpressionParser.compile("['VAR', 'id']")).build().evaluateLong(columns);
+        assertArrayEquals(new long[]{Long.MAX_VALUE - 1, 2, 3}, ids);
+        ids = BatchEvaluator.builder(ExpressionParser.compile("['-', '${id}', 1]")).build().evaluateLong(columns);
+        assertArrayEquals(new long[]{Long.MAX_VALUE - 2, 1, 2}, ids);
+
+        // Operators that take objects get the boxed values, with both backends
+        CompiledExpression expr = ExpressionParser.compile(
+                "['CONCAT_ALL', 'txn-${amount}:', ['*', '${amount}', '${rate}'], ':', ['VAR', 'id']]");
+        Object[] expected = {"txn-10:5.0:" + (Long.MAX_VALUE - 1), "txn-20:30.0:2", "txn-30:60.0:3"};
+        assertArrayEquals(expected, BatchEvaluator.builder(expr).build().evaluate(columns));
+        assertArrayEquals(expected, BatchEvaluator.builder(expr.withBackend(ExpressionBackend.METHOD_HANDLE)).build()
+                .evaluate(columns));
+
+        double[] fees = BatchEvaluator.builder(ExpressionParser.compile("['*', '${amount}', '${rate}']")
+                .withBackend(ExpressionBackend.METHOD_HANDLE)).build().evaluateDouble(columns);
+        assertArrayEquals(new double[]{5, 30, 60}, fees, 1e-9);
+    }
+
+    @Test
+    void executor() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BatchEvaluator batch = BatchEvaluator.builder(ExpressionParser.compile("['*', '${x}', 2]"))
+                    .executor(executor)
+                    .chunkSize(10)
+                    .build();
+
+            long[] x = new long[1000];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = i;
+            }
+            long[] results = batch.evaluateLong(BatchEvaluator.Columns.of(x.length).put("x", x));
+            for (int i = 0; i < results.length; i++) {
+                assertEquals(2L * i, results[i]);
+            }
+
+            // Exceptions of the expression are rethrown as they are
+            BatchEvaluator failing = BatchEvaluator.builder(ExpressionParser.compile("['SHA256', ['VAR', 'missing']]"))
+                    .executor(executor)
+                    .chunkSize(10)
+                    .build();
+            assertThrows(NullPointerException.class, () -> failing.evaluate(BatchEvaluator.Columns.of(100)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.result.ExpressionResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledExpressionTest {
+
+    @Test
+    void evaluate() {
+        // Compile once, evaluate many times
+        CompiledExpression expr = ExpressionParser.compile("['+', 2, ['*', 3, 4]]");
+        assertEquals(14.0, (Double) expr.evaluate(), 1e-6);
+        assertEquals(14.0, (Double) expr.evaluate(), 1e-6);
+
+        // Object literals and hashes
+        assertEquals("3",
+                ExpressionParser.compile("['GET', {'a':1, 'b':{'c':2, 'd':{'e': 3}}}, 'b.d.e']").evaluate().toString()
+        );
+        assertEquals("b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9",
+                ExpressionParser.compile("['SHA256', 'hello world']").evaluate()
+        );
+    }
+
+    @Test
+    void literalPaths() {
+        // A literal GET path is compiled once, and reused for every record
+        CompiledExpression expr = ExpressionParser.compile("['GET', '${record}', 'txns[1].status', 'none']");
+        assertEquals("failed", expr.evaluate(Collections.singletonMap("record",
+                "{'txns':[{'status':'ok'},{'status':'failed'}]}")).getResult());
+        assertEquals("none", expr.evaluate(Collections.singletonMap("record", "{'txns':[]}")).getResult());
+        assertEquals("[\"GET\",\"${record}\",\"txns[1].status\",\"none\"]", expr.toString());
+
+        // A computed path is compiled when it is evaluated
+        assertEquals(2, ExpressionParser.compile("['GET', {'a':[1, 2]}, ['CONCAT', 'a', '[1]']]").evaluate());
+    }
+
+    @Test
+    void literalSetManyKeys() {
+        // The keys of a literal SET_MANY object are compiled once, even when its values are variables
+        CompiledExpression expr = ExpressionParser.compile("['SET_MANY', '${doc}', {'a.b': '${x}', 'c[0]': 2}]");
+        Map<String, Object> context = new HashMap<>();
+        context.put("doc", "{'a':{'b':0}, 'c':[1]}");
+        context.put("x", 1);
+        JSONObject result = (JSONObject) expr.evaluate(context).getResult();
+        assertEquals(1, JsonObj.get(result, "a.b", ""));
+        assertEquals(2, JsonObj.get(result, "c[0]", ""));
+
+        // And written back as they were
+        CompiledExpression recompiled = ExpressionParser.compile(expr.toString());
+        assertEquals(result.toString(), recompiled.evaluate(context).getResult().toString());
+
+        // Constant values are folded
+        assertTrue(ExpressionParser.compile("['SET_MANY', {'a':1}, {'b.c': 2}]").isConstant());
+        assertEquals(2, JsonObj.get((JSONObject) ExpressionParser.compile("['SET_MANY', {'a':1}, {'b.c': 2}]")
+                .evaluate(), "b.c", ""));
+
+        // Invalid keys are ignored, and computed keys are compiled when they are evaluated
+        assertEquals("{\"b\":2}", ExpressionParser.compile("['SET_MANY', {}, {'a[x]': 1, 'b': 2}]").evaluate().toString());
+        assertEquals("{\"a\":{\"b\":1}}", ExpressionParser.compile("['SET_MANY', {}, ['GET', {'v':{'a.b':1}}, 'v']]")
+                .evaluate().toString());
+    }
+
+    @Test
+    void structuredDocuments() {
+        // Chained SETs pass the JSONObject along, and serialize it only when asked
+        CompiledExpression expr = ExpressionParser.compile("['SET', ['SET', {'a':{'b':1}}, 'a.c', 2], 'd', 3]");
+        Object result = expr.evaluate();
+        assertTrue(result instanceof JSONObject);
+        assertEquals("2", JsonObj.get((JSONObject) result, "a.c", ""));
+        assertEquals("3", JsonObj.get((JSONObject) result, "d", ""));
+
+        // SET copies on write: the input document is not modified
+        JSONObject doc = new JSONObject("{'a':{'b':1}}");
+        CompiledExpression set = ExpressionParser.compile("['SET', '${doc}', 'a.b', 5]");
+        JSONObject updated = (JSONObject) set.evaluate(Collections.singletonMap("doc", doc)).getResult();
+        assertEquals("5", JsonObj.get(updated, "a.b", ""));
+        assertEquals(1, JsonObj.get(doc, "a.b", ""));
+
+        // A serialized document is scanned by each GET, parsing only the value it reads
+        CompiledExpression gets = ExpressionParser.compile(
+                "['CONCAT_ALL', ['GET', '${doc}', 'a.b'], '-', ['GET', '${doc}', 'a.c', 'none']]");
+        assertEquals("1-none", gets.evaluate(Collections.singletonMap("doc", "{'a':{'b':1}}")).getResult());
+
+        // A variable that is also used as a string is passed to other operators as it is
+        CompiledExpression mixed = ExpressionParser.compile("['CONCAT', ['GET', '${doc}', 'a'], '${doc}']");
+        assertEquals("1{ 'a' : 1 }", mixed.evaluate(Collections.singletonMap("doc", "{ 'a' : 1 }")).getResult());
+    }
+
+    @Test
+    void documentResultsAreNotShared() {
+        // GET of an object within a literal
+        CompiledExpression get = ExpressionParser.compile("['GET', {'a':{'b':1}}, 'a']");
+        ((JSONObject) get.evaluate()).put("b", 2);
+        assertEquals("{\"b\":1}", get.evaluate().toString());
+
+        // SET shares the objects that are not on its path with the literal
+        CompiledExpression set = ExpressionParser.compile("['SET', {'a':{'b':1}, 'c':{'d':[1]}}, 'a.b', '${x}']");
+        JSONObject result = (JSONObject) set.evaluate(Collections.singletonMap("x", 5)).getResult();
+        result.getJSONObject("c").getJSONArray("d").put(2);
+        assertEquals(1, ((JSONObject) set.evaluate(Collections.singletonMap("x", 6)).getResult())
+                .getJSONObject("c").getJSONArray("d").length());
+        CompiledExpression handles = set.withBackend(ExpressionBackend.METHOD_HANDLE);
+        ((JSONObject) handles.evaluate(Collections.singletonMap("x", 7)).getResult()).getJSONObject("c").remove("d");
+        assertEquals(1, ((JSONObject) handles.evaluate(Collections.singletonMap("x", 7)).getResult())
+                .getJSONObject("c").getJSONArray("d").length());
+
+        // GET of an object within a literal, at a computed path
+        CompiledExpression lookup = ExpressionParser.compile("['GET', {'a':{'b':1}}, '${key}']");
+        ((JSONObject) lookup.evaluate(Collections.singletonMap("key", "a")).getResult()).put("b", 2);
+        assertEquals("{\"b\":1}", lookup.evaluate(Collections.singletonMap("key", "a")).getResult().toString());
+
+        // An expression folded into a document
+        CompiledExpression folded = ExpressionParser.compile("['SET', '{\"a\":{\"b\":1}}', 'c', 2]");
+        assertTrue(folded.isConstant());
+        ((JSONObject) folded.evaluate()).getJSONObject("a").put("b", 3);
+        assertEquals(1, JsonObj.get((JSONObject) folded.evaluate(), "a.b", ""));
+
+        // A document from the context is not copied, even with constants elsewhere in the expression
+        JSONObject doc = new JSONObject("{'a':{'b':1}}");
+        assertSame(doc, ExpressionParser.compile("['VAR', 'doc']").evaluate(Collections.singletonMap("doc", doc)).getResult());
+        Map<String, Object> context = new HashMap<>();
+        context.put("doc", doc);
+        context.put("key", "x");
+        JSONObject updated = (JSONObject) ExpressionParser.compile("['SET', '${doc}', 'c', ['GET', {'x':1}, '${key}']]")
+                .evaluate(context).getResult();
+        assertSame(doc.get("a"), updated.get("a"));
+    }
+
+    @Test
+    void parseExpressionResults() {
+        // Like 1.x, parseExpression() returns the document of SET serialized
+        assertEquals("{\"a\":\"1\"}", ExpressionParser.parseExpression("['SET', {}, 'a', 1]"));
+        assertTrue(ExpressionParser.parseExpression("['SET_MANY', '${doc}', {'a': 1}]",
+                Collections.singletonMap("doc", "{}")) instanceof String);
+        assertTrue(ExpressionEngine.builder().build().parseExpression("['SET', {}, 'a', 1]") instanceof String);
+
+        // While a compiled expression returns the JSONObject, and GET returns the value it finds
+        assertTrue(ExpressionParser.compile("['SET', {}, 'a', 1]").evaluate() instanceof JSONObject);
+        assertTrue(ExpressionParser.parseExpression("['GET', {'a':{'b':1}}, 'a']") instanceof JSONObject);
+    }
+
+    @Test
+    void compileFromJsonArray() {
+        JSONArray json = new JSONArray("['CONCAT', 'Hello', 'World']");
+        CompiledExpression expr = ExpressionParser.compile(json);
+
+        // The compiled expression does not depend on the source array
+        json.put(1, "Bye");
+        assertEquals("HelloWorld", expr.evaluate());
+    }
+
+    @Test
+    void variables() {
+        CompiledExpression expr = ExpressionParser.compile("['+', '${amount}', ['*', ['VAR', 'amount'], ['VAR', 'rate', 0.1]]]");
+        assertEquals(Arrays.asList("amount", "rate"), expr.getVariables());
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("amount", 100);
+        ExpressionResult result = expr.evaluate(context);
+        assertEquals(110.0, (Double) result.getResult(), 1e-6);
+        assertSame(context, result.getData());
+
+        context.put("rate", "0.5");
+        assertEquals(150.0, (Double) expr.evaluate(context).getResult(), 1e-6);
+
+        // Placeholders within strings and object literals
+        context.put("name", "World");
+        assertEquals("Hello World!",
+                ExpressionParser.compile("['CONCAT', 'Hello ${name}', '!']").evaluate(context).getResult());
+        assertEquals("World",
+                ExpressionParser.compile("['GET', {'a': {'b': '${name}'}}, 'a.b']").evaluate(context).getResult());
+
+        // Unbound placeholders are kept as they are
+        assertEquals("Hello ${nobody}", ExpressionParser.compile("['CONCAT', 'Hello ', '${nobody}']").evaluate());
+    }
+
+    @Test
+    void constantFolding() {
+        CompiledExpression expr = ExpressionParser.compile("['*', 100, ['/', 18, 100]]");
+        assertTrue(expr.isConstant());
+        assertEquals(18.0, (Double) expr.evaluate(), 1e-6);
+
+        // Constant subtrees are folded even when the expression has variables
+        expr = ExpressionParser.compile("['CONCAT', ['SHA256', 'salt'], '${id}']");
+        assertFalse(expr.isConstant());
+        assertEquals("[\"CONCAT\",\"" + Hash.sha256("salt") + "\",\"${id}\"]", expr.toString());
+
+        // Impure operators are never folded
+        assertFalse(ExpressionParser.compile("['JWT', 'secret', 'HS256', {'issuer': 'me'}]").isConstant());
+    }
+
+    @Test
+    void partialEvaluation() {
+        CompiledExpression expr = ExpressionParser.compile(
+                "['+', ['*', '${amount}', ['VAR', 'rate']], ['CONCAT', ['VAR', 'fixed'], '0']]");
+        assertEquals(Arrays.asList("amount", "rate", "fixed"), expr.getVariables());
+
+        Map<String, Object> tenant = new HashMap<>();
+        tenant.put("rate", 0.02);
+        tenant.put("fixed", 5);
+        CompiledExpression residual = expr.partiallyEvaluate(tenant);
+        assertEquals(Arrays.asList("amount"), residual.getVariables());
+        assertEquals("[\"+\",[\"*\",\"${amount}\",0.02],\"50\"]", residual.toString());
+
+        Map<String, Object> request = new HashMap<>();
+        request.put("amount", 1000);
+        assertEquals(70.0, (Double) residual.evaluate(request).getResult(), 1e-6);
+
+        // Binding all variables folds the whole expression
+        tenant.put("amount", 1000);
+        assertTrue(expr.partiallyEvaluate(tenant).isConstant());
+    }
+
+    @Test
+    void methodHandleBackend() {
+        CompiledExpression expr = ExpressionParser.compile(
+                "['+', ['*', '${amount}', ['VAR', 'rate', 0.5]], ['/', ['GET', {'fee': '${fee}'}, 'fee'], 2]]");
+        CompiledExpression handles = expr.withBackend(ExpressionBackend.METHOD_HANDLE);
+        assertEquals(ExpressionBackend.METHOD_HANDLE, handles.getBackend());
+        assertSame(handles, handles.withBackend(ExpressionBackend.METHOD_HANDLE));
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("amount", 100);
+        context.put("fee", "10");
+        assertEquals(55.0, (Double) handles.evaluate(context).getResult(), 1e-6);
+        assertEquals(expr.evaluate(context).getResult(), handles.evaluate(context).getResult());
+
+        context.put("rate", 0.1);
+        assertEquals(15.0, (Double) handles.evaluate(context).getResult(), 1e-6);
+
+        // Non-numeric operators
+        assertEquals("HelloWorld", ExpressionParser.compile("['CONCAT', 'Hello', '${name}']")
+                .withBackend(ExpressionBackend.METHOD_HANDLE)
+                .partiallyEvaluate(Collections.singletonMap("name", "World"))
+                .evaluate());
+        CompiledExpression greeting = ExpressionParser.compile("['CONCAT', ['VAR', 'name', 'nobody'], '!']")
+                .withBackend(ExpressionBackend.METHOD_HANDLE);
+        assertEquals("nobody!", greeting.evaluate(context).getResult());
+        context.put("name", "World");
+        assertEquals("World!", greeting.evaluate(context).getResult());
+    }
+
+    @Test
+    void numericEvaluation() {
+        CompiledExpression expr = ExpressionParser.compile("['+', ['*', '${amount}', 0.018], ['-', 10, ['VAR', 'discount', '2.5']]]");
+        Map<String, Object> context = new HashMap<>();
+        context.put("amount", new BigDecimal("1000"));
+        assertEquals(25.5, expr.evaluateDouble(context), 1e-9);
+        assertEquals(25, expr.evaluateLong(context));
+        assertEquals(25.5, expr.withBackend(ExpressionBackend.METHOD_HANDLE).evaluateDouble(context), 1e-9);
+
+        // Integer arithmetic is exact on longs (beyond the precision of doubles)
+        assertEquals(9007199254740993L, ExpressionParser.compile("['+', 9007199254740992, 1]").evaluateLong());
+        assertEquals(9007199254740993L, ExpressionParser.compile("['-', 9007199254740995, ['*', 1, 2]]").evaluateLong());
+
+        // Also for variables bound to integers, checked when they are evaluated
+        Map<String, Object> ids = new HashMap<>();
+        ids.put("id", 9007199254740993L);
+        assertEquals(9007199254740993L, ExpressionParser.compile("['VAR', 'id']").evaluateLong(ids));
+        assertEquals(9007199254740994L, ExpressionParser.compile("['+', '${id}', 1]").evaluateLong(ids));
+        assertEquals(9007199254740993L, ExpressionParser.compile("['+', ['VAR', 'missing', 9007199254740992], 1]").evaluateLong(ids));
+        assertEquals(4.0, ExpressionParser.compile("['/', 8, '2']").evaluateDouble(), 1e-9);
+        assertEquals(6.0, ExpressionParser.compile("['+', 2, 4]").evaluate());
+    }
+
+    @Test
+    void compileErrors() {
+        // Invalid operators are reported at compile time, even when nested
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ExpressionParser.compile("['+', 1, ['UNKNOWN', 2, 3]]"));
+        assertEquals("Invalid operator: UNKNOWN", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class, () -> ExpressionParser.compile("['+', 1"));
+        assertEquals("Invalid expr: not a valid JSON", e.getMessage());
+    }
+}
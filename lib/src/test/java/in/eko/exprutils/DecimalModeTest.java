@@ -0,0 +1,128 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecimalModeTest {
+
+    @Test
+    void of() {
+        DecimalMode mode = DecimalMode.of(4, RoundingMode.HALF_UP);
+        assertEquals(4, mode.getScale());
+        assertEquals(RoundingMode.HALF_UP, mode.getRounding());
+        assertEquals(DecimalMode.CURRENCY, DecimalMode.of(2, RoundingMode.HALF_EVEN));
+
+        assertThrows(IllegalArgumentException.class, () -> DecimalMode.of(-1, RoundingMode.HALF_UP));
+        assertThrows(IllegalArgumentException.class, () -> DecimalMode.of(19, RoundingMode.HALF_UP));
+        assertThrows(IllegalArgumentException.class, () -> DecimalMode.of(2, null));
+    }
+
+    @Test
+    void exactArithmetic() {
+        // Exact where doubles are not
+        assertEquals(new BigDecimal("0.30"), ExpressionParser.compile("['+', 0.1, 0.2]", DecimalMode.CURRENCY).evaluate());
+        assertNotEquals(0.3, ExpressionParser.compile("['+', 0.1, 0.2]").evaluateDouble());
+
+        CompiledExpression expr = ExpressionParser.compile(
+                "['-', '${amount}', ['*', '${amount}', '${rate}']]", DecimalMode.CURRENCY);
+        assertEquals(DecimalMode.CURRENCY, expr.getDecimalMode());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("amount", 1234);
+        data.put("rate", new BigDecimal("0.018"));
+        assertEquals(new BigDecimal("1211.79"), expr.evaluateDecimal(data));
+
+        // Amounts as strings
+        data.put("amount", "100.10");
+        data.put("rate", "0.5");
+        assertEquals(new BigDecimal("50.05"), expr.evaluateDecimal(data));
+        assertEquals(50.05, expr.evaluateDouble(data), 1e-9);
+        assertEquals(new BigDecimal("50.05"), expr.evaluate(data).getResult());
+    }
+
+    @Test
+    void rounding() {
+        assertEquals(new BigDecimal("0.33"), ExpressionParser.compile("['/', 1, 3]", DecimalMode.CURRENCY).evaluateDecimal());
+        assertEquals(new BigDecimal("-0.67"), ExpressionParser.compile("['/', -2, 3]", DecimalMode.CURRENCY).evaluateDecimal());
+
+        // Banker's rounding vs half-up, computed at evaluation time
+        Map<String, Object> data = new HashMap<>();
+        data.put("a", "0.25");
+        CompiledExpression halfEven = ExpressionParser.compile("['*', '${a}', 0.5]", DecimalMode.CURRENCY);
+        CompiledExpression halfUp = ExpressionParser.compile("['*', '${a}', 0.5]", DecimalMode.of(2, RoundingMode.HALF_UP));
+        CompiledExpression floor = ExpressionParser.compile("['*', '${a}', 0.5]", DecimalMode.of(0, RoundingMode.FLOOR));
+        assertEquals(new BigDecimal("0.12"), halfEven.evaluateDecimal(data));
+        assertEquals(new BigDecimal("0.13"), halfUp.evaluateDecimal(data));
+        assertEquals(new BigDecimal("0"), floor.evaluateDecimal(data));
+
+        data.put("a", "-0.25");
+        assertEquals(new BigDecimal("-0.12"), halfEven.evaluateDecimal(data));
+        assertEquals(new BigDecimal("-0.13"), halfUp.evaluateDecimal(data));
+        assertEquals(new BigDecimal("-1"), floor.evaluateDecimal(data));
+
+        CompiledExpression unnecessary = ExpressionParser.compile("['/', 1, 3]", DecimalMode.of(2, RoundingMode.UNNECESSARY));
+        assertThrows(ArithmeticException.class, unnecessary::evaluateDecimal);
+    }
+
+    @Test
+    void overflow() {
+        // Results that do not fit in a scaled long are computed with BigDecimal
+        CompiledExpression expr = ExpressionParser.compile("['*', '${a}', '${b}']", DecimalMode.CURRENCY);
+        Map<String, Object> data = new HashMap<>();
+        data.put("a", Long.MAX_VALUE);
+        data.put("b", 10);
+        assertEquals(new BigDecimal("92233720368547758070.00"), expr.evaluateDecimal(data));
+
+        data.put("a", "123456789012345678901234567890.5");
+        data.put("b", "2");
+        assertEquals(new BigDecimal("246913578024691357802469135781.00"), expr.evaluateDecimal(data));
+
+        assertThrows(ArithmeticException.class,
+                () -> ExpressionParser.compile("['/', 1, '${zero}']", DecimalMode.CURRENCY).evaluateDecimal(data));
+    }
+
+    @Test
+    void operandsEvaluatedOnce() {
+        // A rate with more decimal places than the scale is computed with BigDecimal, from the same value
+        AtomicInteger calls = new AtomicInteger();
+        ExpressionEngine engine = ExpressionEngine.builder()
+                .decimalMode(DecimalMode.CURRENCY)
+                .register(Operator.of("RATE", 0, (operand1, operand2, operand3) -> {
+                    calls.incrementAndGet();
+                    return "0.018";
+                }).impure())
+                .build();
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("amount", 1234);
+        CompiledExpression expr = engine.compile("['-', '${amount}', ['*', ['*', '${amount}', ['RATE']], 1]]");
+        assertEquals(new BigDecimal("1211.79"), expr.evaluateDecimal(data));
+        assertEquals(1, calls.get());
+
+        assertEquals(new BigDecimal("1211.79"),
+                expr.withBackend(ExpressionBackend.METHOD_HANDLE).evaluateDecimal(data));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void folding() {
+        CompiledExpression product = ExpressionParser.compile("['*', 2.5, 4]", DecimalMode.CURRENCY);
+        assertTrue(product.isConstant());
+        assertEquals(new BigDecimal("10.00"), product.evaluate());
+
+        CompiledExpression expr = ExpressionParser.compile("['+', ['*', 2.5, 4], '${x}']", DecimalMode.CURRENCY);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("x", 0.015);
+        assertEquals(new BigDecimal("10.02"), expr.evaluateDecimal(data));
+        assertEquals(new BigDecimal("10.02"),
+                expr.withBackend(ExpressionBackend.METHOD_HANDLE).evaluateDecimal(data));
+    }
+}
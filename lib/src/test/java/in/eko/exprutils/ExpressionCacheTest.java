@@ -0,0 +1,63 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionCacheTest {
+
+    @Test
+    void getAndStats() {
+        ExpressionCache cache = ExpressionCache.builder().maximumSize(10).build();
+
+        CompiledExpression expr = cache.get("['+', 2, 3]");
+        assertSame(expr, cache.get("['+', 2, 3]"));
+        assertEquals(5.0, (Double) expr.evaluate(), 1e-6);
+
+        ExpressionCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(0.5, stats.hitRate(), 1e-6);
+        assertTrue(stats.totalLoadTime() > 0);
+    }
+
+    @Test
+    void eviction() {
+        ExpressionCache cache = ExpressionCache.builder().maximumSize(2).concurrencyLevel(1).build();
+        cache.get("['+', 1, 1]");
+        cache.get("['+', 1, 2]");
+        cache.get("['+', 1, 3]");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.stats().evictionCount());
+        assertNull(cache.getIfPresent("['+', 1, 1]"));
+    }
+
+    @Test
+    void defaultLimitIsWeight() {
+        ExpressionCache cache = ExpressionCache.builder().concurrencyLevel(1).build();
+
+        // A large literal document fills the cache, whatever the number of expressions
+        StringBuilder doc = new StringBuilder("{'a':'");
+        for (int i = 0; i < ExpressionCache.DEFAULT_MAXIMUM_WEIGHT / 2; i++) {
+            doc.append('x');
+        }
+        doc.append("'}");
+        cache.get("['GET', " + doc + ", 'a']");
+        cache.get("['GET', " + doc + ", 'b']");
+        cache.get("['+', 1, 1]");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    void invalidExpressionsAreNotCached() {
+        ExpressionCache cache = ExpressionCache.builder().build();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> cache.get("['UNKNOWN', 2, 3]"));
+        assertEquals("Invalid operator: UNKNOWN", e.getMessage());
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.stats().loadExceptionCount());
+    }
+}
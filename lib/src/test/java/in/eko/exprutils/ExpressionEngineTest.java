@@ -0,0 +1,162 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionEngineTest {
+
+    @Test
+    void customOperators() {
+        ExpressionEngine engine = ExpressionEngine.builder()
+                .register(Operator.of("UPPER", 1, (operand1, operand2, operand3) -> operand1.toString().toUpperCase()))
+                .register(Operator.variadic("SUM", 0, operands -> {
+                    double sum = 0;
+                    for (Object operand : operands) {
+                        sum += ExpressionParser.obj2dbl(operand);
+                    }
+                    return sum;
+                }))
+                .build();
+
+        assertEquals("HELLO", engine.parseExpression("['UPPER', ['CONCAT', 'hel', 'lo']]"));
+        assertEquals(10.0, engine.parseExpression("['SUM', 1, 2, 3, 4]"));
+        assertEquals(0.0, engine.parseExpression("['SUM']"));
+        assertEquals(6.0, engine.parseExpression("['SUM', 1, '${x}', 3]", Collections.singletonMap("x", 2)));
+
+        // Operators are registered per engine, not globally
+        assertTrue(engine.isValidOperator("UPPER"));
+        assertFalse(ExpressionParser.isValidOperator("UPPER"));
+        assertFalse(ExpressionEngine.builder().build().isValidOperator("UPPER"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionParser.compile("['UPPER', 'hello']"));
+    }
+
+    @Test
+    void builtinOperators() {
+        ExpressionEngine engine = ExpressionEngine.builder().build();
+        assertEquals(14.0, engine.parseExpression("['+', 2, ['*', 3, 4]]"));
+        assertEquals("Hello World", engine.parseExpression("['CONCAT_ALL', 'Hello', ' ', 'World']"));
+        assertEquals("x", engine.parseExpression("['GET', {'a':1}, 'b', 'x']"));
+
+        Operator get = engine.getOperator("GET");
+        assertEquals(2, get.getMinArity());
+        assertEquals(3, get.getMaxArity());
+        assertTrue(get.isPure());
+        assertFalse(engine.getOperator("JWT").isPure());
+        assertEquals(2, engine.getOperator("CONCAT").getMaxArity());
+        assertEquals(Operator.VARIADIC, engine.getOperator("CONCAT_ALL").getMaxArity());
+
+        // Built-in operators can be replaced or removed
+        ExpressionEngine custom = ExpressionEngine.builder()
+                .register(Operator.of("+", 2, (operand1, operand2, operand3) -> "plus"))
+                .unregister("JWT")
+                .build();
+        assertEquals("plus", custom.parseExpression("['+', 2, 3]"));
+        assertFalse(custom.isValidOperator("JWT"));
+    }
+
+    @Test
+    void arity() {
+        ExpressionEngine engine = ExpressionEngine.builder().build();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> engine.compile("['SHA256']"));
+        assertEquals("Invalid SHA256: expected 1 operand but got 0", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class, () -> engine.compile("['CONCAT_ALL', 'a']"));
+        assertEquals("Invalid CONCAT_ALL: expected at least 2 operands but got 1", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> engine.compile("['VAR', 'a', 1, 2]"));
+
+        // Like 1.x, the built-in operators ignore extra operands, without compiling them
+        assertEquals(3.0, engine.parseExpression("['+', 1, 2, 3]"));
+        assertEquals("ab", engine.parseExpression("['CONCAT', 'a', 'b', 'c']"));
+        assertEquals(Hash.sha256("a"), engine.parseExpression("['SHA256', 'a', ['NO_SUCH_OPERATOR']]"));
+
+        // Custom operators reject them
+        ExpressionEngine custom = ExpressionEngine.builder()
+                .register(Operator.of("UPPER", 1, (operand1, operand2, operand3) -> operand1.toString().toUpperCase()))
+                .build();
+        e = assertThrows(IllegalArgumentException.class, () -> custom.compile("['UPPER', 'a', 'b']"));
+        assertEquals("Invalid UPPER: expected 1 operand but got 2", e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> Operator.of("F", 4, (operand1, operand2, operand3) -> null));
+        assertThrows(IllegalArgumentException.class, () -> Operator.of("F", 2, 1, (operand1, operand2, operand3) -> null));
+        assertThrows(IllegalArgumentException.class, () -> Operator.of("VAR", 1, (operand1, operand2, operand3) -> null));
+    }
+
+    @Test
+    void purity() {
+        AtomicInteger calls = new AtomicInteger();
+        ExpressionEngine engine = ExpressionEngine.builder()
+                .register(Operator.of("PURE", 0, (operand1, operand2, operand3) -> calls.incrementAndGet()).pure())
+                .register(Operator.of("IMPURE", 0, (operand1, operand2, operand3) -> calls.incrementAndGet()))
+                .build();
+
+        // Pure operators are folded at compile time, impure operators (the default) are called on every evaluation
+        CompiledExpression pure = engine.compile("['PURE']");
+        assertTrue(pure.isConstant());
+        pure.evaluate();
+        pure.evaluate();
+        assertEquals(1, calls.get());
+
+        CompiledExpression impure = engine.compile("['IMPURE']");
+        assertFalse(impure.isConstant());
+        impure.evaluate();
+        impure.evaluate();
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void lazyOperators() {
+        AtomicInteger calls = new AtomicInteger();
+        ExpressionEngine engine = ExpressionEngine.builder()
+                .register(Operator.of("EXPENSIVE", 1, (operand1, operand2, operand3) -> {
+                    calls.incrementAndGet();
+                    return operand1;
+                }).impure())
+                .register(Operator.lazy("FIRST_TRUTHY", 1, Operator.VARIADIC, operands -> {
+                    for (int i = 0; i < operands.size(); i++) {
+                        Object value = operands.get(i);
+                        if (!"".equals(value)) {
+                            return value;
+                        }
+                    }
+                    return null;
+                }))
+                .build();
+        assertTrue(engine.getOperator("FIRST_TRUTHY").isLazy());
+
+        // Untaken branches are never evaluated
+        CompiledExpression expr = engine.compile(
+                "['IF', ['==', '${type}', 'card'], ['EXPENSIVE', 'card'], ['EXPENSIVE', 'bank']]");
+        assertEquals("card", expr.evaluate(Collections.singletonMap("type", "card")).getResult());
+        assertEquals("bank", expr.evaluate(Collections.singletonMap("type", "upi")).getResult());
+        assertEquals(2, calls.get());
+
+        assertEquals(false, engine.parseExpression("['AND', '${x}', ['EXPENSIVE', 1]]", Collections.singletonMap("x", 0)));
+        assertEquals(true, engine.parseExpression("['OR', '${x}', ['EXPENSIVE', 1]]", Collections.singletonMap("x", 1)));
+        assertEquals("a", engine.parseExpression("['COALESCE', 'a', ['EXPENSIVE', 'b']]"));
+        assertEquals("b", engine.parseExpression("['FIRST_TRUTHY', '', 'b', ['EXPENSIVE', 'c']]"));
+        assertEquals(2, calls.get());
+
+        // Lazy operators with constant operands are folded
+        assertTrue(engine.compile("['IF', ['>', 2, 1], 'yes', 'no']").isConstant());
+    }
+
+    @Test
+    void decimalModeAndCache() {
+        ExpressionEngine engine = ExpressionEngine.builder()
+                .decimalMode(DecimalMode.CURRENCY)
+                .cache(ExpressionCache.builder().maximumSize(10))
+                .build();
+        assertEquals(new BigDecimal("0.30"), engine.parseExpression("['+', 0.1, 0.2]"));
+        assertEquals(DecimalMode.CURRENCY, engine.compile("['+', 0.1, 0.2]").getDecimalMode());
+
+        engine.parseExpression("['+', 0.1, 0.2]");
+        assertEquals(1, engine.getCache().size());
+        assertEquals(1, engine.getCache().stats().hitCount());
+
+        assertNull(ExpressionEngine.builder().cache(null).build().getCache());
+    }
+}
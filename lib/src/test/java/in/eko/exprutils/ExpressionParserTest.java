@@ -49,6 +49,66 @@ public class ExpressionParserTest {
         assertEquals("{\"b\":{\"d\":{\"e\":\"4\"}}}",
                 ExpressionParser.parseExpression("['SET', {'b':{'d':{}}}, 'b.d.e', 4]").toString()
         );
+
+        // Test deep get of several values...
+        assertEquals("{\"e\":3}",
+                ExpressionParser.parseExpression("['GET_MANY', {'b':{'c':2, 'd':{'e': 3}}}, {'e':'b.d.e'}]").toString()
+        );
+        assertEquals("3|none",
+                ExpressionParser.parseExpression("['CONCAT_ALL', ['GET', ['GET_MANY', '{\\'b\\':{\\'e\\':3}}', {'x':'b.e', 'y':'b.z'}, 'none'], 'x'], '|',"
+                        + " ['GET', ['GET_MANY', {'b':{'e':3}}, {'x':'b.e', 'y':'b.z'}, 'none'], 'y']]")
+        );
+
+        // Test deep set of several values...
+        assertEquals("{\"b\":{\"d\":{\"e\":4}}}",
+                ExpressionParser.parseExpression("['SET_MANY', {'b':{'d':{}}}, {'b.d.e': 4}]").toString()
+        );
+    }
+
+    @Test
+    public void testParseExpressionWithData() throws Exception {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("a", 2);
+        data.put("b", 3.5);
+
+        assertEquals(5.5, (Double)ExpressionParser.parseExpression("['+', '${a}', ['VAR', 'b']]", data), 1e-6);
+        assertEquals(2.0, (Double)ExpressionParser.parseExpression("['+', '${a}', ['VAR', 'c', 0]]", data), 1e-6);
+    }
+
+    @Test
+    public void testControlFlow() throws Exception {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("amount", 1500);
+        data.put("status", "SUCCESS");
+        data.put("flag", "false");
+
+        // Conditionals
+        assertEquals("high", ExpressionParser.parseExpression("['IF', ['>', '${amount}', 1000], 'high', 'low']", data));
+        assertEquals("low", ExpressionParser.parseExpression("['IF', ['<=', '${amount}', '999.5'], 'high', 'low']", data));
+        assertEquals(null, ExpressionParser.parseExpression("['IF', '${flag}', 'yes']", data));
+        assertEquals("yes", ExpressionParser.parseExpression("['IF', ['NOT', '${flag}'], 'yes']", data));
+
+        // Comparisons: numbers by value, everything else by string
+        assertEquals(true, ExpressionParser.parseExpression("['==', 5, '5.0']"));
+        assertEquals(true, ExpressionParser.parseExpression("['==', ['+', 2, 3], 5]"));
+        assertEquals(false, ExpressionParser.parseExpression("['!=', '${status}', 'SUCCESS']", data));
+        assertEquals(true, ExpressionParser.parseExpression("['<', 'abc', 'abd']"));
+        assertEquals(false, ExpressionParser.parseExpression("['>=', ['VAR', 'missing'], 0]", data));
+
+        // Boolean operators
+        assertEquals(true, ExpressionParser.parseExpression("['AND', ['>', '${amount}', 0], ['==', '${status}', 'SUCCESS']]", data));
+        assertEquals(false, ExpressionParser.parseExpression("['AND', 1, 0, 1]"));
+        assertEquals(true, ExpressionParser.parseExpression("['OR', '', 0, 'x']"));
+        assertEquals(false, ExpressionParser.parseExpression("['OR', '${flag}', null]", data));
+
+        // The first value that is present
+        assertEquals("fallback", ExpressionParser.parseExpression("['COALESCE', ['GET', {'a':1}, 'b'], ['VAR', 'missing'], 'fallback']", data));
+        assertEquals(1, ExpressionParser.parseExpression("['COALESCE', ['GET', {'a':1}, 'a'], 'fallback']"));
+
+        // Switch with an optional default
+        assertEquals("ok", ExpressionParser.parseExpression("['SWITCH', '${status}', 'FAILED', 'retry', 'SUCCESS', 'ok', 'unknown']", data));
+        assertEquals("unknown", ExpressionParser.parseExpression("['SWITCH', 'PENDING', 'FAILED', 'retry', 'SUCCESS', 'ok', 'unknown']"));
+        assertEquals(null, ExpressionParser.parseExpression("['SWITCH', 'PENDING', 'FAILED', 'retry']"));
     }
 
     @Test
@@ -1,6 +1,13 @@
 package in.eko.exprutils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
 import org.junit.jupiter.api.Test;
 
 public class HashTest {
@@ -23,4 +30,51 @@ public class HashTest {
                 Hash.md5("hello world")
         );
     }
+
+    @Test
+    public void testBytes() {
+        String sha256 = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+        byte[] bytes = "hello world".getBytes(StandardCharsets.UTF_8);
+        assertEquals(sha256, Hash.sha256(bytes));
+        assertEquals(sha256, Hash.getHash("hello world", StandardCharsets.US_ASCII, "SHA-256"));
+
+        // Only the remaining bytes of a buffer are hashed, and its position is kept
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 2);
+        buffer.put((byte) '[').put(bytes).put((byte) ']');
+        buffer.position(1).limit(bytes.length + 1);
+        assertEquals(sha256, Hash.getHash(buffer, "SHA-256"));
+        assertEquals(1, buffer.position());
+
+        // Strings are hashed as UTF-8 on every host
+        assertEquals("66ddcd97cfdeabb2f6fb8a999b4bc76f", Hash.md5("\u00e9"));
+        assertEquals("", Hash.sha512((byte[]) null));
+
+        // An invalid algorithm is an IllegalArgumentException, whatever the input
+        assertThrows(IllegalArgumentException.class, () -> Hash.getHash("hello world", "SHA-0"));
+        assertThrows(IllegalArgumentException.class, () -> Hash.getHash(new byte[0], "SHA-0"));
+        assertThrows(IllegalArgumentException.class, () -> Hash.getHash(ByteBuffer.allocate(0), "SHA-0"));
+        assertThrows(IllegalArgumentException.class, () -> Hash.getHashBase64(new byte[0], "SHA-0"));
+        assertThrows(IllegalArgumentException.class, () -> Hash.getHash(new ByteArrayInputStream(new byte[0]), "SHA-0"));
+    }
+
+    @Test
+    public void testEncoding() {
+        assertEquals("", Hash.toHex(new byte[0]));
+        assertEquals("00ff7f80", Hash.toHex(new byte[]{0, -1, 127, -128}));
+        assertEquals("", Hash.toBase64(new byte[0]));
+        assertEquals("Zg==", Hash.toBase64("f".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("Zm8=", Hash.toBase64("fo".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("Zm9v", Hash.toBase64("foo".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=",
+                Hash.getHashBase64("hello world".getBytes(StandardCharsets.UTF_8), "SHA-256"));
+    }
+
+    @Test
+    public void testOperators() {
+        byte[] body = "hello world".getBytes(StandardCharsets.UTF_8);
+        assertEquals("5eb63bbbe01eeed093cb22bb8f5acdc3", ExpressionParser.compile("['MD5', '${body}']")
+                .evaluate(Collections.singletonMap("body", body)).getResult());
+        assertEquals("5eb63bbbe01eeed093cb22bb8f5acdc3", ExpressionParser.compile("['MD5', '${body}']")
+                .evaluate(Collections.singletonMap("body", ByteBuffer.wrap(body))).getResult());
+    }
 }
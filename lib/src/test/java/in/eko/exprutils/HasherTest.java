@@ -0,0 +1,55 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HasherTest {
+
+    String sha256 = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+    @Test
+    void update() {
+        Hasher hasher = Hasher.of("SHA-256");
+        byte[] bytes = "xhello".getBytes(StandardCharsets.UTF_8);
+        hasher.update(bytes, 1, 5).update(ByteBuffer.wrap(new byte[]{' '})).update("world");
+        assertEquals(sha256, hasher.finish());
+
+        // Reset by finish()
+        assertEquals(sha256, hasher.update("hello world").finish());
+        assertEquals(Hash.sha256(new byte[0]), hasher.finish());
+        assertEquals(32, hasher.update("hello world").finishBytes().length);
+
+        assertThrows(IllegalArgumentException.class, () -> Hasher.of("SHA-0"));
+    }
+
+    @Test
+    void streamAndFile(@TempDir Path dir) throws IOException {
+        assertEquals(sha256, Hash.sha256(new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8))));
+
+        // Larger than the stream buffer
+        byte[] large = new byte[200 * 1024 + 7];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        Path file = dir.resolve("settlement.csv");
+        Files.write(file, large);
+        assertEquals(Hash.sha512(large), Hash.getHash(file, "SHA-512"));
+        try (InputStream in = Files.newInputStream(file)) {
+            assertEquals(Hash.sha512(large), Hash.getHash(in, "SHA-512"));
+        }
+
+        Path empty = dir.resolve("empty.csv");
+        Files.write(empty, new byte[0]);
+        assertEquals(Hash.sha256(new byte[0]), Hash.sha256(empty));
+    }
+}
@@ -0,0 +1,51 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterpolationTemplateTest {
+
+    @Test
+    void render() throws Exception {
+        InterpolationTemplate template = InterpolationTemplate.compile("Hi, my name is ${name}. I'm ${age} years old, ${name}");
+        assertEquals(Arrays.asList("name", "age"), template.getVariables());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", "Abhishek");
+        data.put("age", 35);
+        assertEquals("Hi, my name is Abhishek. I'm 35 years old, Abhishek", template.render(data));
+
+        // Stream into a Writer
+        StringWriter writer = new StringWriter();
+        template.render(data, writer);
+        assertEquals("Hi, my name is Abhishek. I'm 35 years old, Abhishek", writer.toString());
+
+        // Append to a StringBuilder
+        StringBuilder sb = new StringBuilder(">");
+        InterpolationTemplate.compile("${age}").render(data, sb);
+        assertEquals(">35", sb.toString());
+    }
+
+    @Test
+    void renderSpecialCharacters() {
+        // Values with `$` and `\` are inserted as they are, and missing values keep their placeholder
+        Map<String, String> data = new HashMap<>();
+        data.put("price", "$5 \\ unit");
+        assertEquals("Price: $5 \\ unit, ${tax}", InterpolationTemplate.compile("Price: ${price}, ${tax}").render(data));
+        assertEquals("Price: $5 \\ unit", ExpressionParser.interpolate("Price: ${price}", data));
+    }
+
+    @Test
+    void noVariables() {
+        InterpolationTemplate template = InterpolationTemplate.compile("Hello");
+        assertFalse(template.hasVariables());
+        assertEquals("Hello", template.render(new HashMap<>()));
+        assertEquals("Hello", template.toString());
+    }
+}
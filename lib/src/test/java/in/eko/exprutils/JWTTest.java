@@ -7,6 +7,7 @@ import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import org.junit.jupiter.api.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -56,4 +57,43 @@ class JWTTest {
         Map<String, Claim> claims = JWT.parse(token, secret, "HS256");
         assertEquals("1234", claims.get("devkey").asString());
     }
+
+    @Test
+    void expiry() {
+        String token = JWT.generate("abc123", "HS256", (String) null, null, null, null, null, 60);
+
+        // Expires 60 seconds after it was issued
+        Map<String, Claim> claims = JWT.parse(token, "abc123", "HS256");
+        assertEquals(claims.get("iat").asLong() + 60, claims.get("exp").asLong().longValue());
+    }
+
+    @Test
+    void operator() {
+        // Literal options are compiled once, and written back as they were
+        CompiledExpression expr = ExpressionParser.compile(
+                "['JWT', 'abc123', 'HS256', {'claim': {'devkey': '1234'}, 'issuer': 'eko', 'expiresInSeconds': 60}]");
+        assertTrue(expr.toString().contains("\"issuer\":\"eko\""));
+        Map<String, Claim> claims = JWT.parse((String) expr.evaluate(), "abc123", "HS256");
+        assertEquals("1234", claims.get("devkey").asString());
+        assertEquals("eko", claims.get("iss").asString());
+
+        // Serialized options (and claim), as before
+        String token = (String) ExpressionParser.compile("['JWT', 'abc123', 'HS256', '${options}']").evaluate(
+                Collections.singletonMap("options", "{\"claim\": \"{'devkey': '1234'}\", \"issuer\": \"eko\"}")).getResult();
+        assertEquals("1234", JWT.parse(token, "abc123", "HS256").get("devkey").asString());
+
+        // Options that vary per request, from the context
+        Map<String, Object> options = new HashMap<>();
+        options.put("subject", "user-42");
+        Map<String, Object> context = new HashMap<>();
+        context.put("options", options);
+        context.put("user", "user-7");
+        token = (String) ExpressionParser.compile("['JWT', 'abc123', 'HS256', '${options}']").evaluate(context).getResult();
+        assertEquals("user-42", JWT.parse(token, "abc123", "HS256").get("sub").asString());
+        token = (String) ExpressionParser.compile("['JWT', 'abc123', 'HS256', {'subject': '${user}'}]").evaluate(context).getResult();
+        assertEquals("user-7", JWT.parse(token, "abc123", "HS256").get("sub").asString());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ExpressionParser.parseExpression("['JWT', 'abc123', 'HS256', {'expiresInSeconds': 'soon'}]"));
+    }
 }
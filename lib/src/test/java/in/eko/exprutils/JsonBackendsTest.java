@@ -0,0 +1,79 @@
+package in.eko.exprutils;
+
+import in.eko.exprutils.interfaces.JsonBackend;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonBackendsTest {
+
+    String doc = "{\"id\": 42, \"big\": 12345678901, \"amount\": -10.50, \"exp\": 1e3, \"ok\": true, \"none\": null,"
+            + " \"name\": \"\u00dcn\u00efc\u00f6d\u00e9\", \"esc\": \"a\\\"b\\\\c\\u0041\\n\u00e9\", 'single': 'quoted',"
+            + " \"items\": [0, -7, {\"k\": []}, [], \"\"]}";
+
+    @Test
+    void sameValues() {
+        JSONObject expected = (JSONObject) JsonBackends.ORG_JSON.parse(doc);
+        byte[] bytes = doc.getBytes(StandardCharsets.UTF_8);
+
+        for (JsonBackend backend : new JsonBackend[]{JsonBackends.ORG_JSON, JsonBackends.BYTES}) {
+            assertTrue(expected.similar(backend.parse(doc)), backend.toString());
+            assertTrue(expected.similar(backend.parse(bytes, 0, bytes.length)), backend.toString());
+            assertTrue(expected.similar(backend.parse(ByteBuffer.wrap(bytes))), backend.toString());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 2);
+            direct.put((byte) '[').put(bytes).put((byte) ']').flip();
+            direct.position(1).limit(bytes.length + 1);
+            assertTrue(expected.similar(backend.parse(direct)), backend.toString());
+            assertEquals(1, direct.position());
+        }
+
+        JSONObject parsed = (JSONObject) JsonBackends.BYTES.parse(doc);
+        assertEquals(42, parsed.get("id"));
+        assertEquals(12345678901L, parsed.get("big"));
+        assertEquals("a\"b\\cA\n\u00e9", parsed.get("esc"));
+        assertEquals(JSONObject.NULL, parsed.get("none"));
+        assertEquals(-7, ((JSONArray) parsed.get("items")).get(1));
+    }
+
+    @Test
+    void reusesKeys() {
+        JSONObject first = (JSONObject) JsonBackends.BYTES.parse("{\"status\": 1}");
+        JSONObject second = (JSONObject) JsonBackends.BYTES.parse("{\"status\": 2}");
+        assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+    }
+
+    @Test
+    void invalid() {
+        String[] invalid = {"", "{", "{\"a\" 1}", "{a: 1}", "[1,]", "[1] 2", "\"abc", "{\"a\": 1, \"a\": 2}", "tru", "-", "1.2.3",
+                "\"\\x\"", String.join("", Collections.nCopies(1000, "["))};
+        for (String json : invalid) {
+            assertThrows(JSONException.class, () -> JsonBackends.BYTES.parse(json), json);
+        }
+    }
+
+    @Test
+    void engineBackend() {
+        ExpressionEngine engine = ExpressionEngine.builder().jsonBackend(JsonBackends.BYTES).build();
+        assertSame(JsonBackends.BYTES, engine.getJsonBackend());
+        assertEquals(5.0, engine.parseExpression("['+', 2, 3]"));
+        assertThrows(IllegalArgumentException.class, () -> engine.parseExpression("['+', 2, 3"));
+
+        // Documents bound as bytes are parsed without decoding them into a String
+        byte[] body = "{\"txn\": {\"status\": \"ok\"}}".getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> context = Collections.singletonMap("body", body);
+        assertEquals("ok", engine.compile("['GET', '${body}', 'txn.status']").evaluate(context).getResult());
+        JSONObject updated = (JSONObject) engine.compile("['SET', '${body}', 'txn.fee', 2]").evaluate(context).getResult();
+        assertEquals("2", JsonObj.get(updated, "txn.fee", ""));
+        assertEquals("ok", ExpressionParser.compile("['GET', '${body}', 'txn.status']")
+                .evaluate(Collections.singletonMap("body", ByteBuffer.wrap(body))).getResult());
+    }
+}
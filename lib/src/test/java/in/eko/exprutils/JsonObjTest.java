@@ -1,7 +1,11 @@
 package in.eko.exprutils;
 
+import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class JsonObjTest {
@@ -48,4 +52,115 @@ class JsonObjTest {
                 JsonObj.set("{\"b\":5}", "a.hello.world", "again").toString()
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void getArrayIndex() {
+        String txns = "{'data':{'txns':[{'status':'ok'},{'status':'failed'}]}}";
+
+        // Test array element retrieve
+        assertEquals("failed",
+                JsonObj.get(txns, "data.txns[1].status", "").toString()
+        );
+
+        // Test default value return when index is out of range
+        assertEquals("-1",
+                JsonObj.get(txns, "data.txns[2].status", "-1").toString()
+        );
+
+        // Test escaped dot within a key
+        assertEquals("abc",
+                JsonObj.get("{'x.request.id':'abc'}", "x\\.request\\.id", "").toString()
+        );
+
+        // Test default value return for an invalid path
+        assertEquals("-1",
+                JsonObj.get(txns, "data.txns[one]", "-1").toString()
+        );
+    }
+
+    @Test
+    void getDeepPath() {
+        // Paths are no longer limited to 20 segments
+        StringBuilder deep = new StringBuilder("1");
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            deep.insert(0, "{'k':").append('}');
+            key.append(i > 0 ? ".k" : "k");
+        }
+        assertEquals("1",
+                JsonObj.get(deep.toString(), key.toString(), "0").toString()
+        );
+    }
+
+    @Test
+    void compiledPath() {
+        JsonPath path = JsonPath.compile("b.d.e");
+        JSONObject json = new JSONObject(obj);
+
+        // Test the same compiled path against a parsed and a serialized object
+        assertEquals(3, JsonObj.get(json, path, "0"));
+        assertEquals("3", JsonObj.get(obj, path, "0").toString());
+
+        // Test in-place set with a compiled path
+        assertSame(json, JsonObj.set(json, JsonPath.compile("b.d.f"), 4));
+        assertEquals(4, JsonObj.get(json, "b.d.f", "0"));
+    }
+
+    @Test
+    void setArrayIndex() {
+        // Test array creation for an index segment
+        assertEquals("{\"a\":[{\"b\":1}]}",
+                JsonObj.set("{}", "a[0].b", 1)
+        );
+
+        // Test append-only arrays: an index past the end does not pad the array
+        assertEquals("{\"a\":[1,2]}",
+                JsonObj.set("{\"a\":[1]}", "a[1]", 2)
+        );
+        assertEquals("{\"a\":[1]}",
+                JsonObj.set("{\"a\":[1]}", "a[999999999]", 2)
+        );
+        assertEquals("{}",
+                JsonObj.set("{}", "a[1].b", 1)
+        );
+
+        // Test object unchanged when the path goes through a value
+        assertEquals("{\"a\":5}",
+                JsonObj.set("{\"a\":5}", "a.b", 1)
+        );
+    }
+
+    @Test
+    void getAll() {
+        Map<String, Object> values = JsonObj.getAll(obj, "a", "b.c", "b.d.e", "b.z", "b[");
+        assertEquals(3, values.size());
+        assertEquals(1, values.get("a"));
+        assertEquals(2, values.get("b.c"));
+        assertEquals(3, values.get("b.d.e"));
+
+        // Test empty result when the object is not valid
+        assertTrue(JsonObj.getAll("not json", "a").isEmpty());
+    }
+
+    @Test
+    void setAll() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("a.b", 1);
+        values.put("a.c", "x");
+        values.put("d[0]", true);
+        String result = JsonObj.setAll("{}", values);
+
+        assertEquals(1, JsonObj.get(result, "a.b", ""));
+        assertEquals("x", JsonObj.get(result, "a.c", ""));
+        assertEquals(true, JsonObj.get(result, "d[0]", ""));
+
+        // Test no missing container created for a path that cannot be set, like set()
+        Map<String, Object> pastEnd = new LinkedHashMap<>();
+        pastEnd.put("a[1].b", 1);
+        assertEquals("{}", JsonObj.set("{}", "a[1].b", 1));
+        assertEquals("{}", JsonObj.setAll("{}", pastEnd));
+
+        // Test object unchanged when it is not valid
+        assertEquals("not json", JsonObj.setAll("not json", values));
+    }
+}
@@ -0,0 +1,72 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonPathTest {
+
+    @Test
+    void compile() {
+        assertEquals(1, JsonPath.compile("a").size());
+        assertEquals(3, JsonPath.compile("a.b.c").size());
+        assertEquals(4, JsonPath.compile("data.txns[3].status").size());
+        assertEquals(3, JsonPath.compile("[0][1].a").size());
+        assertEquals(2, JsonPath.compile("headers.x\\.request\\.id").size());
+        assertEquals("a[0].b", JsonPath.compile("a[0].b").toString());
+        assertEquals(JsonPath.compile("a.b"), JsonPath.compile("a.b"));
+    }
+
+    @Test
+    void invalidPaths() {
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile(null));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("a[0"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("a[]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("a[x]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("a.[0]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("a[0]b"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.compile("a\\"));
+    }
+
+    @Test
+    void find() {
+        JSONObject obj = new JSONObject("{'a':{'b.c':[10, {'d':'x'}]}}");
+
+        assertEquals(10, JsonPath.compile("a.b\\.c[0]").find(obj));
+        assertEquals("x", JsonPath.compile("a.b\\.c[1].d").find(obj));
+        assertNull(JsonPath.compile("a.b\\.c[2]").find(obj));
+        assertNull(JsonPath.compile("a.b\\.c.d").find(obj));
+        assertEquals(10, JsonPath.compile("[0]").find(new JSONArray("[10]")));
+    }
+
+    @Test
+    void put() {
+        JSONObject obj = new JSONObject();
+
+        assertTrue(JsonPath.compile("a.b[0].c").put(obj, "x"));
+        assertEquals("x", JsonPath.compile("a.b[0].c").find(obj));
+        assertTrue(JsonPath.compile("a.b[1]").put(obj, "y"));
+        assertEquals("y", JsonPath.compile("a.b[1]").find(obj));
+
+        // Nothing is modified when the path goes through a value
+        assertFalse(JsonPath.compile("a.b[0].c.d").put(obj, "y"));
+        assertEquals("x", JsonPath.compile("a.b[0].c").find(obj));
+    }
+
+    @Test
+    void putPastTheEnd() {
+        JSONObject obj = new JSONObject("{'items':[1, 2]}");
+
+        // Arrays are append-only, so an index from request data cannot pad an array with nulls
+        assertFalse(JsonPath.compile("items[999999999]").put(obj, "x"));
+        assertNull(JsonPath.compile("items[999999999]").putCopy(obj, "x"));
+        assertFalse(JsonPath.compile("items[3]").put(obj, "x"));
+        assertFalse(JsonPath.compile("other[1].a").put(obj, "x"));
+        assertEquals("{\"items\":[1,2]}", obj.toString());
+
+        assertTrue(JsonPath.compile("items[2]").put(obj, 3));
+        assertEquals("{\"items\":[1,2,3]}", obj.toString());
+    }
+}
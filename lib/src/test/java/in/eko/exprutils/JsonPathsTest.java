@@ -0,0 +1,51 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonPathsTest {
+
+    JSONObject obj = new JSONObject("{'data':{'txn':{'id':42, 'status':'ok', 'items':[{'sku':'a'}, {'sku':'b'}]}}, 'v':1}");
+
+    @Test
+    void findAll() {
+        JsonPaths paths = JsonPaths.compile("data.txn.id", "data.txn.status", "data.txn.items[1].sku", "data.fee", "v");
+        assertEquals(5, paths.size());
+        assertArrayEquals(new Object[]{42, "ok", "b", null, 1}, paths.findAll(obj));
+
+        // Repeated paths all get the value
+        assertArrayEquals(new Object[]{1, 1}, JsonPaths.compile("v", "v").findAll(obj));
+
+        assertThrows(IllegalArgumentException.class, () -> JsonPaths.compile("a", "b[x]"));
+    }
+
+    @Test
+    void putAll() {
+        JsonPaths paths = JsonPaths.compile("data.txn.status", "data.txn.fee", "data.new[1]", "data.new[0]", "data.new[5]", "v.w");
+        JSONObject copy = (JSONObject) paths.putAllCopy(obj, new Object[]{"done", 2, "y", "x", "z", 3});
+
+        // The copy has the values, except for the path through a value and the index past the end of an array
+        // (indexes are appended in ascending order)
+        assertArrayEquals(new Object[]{"done", 2, "x", "y", 1},
+                JsonPaths.compile("data.txn.status", "data.txn.fee", "data.new[0]", "data.new[1]", "v").findAll(copy));
+        assertEquals(2, ((JSONArray) JsonPath.compile("data.new").find(copy)).length());
+
+        // The original is not modified, and shares what is not on the paths
+        assertArrayEquals(new Object[]{"ok", null, null},
+                JsonPaths.compile("data.txn.status", "data.txn.fee", "data.new").findAll(obj));
+        assertSame(JsonPath.compile("data.txn.items").find(obj), JsonPath.compile("data.txn.items").find(copy));
+
+        // No missing object or array is created for the paths that cannot be set
+        JsonPaths pastEnd = JsonPaths.compile("e.f[1]", "g[1].h", "data.i[2]");
+        assertEquals(JsonPaths.compile("data").findAll(obj)[0].toString(),
+                JsonPaths.compile("data").findAll(pastEnd.putAllCopy(obj, new Object[]{1, 2, 3}))[0].toString());
+        assertEquals("{}", pastEnd.putAllCopy(new JSONObject(), new Object[]{1, 2, 3}).toString());
+
+        // In place
+        paths.putAll(obj, new Object[]{"done", 2, "y", "x", "z", 3});
+        assertEquals("done", JsonPath.compile("data.txn.status").find(obj));
+    }
+}
@@ -0,0 +1,110 @@
+package in.eko.exprutils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonScannerTest {
+
+    String payload = "{\"meta\": {\"note\": \"a } ] \\\" , b\", \"tags\": [1, [2, {\"x\": 3}]]},"
+            + " \"data\": {\"txn\": {\"id\": 42, \"amount\": 10.5, \"status\": \"SUCCESS\\u0021\", \"ok\": true,"
+            + " \"err\": null, \"items\": [{\"sku\": \"a\"}, {\"sku\": \"b\"}]}}}";
+
+    @Test
+    void find() {
+        assertEquals("SUCCESS!", JsonScanner.find(payload, JsonPath.compile("data.txn.status")));
+        assertEquals(42, JsonScanner.find(payload, JsonPath.compile("data.txn.id")));
+        assertEquals(true, JsonScanner.find(payload, JsonPath.compile("data.txn.ok")));
+        assertEquals(JSONObject.NULL, JsonScanner.find(payload, JsonPath.compile("data.txn.err")));
+        assertEquals("b", JsonScanner.find(payload, JsonPath.compile("data.txn.items[1].sku")));
+        assertEquals(3, JsonScanner.find(payload, JsonPath.compile("meta.tags[1][1].x")));
+        assertEquals("a } ] \" , b", JsonScanner.find(payload, JsonPath.compile("meta.note")));
+
+        // The same values as a full parse
+        JSONObject parsed = new JSONObject(payload);
+        assertEquals(JsonPath.compile("data.txn.amount").find(parsed),
+                JsonScanner.find(payload, JsonPath.compile("data.txn.amount")));
+
+        // Objects and arrays are parsed on their own
+        Object items = JsonScanner.find(payload, JsonPath.compile("data.txn.items"));
+        assertTrue(items instanceof JSONArray);
+        assertEquals(2, ((JSONArray) items).length());
+        assertTrue(JsonScanner.find(payload, JsonPath.compile("data.txn")) instanceof JSONObject);
+    }
+
+    @Test
+    void missing() {
+        assertNull(JsonScanner.find(payload, JsonPath.compile("data.txn.fee")));
+        assertNull(JsonScanner.find(payload, JsonPath.compile("data.txn.items[2]")));
+        assertNull(JsonScanner.find(payload, JsonPath.compile("data.txn.status.code")));
+        assertNull(JsonScanner.find(payload, JsonPath.compile("data[0]")));
+        assertNull(JsonScanner.find("{}", JsonPath.compile("a")));
+        assertNull(JsonScanner.find("{\"a\": []}", JsonPath.compile("a[0]")));
+    }
+
+    @Test
+    void lenientSyntax() {
+        // Single quotes and escaped keys are scanned
+        assertEquals(2, JsonScanner.find("{'a':1, 'b':{'c':2}}", JsonPath.compile("b.c")));
+        assertEquals("v", JsonScanner.find("{\"k\\u002ey\": \"v\"}", JsonPath.compile("k\\.y")));
+
+
+        // Anything else is left to a full parse
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{a: 1}", JsonPath.compile("a")));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("[1]", JsonPath.compile("a")));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": {\"b\": 1", JsonPath.compile("c")));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("not json", JsonPath.compile("a")));
+
+        // With the same result as before for unquoted keys
+        assertEquals(1, JsonObj.get("{a: 1}", "a", "0"));
+    }
+
+    @Test
+    void wideObjects() {
+        // Objects with any number of members are scanned, and checked for duplicate keys
+        StringBuilder wide = new StringBuilder("{");
+        for (int i = 0; i < 1000; i++) {
+            wide.append("\"k").append(i).append("\": {\"v\": ").append(i).append("}, ");
+        }
+        String json = wide.append("\"last\": [1, {\"x\": 2}]}").toString();
+        assertEquals(999, JsonScanner.find(json, JsonPath.compile("k999.v")));
+        assertEquals(2, JsonScanner.find(json, JsonPath.compile("last[1].x")));
+        assertNull(JsonScanner.find(json, JsonPath.compile("k1000")));
+
+        String duplicate = json.substring(0, json.length() - 1) + ", \"k500\": 0}";
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find(duplicate, JsonPath.compile("last")));
+
+        // A wide object is materialized as a whole, like a full parse
+        JSONObject value = (JSONObject) JsonScanner.find("{\"a\": " + json + "}", JsonPath.compile("a"));
+        assertEquals(1001, value.length());
+        assertEquals(new JSONObject(json).toString(), value.toString());
+    }
+
+    @Test
+    void invalidRest() {
+        // The rest of the object is validated: a full parse decides, as if the value had not been scanned
+        JsonPath a = JsonPath.compile("a");
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": 1, \"b\": ", a));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": 1, \"b\": 2 \"c\": 3}", a));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": 1} trailing", a));
+        assertEquals(1, JsonScanner.find("{\"a\": 1}\n ", a));
+
+        // Duplicate keys, at any level
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": 1, \"a\": 2}", a));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"b\": 1, \"a\": 2, 'b': 3}", a));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": 1, \"c\": {\"d\": 1, \"d\": 2}}", a));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": 1, \"k\\u0065y\": 1, \"key\": 2}", a));
+        assertEquals(1, JsonScanner.find("{\"a\": 1, \"c\": {\"a\": 2}, \"d\": [{\"a\": 3}, {\"a\": 4}]}", a));
+
+        // Also in the value itself
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": {\"b\": 1, \"b\": 2}}", a));
+        assertSame(JsonScanner.UNSUPPORTED, JsonScanner.find("{\"a\": [1, {\"b\": 1, \"b\": 2}]}", a));
+
+        // With the same result as the full parse
+        assertEquals("0", JsonObj.get("{\"a\": 1, \"b\": ", "a", "0"));
+        assertEquals("0", JsonObj.get("{\"a\": 1, \"a\": 2}", "a", "0"));
+        assertEquals("0", JsonObj.get("{\"a\": 1, \"c\": {\"d\": 1, \"d\": 2}}", "a", "0"));
+    }
+}
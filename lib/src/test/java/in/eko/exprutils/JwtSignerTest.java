@@ -0,0 +1,61 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtSignerTest {
+
+    @Test
+    void registry() {
+        JwtSigner.invalidateAll();
+        JwtSigner signer = JwtSigner.of("HS256", "abc123");
+        assertSame(signer, JwtSigner.of("HMAC256", "abc123"));
+        assertNotSame(signer, JwtSigner.of("HS512", "abc123"));
+        assertNotSame(signer, JwtSigner.of("HS256", "abc1234"));
+        assertEquals(3, JwtSigner.size());
+        assertEquals("HS256", signer.getAlgorithm().getName());
+        assertEquals("none", JwtSigner.of("NONE", null).getAlgorithm().getName());
+
+        JwtSigner.invalidateAll();
+        assertEquals(0, JwtSigner.size());
+        assertNotSame(signer, JwtSigner.of("HS256", "abc123"));
+
+        assertThrows(IllegalArgumentException.class, () -> JwtSigner.of("HS256", null));
+
+        // A null algorithm is not NONE: unsigned tokens have to be asked for
+        assertThrows(IllegalArgumentException.class, () -> JwtSigner.of(null, "abc123"));
+        assertThrows(IllegalArgumentException.class, () -> JwtVerifier.of(null, "abc123"));
+        assertThrows(IllegalArgumentException.class,
+                () -> JWT.generate("abc123", null, "{'devkey':'1234'}", "eko", "aud", null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> JWT.parse("token", "abc123", null));
+
+        // Neither is an unknown name
+        assertEquals("none", JwtSigner.of("none", null).getAlgorithm().getName());
+        assertThrows(IllegalArgumentException.class, () -> JwtSigner.of("HS-256", "abc123"));
+        assertThrows(IllegalArgumentException.class, () -> JwtSigner.of("RS256", "abc123"));
+        assertThrows(IllegalArgumentException.class, () -> JwtVerifier.of("", "abc123"));
+        assertThrows(IllegalArgumentException.class, () -> JWT.parse("token", "abc123", "HS-256"));
+    }
+
+    @Test
+    void signAndVerify() {
+        String token = JwtSigner.of("HS256", "abc123").sign(com.auth0.jwt.JWT.create().withIssuer("eko").withAudience("aud"));
+
+        JwtVerifier verifier = JwtVerifier.of("HS256", "abc123", "eko", "aud");
+        assertSame(verifier, JwtVerifier.of("HS256", "abc123", "eko", "aud"));
+        DecodedJWT jwt = verifier.verify(token);
+        assertEquals("eko", jwt.getIssuer());
+        assertEquals("eko", JwtVerifier.of("HS256", "abc123").verify(token).getIssuer());
+
+        assertThrows(JWTVerificationException.class, () -> JwtVerifier.of("HS256", "wrong").verify(token));
+        assertThrows(JWTVerificationException.class, () -> JwtVerifier.of("HS256", "abc123", "other", null).verify(token));
+        assertThrows(JWTVerificationException.class, () -> JwtVerifier.of("HS256", "abc123", null, "other").verify(token));
+
+        // Through the JWT helpers
+        String generated = JWT.generate("abc123", "HS256", "{'devkey':'1234'}", "eko", "aud", null, null, 0);
+        assertEquals("1234", JWT.parse(generated, "abc123", "HS256", "eko", "aud").get("devkey").asString());
+    }
+}
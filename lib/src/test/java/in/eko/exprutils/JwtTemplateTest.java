@@ -0,0 +1,70 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.interfaces.Claim;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtTemplateTest {
+
+    long now = 1700000000123L;
+
+    @Test
+    void sameAsGenerate() {
+        JSONObject claims = new JSONObject("{'product': 'dmt', 'limit': 25000}");
+        JwtTemplate template = JwtTemplate.builder()
+                .algorithm("HS256").secretKey("abc123")
+                .issuer("eko").audience("aud").claims(claims)
+                .variableClaims("txn_id", "amount")
+                .jwtId(true)
+                .expiresInSeconds(300)
+                .clock(() -> now)
+                .build();
+
+        for (String txn : new String[]{"T", "TX", "TX1", "TX12", "TX \"quoted\" \\ \u00e9\u20ac\ud83d\ude00"}) {
+            JSONObject expectedClaims = new JSONObject(claims.toString()).put("txn_id", txn).put("amount", 12.5);
+            String expected = JwtSigner.of("HS256", "abc123").sign(JWT.creator(expectedClaims, "eko", "aud", null,
+                    "id-" + txn, new Date(now), new Date(now + 300 * 1000)));
+            assertEquals(expected, template.generate("id-" + txn, txn, 12.5));
+        }
+
+        // With the current time
+        JwtTemplate current = JwtTemplate.builder().algorithm("HS256").secretKey("abc123")
+                .variableClaims("txn_id", "amount").expiresInSeconds(300).build();
+        long before = System.currentTimeMillis() / 1000;
+        Map<String, Claim> parsed = JWT.parse(current.generate(null, "TX1", 100), "abc123", "HS256");
+        assertEquals("TX1", parsed.get("txn_id").asString());
+        assertEquals(100.0, parsed.get("amount").asDouble().doubleValue());
+        long issuedAt = parsed.get("iat").asLong();
+        assertTrue(issuedAt >= before);
+        assertEquals(issuedAt + 300, parsed.get("exp").asLong().longValue());
+    }
+
+    @Test
+    void noneAndNoFields() {
+        JwtTemplate template = JwtTemplate.builder().algorithm("NONE").clock(() -> now).build();
+        String expected = JwtSigner.of("NONE", null).sign(JWT.creator(null, null, null, null, null, new Date(now), null));
+        assertEquals(expected, template.generate(null));
+    }
+
+    @Test
+    void invalid() {
+        JwtTemplate template = JwtTemplate.builder().algorithm("HS256").secretKey("abc123").variableClaims("txn_id").build();
+        assertThrows(IllegalArgumentException.class, () -> template.generate("id", "TX1"));
+        assertThrows(IllegalArgumentException.class, () -> template.generate(null));
+        assertThrows(IllegalArgumentException.class, () -> template.generate(null, (Object) null));
+
+        assertThrows(IllegalArgumentException.class, () -> JwtTemplate.builder().algorithm("HS256").build());
+        // NONE is never a default: it has to be chosen explicitly
+        assertThrows(IllegalArgumentException.class, () -> JwtTemplate.builder().build());
+        assertThrows(IllegalArgumentException.class,
+                () -> JwtTemplate.builder().algorithm("NONE").variableClaims("exp").build());
+        assertThrows(IllegalArgumentException.class, () -> JwtTemplate.builder().variableClaims("a", "a"));
+        assertThrows(IllegalArgumentException.class, () -> JwtTemplate.builder().algorithm("NONE")
+                .claims(new JSONObject("{'a': 1}")).variableClaims("a").build());
+    }
+}
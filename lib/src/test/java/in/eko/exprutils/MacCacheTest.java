@@ -0,0 +1,59 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MacCacheTest {
+
+    String hmacSha256 = "734cc62f32841568f45715aeb9f4d7891324e6d948e4c6c60c0621cdac48623a";
+
+    @Test
+    void hmac() {
+        assertEquals(hmacSha256, Hash.hmacSha256("hello world", "secret"));
+        // Served by the cached Mac instance
+        assertEquals(hmacSha256, Hash.hmacSha256("hello world", "secret"));
+        assertEquals("6d32239b01dd1750557211629313d95e4f4fcb8ee517e443990ac1afc7562bfd"
+                        + "74ffa6118387efd9e168ff86d1da5cef4a55edc63cc4ba289c4c3a8b4f7bdfc2",
+                Hash.hmacSha512("hello world", "secret"));
+        assertNotEquals(hmacSha256, Hash.hmacSha256("hello world", "secret2"));
+        assertEquals("", Hash.hmacSha256(null, "secret"));
+
+        assertThrows(IllegalArgumentException.class, () -> Hash.hmacSha256("hello world", ""));
+        assertThrows(IllegalArgumentException.class, () -> Hash.hmacSha256("hello world", null));
+        assertThrows(IllegalArgumentException.class, () -> Hash.getHmac("hello world", "secret", "HmacSHA0"));
+    }
+
+    @Test
+    void keyIsCopied() {
+        byte[] key = "secret".getBytes(StandardCharsets.UTF_8);
+        byte[] input = "hello world".getBytes(StandardCharsets.UTF_8);
+        assertEquals(hmacSha256, Hash.getHmac(input, key, "HmacSHA256"));
+
+        // The cache holds its own copy of the key, and never wipes the caller's
+        Hash.clearHmacKeys();
+        assertEquals(0, MacCache.size());
+        assertArrayEquals("secret".getBytes(StandardCharsets.UTF_8), key);
+        assertEquals(hmacSha256, Hash.getHmac(input, key, "HmacSHA256"));
+        assertEquals(1, MacCache.size());
+    }
+
+    @Test
+    void operators() {
+        assertEquals(hmacSha256, ExpressionParser.parseExpression("['HMAC_SHA256', 'hello world', 'secret']"));
+        assertEquals("c0zGLzKEFWj0VxWuufTXiRMk5tlI5MbGDAYhzaxIYjo=",
+                ExpressionParser.parseExpression("['HMAC_SHA256', 'hello world', 'secret', 'base64']"));
+        Map<String, Object> context = new HashMap<>();
+        context.put("body", ByteBuffer.wrap("hello world".getBytes(StandardCharsets.UTF_8)));
+        context.put("key", "secret".getBytes(StandardCharsets.UTF_8));
+        assertEquals(hmacSha256, ExpressionParser.compile("['HMAC_SHA256', '${body}', '${key}']")
+                .evaluate(context).getResult());
+        assertThrows(IllegalArgumentException.class,
+                () -> ExpressionParser.parseExpression("['HMAC_SHA256', 'hello world', 'secret', 'hex2']"));
+    }
+}
@@ -0,0 +1,120 @@
+package in.eko.exprutils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NdjsonEvaluatorTest {
+    private static final String RECORDS =
+            "{\"id\": 1, \"amount\": 100, \"payment\": {\"status\": \"SUCCESS\"}}\n"
+            + "\n"
+            + "{\"id\": 2, \"amount\": 250.5, \"payment\": {\"status\": \"FAILED\"}}\r\n"
+            + "{\"id\": 3, \"amount\": 7, \"payment\": {\"status\": \"SUCCESS\"}, \"name\": \"\u00dcn\u00efc\u00f6d\u00e9\"}";
+
+    @Test
+    void evaluateStream() throws IOException {
+        NdjsonEvaluator evaluator = NdjsonEvaluator.builder()
+                .expression(ExpressionParser.compile("['GET', '${record}', 'payment.status']"))
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long records = evaluator.evaluate(new ByteArrayInputStream(RECORDS.getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals(3, records);
+        assertEquals("\"SUCCESS\"\n\"FAILED\"\n\"SUCCESS\"\n", out.toString("UTF-8"));
+    }
+
+    @Test
+    void documentResults() throws IOException {
+        // Documents are written as nested JSON, not as JSON strings
+        NdjsonEvaluator evaluator = NdjsonEvaluator.builder()
+                .expression(ExpressionParser.compile("['SET', ['GET', '${record}', 'payment'], 'status', 'DONE']"))
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        evaluator.evaluate(new ByteArrayInputStream(RECORDS.getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals("{\"status\":\"DONE\"}\n{\"status\":\"DONE\"}\n{\"status\":\"DONE\"}\n", out.toString("UTF-8"));
+    }
+
+    @Test
+    void namedExpressions() throws IOException {
+        NdjsonEvaluator evaluator = NdjsonEvaluator.builder()
+                .expression("id", ExpressionParser.compile("['VAR', 'id']"))
+                .expression("fee", ExpressionParser.compile("['*', '${amount}', 0.02]"))
+                .expression("ok", ExpressionParser.compile("['==', ['GET', '${record}', 'payment.status'], 'SUCCESS']"))
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        evaluator.evaluate(new ByteArrayInputStream(RECORDS.getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals("{\"id\":1,\"fee\":2,\"ok\":true}\n"
+                + "{\"id\":2,\"fee\":5.01,\"ok\":false}\n"
+                + "{\"id\":3,\"fee\":0.14,\"ok\":true}\n", out.toString("UTF-8"));
+
+        assertThrows(IllegalArgumentException.class, () -> NdjsonEvaluator.builder().build());
+        assertThrows(IllegalArgumentException.class, () -> NdjsonEvaluator.builder()
+                .expression(ExpressionParser.compile("['VAR', 'id']"))
+                .expression("fee", ExpressionParser.compile("['VAR', 'amount']"))
+                .build());
+    }
+
+    @Test
+    void evaluateFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("records.ndjson");
+        Files.write(file, RECORDS.getBytes(StandardCharsets.UTF_8));
+
+        NdjsonEvaluator evaluator = NdjsonEvaluator.builder()
+                .expression(ExpressionParser.compile("['CONCAT_ALL', '${id}', ':', ['VAR', 'name', '-']]"))
+                .mapSize(16)
+                .build();
+
+        // Records span several (and larger) memory-mapped regions
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, evaluator.evaluate(file, out));
+        assertEquals("\"1:-\"\n\"2:-\"\n\"3:\u00dcn\u00efc\u00f6d\u00e9\"\n", out.toString("UTF-8"));
+
+        // The same output as the stream
+        ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+        evaluator.evaluate(Files.newInputStream(file), streamOut);
+        assertEquals(out.toString("UTF-8"), streamOut.toString("UTF-8"));
+    }
+
+    @Test
+    void invalidRecord(@TempDir Path dir) throws IOException {
+        NdjsonEvaluator evaluator = NdjsonEvaluator.builder()
+                .expression(ExpressionParser.compile("['VAR', 'id']"))
+                .build();
+        byte[] records = "{\"id\": 1}\nnot json\n{\"id\": 3}\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate(new ByteArrayInputStream(records), out));
+        assertEquals("Invalid record at line 2: not a valid JSON Object", e.getMessage());
+
+        // The results before the invalid record are flushed
+        assertEquals("1\n", out.toString("UTF-8"));
+
+        Path file = dir.resolve("records.ndjson");
+        Files.write(file, records);
+        ByteArrayOutputStream fileOut = new ByteArrayOutputStream();
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(file, fileOut));
+        assertEquals("1\n", fileOut.toString("UTF-8"));
+
+        // Or skipped
+        NdjsonEvaluator skipping = NdjsonEvaluator.builder()
+                .expression(ExpressionParser.compile("['VAR', 'id']"))
+                .skipInvalidRecords(true)
+                .build();
+        out.reset();
+        assertEquals(2, skipping.evaluate(new ByteArrayInputStream(records), out));
+        assertEquals("1\n3\n", out.toString("UTF-8"));
+        fileOut.reset();
+        assertEquals(2, skipping.evaluate(file, fileOut));
+        assertEquals("1\n3\n", fileOut.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,70 @@
+package in.eko.exprutils;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCacheTest {
+
+    @Test
+    void verify() {
+        TokenCache cache = TokenCache.builder().build();
+        JwtVerifier verifier = JwtVerifier.of("HS256", "abc123");
+        String token = JWT.generate("abc123", "HS256", "{'devkey':'1234'}", "eko", null, null, null, 0);
+
+        DecodedJWT jwt = cache.verify(verifier, token);
+        assertSame(jwt, cache.verify(verifier, token));
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+
+        // Another verifier does not share the entry
+        JWTVerificationException e = assertThrows(JWTVerificationException.class,
+                () -> cache.verify(JwtVerifier.of("HS256", "wrong"), token));
+        assertSame(e, assertThrows(JWTVerificationException.class,
+                () -> cache.verify(JwtVerifier.of("HS256", "wrong"), token)));
+        assertEquals(1, cache.stats().negativeHitCount());
+        assertEquals(2, cache.stats().missCount());
+        assertEquals(2, cache.size());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0.5, cache.stats().hitRate());
+    }
+
+    @Test
+    void expiry() {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        TokenCache cache = TokenCache.builder().clock(now::get).build();
+        JwtVerifier verifier = JwtVerifier.of("HS256", "abc123");
+        String token = JWT.generate("abc123", "HS256", (String) null, null, null, null, null, 60);
+
+        Date expiresAt = cache.verify(verifier, token).getExpiresAt();
+        cache.verify(verifier, token);
+        assertEquals(1, cache.stats().hitCount());
+
+        // Not served from the cache after its expiry
+        now.set(expiresAt.getTime());
+        cache.verify(verifier, token);
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(2, cache.stats().missCount());
+    }
+
+    @Test
+    void jwtParse() {
+        String token = JWT.generate("abc123", "HS256", "{'devkey':'1234'}", null, null, null, null, 0);
+        TokenCache cache = TokenCache.builder().build();
+        JWT.setTokenCache(cache);
+        try {
+            assertEquals("1234", JWT.parse(token, "abc123", "HS256").get("devkey").asString());
+            assertEquals("1234", JWT.parse(token, "abc123", "HS256").get("devkey").asString());
+            assertEquals(1, cache.stats().hitCount());
+        } finally {
+            JWT.setTokenCache(null);
+        }
+    }
+}